@@ -3,13 +3,44 @@
  */
 package org.ligoj.app.dao;
 
+import java.util.List;
+
+import org.ligoj.app.model.Node;
 import org.ligoj.app.model.Plugin;
 import org.ligoj.bootstrap.core.dao.RestRepository;
+import org.springframework.data.jpa.repository.Query;
 
 /**
  * {@link Plugin} repository
  */
 public interface PluginRepository extends RestRepository<Plugin, Integer> {
 
-	// Nothing specifics
+	/**
+	 * Return the amount of nodes refining each node plug-in (service or tool), in one grouped query. Plug-ins without
+	 * any refining node are not returned.
+	 *
+	 * @return The tuples <code>[plug-in key, amount of nodes]</code>.
+	 */
+	@Query("SELECT p.key, COUNT(n.id) FROM Plugin p, Node n WHERE p.type <> org.ligoj.app.model.PluginType.FEATURE"
+			+ " AND n.id LIKE CONCAT(p.key, ':%') GROUP BY p.key")
+	List<Object[]> countNodes();
+
+	/**
+	 * Return the amount of subscriptions linked to each node plug-in (service or tool) or to one of its refining
+	 * nodes, in one grouped query. Plug-ins without any subscription are not returned.
+	 *
+	 * @return The tuples <code>[plug-in key, amount of subscriptions]</code>.
+	 */
+	@Query("SELECT p.key, COUNT(s.id) FROM Plugin p, Subscription s INNER JOIN s.node n WHERE p.type <> org.ligoj.app.model.PluginType.FEATURE"
+			+ " AND (n.id = p.key OR n.id LIKE CONCAT(p.key, ':%')) GROUP BY p.key")
+	List<Object[]> countSubscriptions();
+
+	/**
+	 * Return the root nodes of all node plug-ins (service or tool), with their fetched parent.
+	 *
+	 * @return The root nodes, having the same identifier than the related plug-in key.
+	 */
+	@Query("SELECT n FROM Node n LEFT JOIN FETCH n.refined WHERE n.id IN (SELECT p.key FROM Plugin p"
+			+ " WHERE p.type <> org.ligoj.app.model.PluginType.FEATURE)")
+	List<Node> findAllNodes();
 }
@@ -0,0 +1,181 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin;
+
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.ligoj.app.resource.plugin.repository.ChecksumStatus;
+import org.ligoj.app.resource.plugin.repository.TransferListener;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * An asynchronous plug-in installation, and its progress.
+ */
+@Getter
+public class InstallJob implements TransferListener {
+
+	/**
+	 * The job identifier.
+	 */
+	private final String id = UUID.randomUUID().toString();
+
+	/**
+	 * The Maven artifact identifier and also corresponding to the plug-in simple name.
+	 */
+	private final String artifact;
+
+	/**
+	 * The version to install.
+	 */
+	private final String version;
+
+	/**
+	 * The repository identifier the plug-in is downloaded from.
+	 */
+	private final String repository;
+
+	/**
+	 * The submission date.
+	 */
+	private final Date submitted = new Date();
+
+	/**
+	 * The current status.
+	 */
+	private volatile InstallJobStatus status = InstallJobStatus.PENDING;
+
+	/**
+	 * The start date of the download. <code>null</code> while pending.
+	 */
+	private volatile Date start;
+
+	/**
+	 * The completion date. <code>null</code> while not completed.
+	 */
+	private volatile Date end;
+
+	/**
+	 * The total length in bytes. <code>-1</code> while unknown.
+	 */
+	private volatile long length = -1;
+
+	/**
+	 * The checksum verification status. <code>null</code> while not verified, or when the repository does not support
+	 * the verification.
+	 */
+	private volatile ChecksumStatus checksum;
+
+	/**
+	 * The failure message. <code>null</code> while not failed.
+	 */
+	private volatile String error;
+
+	@Getter(AccessLevel.NONE)
+	private final AtomicLong bytes = new AtomicLong();
+
+	@JsonIgnore
+	@Setter(AccessLevel.PACKAGE)
+	private volatile Future<?> future;
+
+	/**
+	 * Constructor of a pending job.
+	 *
+	 * @param artifact
+	 *            The Maven artifact identifier and also corresponding to the plug-in simple name.
+	 * @param version
+	 *            The version to install.
+	 * @param repository
+	 *            The repository identifier the plug-in is downloaded from.
+	 */
+	public InstallJob(final String artifact, final String version, final String repository) {
+		this.artifact = artifact;
+		this.version = version;
+		this.repository = repository;
+	}
+
+	/**
+	 * Return the amount of transferred bytes.
+	 *
+	 * @return The amount of transferred bytes.
+	 */
+	public long getBytes() {
+		return bytes.get();
+	}
+
+	/**
+	 * Return the average throughput since the start of the download.
+	 *
+	 * @return The average throughput in bytes per second. <code>0</code> while pending.
+	 */
+	public long getThroughput() {
+		final Date from = start;
+		if (from == null) {
+			return 0;
+		}
+		final long elapsed = (end == null ? System.currentTimeMillis() : end.getTime()) - from.getTime();
+		return getBytes() * 1000 / Math.max(1, elapsed);
+	}
+
+	@Override
+	public void length(final long length) {
+		this.length = length;
+	}
+
+	@Override
+	public void transferred(final long bytes) {
+		this.bytes.addAndGet(bytes);
+	}
+
+	@Override
+	public void verified(final ChecksumStatus status) {
+		this.checksum = status;
+	}
+
+	/**
+	 * Mark this job as started.
+	 */
+	void started() {
+		start = new Date();
+		status = InstallJobStatus.RUNNING;
+	}
+
+	/**
+	 * Mark this job as succeeded.
+	 */
+	void succeeded() {
+		end = new Date();
+		status = InstallJobStatus.SUCCEEDED;
+	}
+
+	/**
+	 * Mark this job as failed.
+	 *
+	 * @param cause
+	 *            The failure cause.
+	 */
+	void failed(final Throwable cause) {
+		error = ExceptionUtils.getRootCauseMessage(cause);
+		end = new Date();
+		status = InstallJobStatus.FAILED;
+	}
+
+	/**
+	 * Indicate this job is completed, succeeded or not.
+	 *
+	 * @return <code>true</code> when this job is completed.
+	 */
+	@JsonIgnore
+	public boolean isDone() {
+		return end != null;
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityNotFoundException;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+import org.ligoj.app.resource.plugin.repository.TransferListener;
+import org.ligoj.bootstrap.core.resource.BusinessException;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Asynchronous plug-in installations. The installations run on a bounded executor, outside the request threads and
+ * without any transaction, and their progress is exposed until some time after their completion.
+ */
+@Path("/system/plugin/job")
+@Slf4j
+@Component
+@Produces(MediaType.APPLICATION_JSON)
+public class InstallJobResource implements DisposableBean {
+
+	/**
+	 * Amount of concurrent installations.
+	 */
+	private static final int THREADS = 2;
+
+	/**
+	 * Maximal amount of pending installations.
+	 */
+	private static final int QUEUE = 50;
+
+	/**
+	 * Duration the completed jobs are kept.
+	 */
+	private static final long RETENTION = TimeUnit.HOURS.toMillis(1);
+
+	private final Map<String, InstallJob> jobs = new ConcurrentHashMap<>();
+
+	private final ExecutorService executor = new ThreadPoolExecutor(THREADS, THREADS, 0, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<>(QUEUE), r -> {
+				final Thread thread = new Thread(r, "plugin-install"); // NOPMD
+				thread.setDaemon(true);
+				return thread;
+			});
+
+	/**
+	 * The installation performed by a job.
+	 */
+	@FunctionalInterface
+	public interface InstallTask {
+
+		/**
+		 * Install the plug-in.
+		 *
+		 * @param listener
+		 *            The listener to notify of the progress.
+		 * @throws Exception
+		 *             When the installation failed.
+		 */
+		void install(TransferListener listener) throws Exception; // NOSONAR - Any failure is reported by the job
+	}
+
+	/**
+	 * Submit an installation job.
+	 *
+	 * @param artifact
+	 *            The Maven artifact identifier and also corresponding to the plug-in simple name.
+	 * @param version
+	 *            The version to install.
+	 * @param repository
+	 *            The repository identifier the plug-in is downloaded from.
+	 * @param task
+	 *            The installation to run.
+	 * @return The pending job.
+	 */
+	public InstallJob submit(final String artifact, final String version, final String repository, final InstallTask task) {
+		purge();
+		final InstallJob job = new InstallJob(artifact, version, repository);
+		jobs.put(job.getId(), job);
+		try {
+			job.setFuture(execute(() -> run(job, task)));
+		} catch (final RejectedExecutionException e) {
+			jobs.remove(job.getId());
+			throw new BusinessException("Too many pending plug-in installations", e);
+		}
+		return job;
+	}
+
+	/**
+	 * Execute the job on the bounded executor.
+	 *
+	 * @param job
+	 *            The job to execute.
+	 * @return The job future.
+	 * @throws RejectedExecutionException
+	 *             When there are too many pending jobs.
+	 */
+	protected Future<?> execute(final Runnable job) {
+		return executor.submit(job);
+	}
+
+	private void run(final InstallJob job, final InstallTask task) {
+		job.started();
+		try {
+			task.install(job);
+			job.succeeded();
+		} catch (final Exception e) { // NOSONAR - Any failure is reported by the job
+			log.info("Installation job {} of plugin {} v{} failed", job.getId(), job.getArtifact(), job.getVersion(), e);
+			job.failed(e);
+		}
+	}
+
+	/**
+	 * Remove the jobs completed for a while.
+	 */
+	private void purge() {
+		final long limit = System.currentTimeMillis() - RETENTION;
+		jobs.values().removeIf(j -> j.isDone() && j.getEnd().getTime() < limit);
+	}
+
+	/**
+	 * Return all the known jobs, the most recent first.
+	 *
+	 * @return All the pending, running and recently completed jobs.
+	 */
+	@GET
+	public List<InstallJob> findAll() {
+		return jobs.values().stream().sorted(Comparator.comparing(InstallJob::getSubmitted).reversed()).collect(Collectors.toList());
+	}
+
+	/**
+	 * Return the job by its identifier.
+	 *
+	 * @param id
+	 *            The job identifier.
+	 * @return The job.
+	 */
+	@GET
+	@Path("{id}")
+	public InstallJob findById(@PathParam("id") final String id) {
+		final InstallJob job = jobs.get(id);
+		if (job == null) {
+			throw new EntityNotFoundException(id);
+		}
+		return job;
+	}
+
+	@Override
+	public void destroy() {
+		executor.shutdownNow();
+	}
+}
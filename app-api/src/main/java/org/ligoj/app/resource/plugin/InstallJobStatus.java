@@ -0,0 +1,30 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin;
+
+/**
+ * Status of a plug-in installation job.
+ */
+public enum InstallJobStatus {
+
+	/**
+	 * Waiting for an available installation thread.
+	 */
+	PENDING,
+
+	/**
+	 * Being downloaded and installed.
+	 */
+	RUNNING,
+
+	/**
+	 * Installed, a restart is required to enable it.
+	 */
+	SUCCEEDED,
+
+	/**
+	 * Not installed, see the error.
+	 */
+	FAILED
+}
@@ -0,0 +1,57 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Lightweight metadata of a plug-in activated on demand, read without loading its classes. See
+ * {@link PluginHotDeployer}.
+ */
+@Getter
+@AllArgsConstructor
+public class LazyPlugin {
+
+	/**
+	 * The Maven artifact identifier.
+	 */
+	private final String artifact;
+
+	/**
+	 * The version of the archive to activate.
+	 */
+	private final String version;
+
+	/**
+	 * The plug-in key, <code>null</code> when this plug-in has never been configured.
+	 */
+	private final String key;
+
+	/**
+	 * The plug-in archive.
+	 */
+	private final Path file;
+
+	/**
+	 * The paths of the REST resources of this plug-in, relative to the REST servlet and starting with "/".
+	 */
+	private final List<String> paths;
+
+	/**
+	 * Indicate the given REST path targets a resource of this plug-in.
+	 *
+	 * @param path
+	 *            The requested path, relative to the REST servlet.
+	 * @return <code>true</code> when the given path starts with a resource path of this plug-in.
+	 */
+	public boolean matches(final String path) {
+		return path != null && paths.stream().anyMatch(p -> path.equals(p) || path.startsWith(StringUtils.appendIfMissing(p, "/")));
+	}
+}
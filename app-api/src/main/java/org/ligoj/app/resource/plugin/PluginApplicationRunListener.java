@@ -14,7 +14,8 @@ import org.springframework.core.env.ConfigurableEnvironment;
 import lombok.extern.slf4j.Slf4j;
 
 /**
- * Application listener able to alter the class loader to the plugin class-loader.
+ * Application listener able to alter the class loader to the plugin class-loader. The staged plug-in updates are
+ * activated before the plug-ins are loaded.
  */
 @Slf4j
 public class PluginApplicationRunListener implements SpringApplicationRunListener, Ordered {
@@ -33,7 +34,31 @@ public class PluginApplicationRunListener implements SpringApplicationRunListene
 		if (PluginsClassLoader.getInstance() == null) {
 			// Replace the main class loader
 			log.info("Install the plugin classloader for application {}({})", application, args);
-			Thread.currentThread().setContextClassLoader(new PluginsClassLoader());
+			PluginsClassLoader classLoader = new PluginsClassLoader();
+			if (activateStaged(classLoader)) {
+				// Scan again the plug-ins directory with the activated plug-ins
+				classLoader.close();
+				classLoader = new PluginsClassLoader();
+			}
+			Thread.currentThread().setContextClassLoader(classLoader);
+		}
+	}
+
+	/**
+	 * Move the staged plug-in updates to the plug-ins directory.
+	 *
+	 * @param classLoader
+	 *            The plug-in class loader giving the home and plug-ins directories.
+	 * @return <code>true</code> when at least one plug-in has been activated.
+	 */
+	private boolean activateStaged(final PluginsClassLoader classLoader) {
+		try {
+			return !PluginInstaller.activateStaged(classLoader.getHomeDirectory().resolve(PluginResource.STAGING_DIR),
+					classLoader.getPluginDirectory()).isEmpty();
+		} catch (final IOException e) {
+			// The remaining staged plug-ins will be activated by the next restart
+			log.warn("Unable to activate the staged plug-ins", e);
+			return false;
 		}
 	}
 
@@ -0,0 +1,494 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.persistence.Embeddable;
+import javax.persistence.Entity;
+import javax.persistence.MappedSuperclass;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.cxf.Bus;
+import org.apache.cxf.endpoint.Server;
+import org.apache.cxf.jaxrs.JAXRSServiceImpl;
+import org.apache.cxf.jaxrs.lifecycle.SingletonResourceProvider;
+import org.apache.cxf.jaxrs.model.ClassResourceInfo;
+import org.apache.cxf.jaxrs.utils.ResourceUtils;
+import org.ligoj.app.dao.PluginRepository;
+import org.ligoj.app.model.Plugin;
+import org.ligoj.bootstrap.core.resource.TechnicalException;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternResolver;
+import org.springframework.core.type.AnnotationMetadata;
+import org.springframework.core.type.classreading.MetadataReaderFactory;
+import org.springframework.core.type.classreading.SimpleMetadataReaderFactory;
+import org.springframework.data.repository.Repository;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.util.ClassUtils;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Hot deployment of the plug-ins, enabled by <code>ligoj.plugin.hot</code>. Each plug-in is loaded in its own class
+ * loader and child context of the main context. Its {@link org.ligoj.app.api.FeaturePlugin} beans are added to the
+ * {@link PluginRegistry} and configured by the refresh of this child context, and its REST resources are added to the
+ * CXF server. So installing, updating or deleting a plug-in costs only the startup of this plug-in.<br>
+ * The plug-ins loaded by the main context at startup still require a restart to be updated or deleted. A hot deployed
+ * plug-in can only use the classes of the plug-ins loaded at startup. The persistence unit of the main context cannot
+ * be extended, so a plug-in declaring entities or Spring Data repositories also requires a restart. The transactions
+ * of the hot deployed components are managed by the transaction manager of the main context.<br>
+ * The plug-ins of the <code>plugins-lazy</code> directory are not loaded at startup: they are deployed the same way by
+ * their first use. So the startup time and the memory depend on the used plug-ins, not on the installed ones.
+ */
+@Component
+@Slf4j
+public class PluginHotDeployer implements DisposableBean {
+
+	/**
+	 * Plug-ins hot deployment flag.
+	 */
+	public static final String PLUGIN_HOT = "ligoj.plugin.hot";
+
+	/**
+	 * Directory of the plug-ins activated on demand, relative to the home directory. They are not loaded at startup.
+	 */
+	public static final String LAZY_DIR = "plugins-lazy";
+
+	/**
+	 * Scanned package of the plug-in archives.
+	 */
+	private static final String BASE_PACKAGE = "org.ligoj";
+
+	/**
+	 * Identifier of the CXF server.
+	 */
+	private static final String REST_SERVER = "restServer";
+
+	/**
+	 * The annotations of the persistent classes.
+	 */
+	private static final List<String> PERSISTENT_ANNOTATIONS = Arrays.asList(Entity.class.getName(), MappedSuperclass.class.getName(),
+			Embeddable.class.getName());
+
+	@Autowired
+	protected ApplicationContext applicationContext;
+
+	@Autowired
+	protected ConfigurationResource configuration;
+
+	@Autowired
+	protected PluginRegistry registry;
+
+	@Autowired
+	protected PluginInventory inventory;
+
+	@Autowired
+	protected PluginRepository repository;
+
+	/**
+	 * The artifacts loaded by the main context at startup, read from the plug-in class loader once the main context is
+	 * refreshed.
+	 */
+	private volatile Set<String> loaded;
+
+	/**
+	 * The hot deployed plug-ins. Key is the artifact.
+	 */
+	private final Map<String, HotPlugin> plugins = new ConcurrentHashMap<>();
+
+	/**
+	 * A hot deployed plug-in.
+	 */
+	@AllArgsConstructor
+	private static class HotPlugin {
+		private final AnnotationConfigApplicationContext context;
+		private final URLClassLoader classLoader;
+		private final List<ClassResourceInfo> resources;
+	}
+
+	/**
+	 * Configuration of the child contexts: the transactional components are proxied like in the main context.
+	 */
+	@EnableTransactionManagement(proxyTargetClass = true)
+	static class HotPluginConfiguration {
+		// Only the imported configuration, not a component to not be scanned by the main context
+	}
+
+	/**
+	 * Indicate the hot deployment is enabled.
+	 *
+	 * @return <code>true</code> when the hot deployment is enabled.
+	 */
+	public boolean isEnabled() {
+		return Boolean.valueOf(configuration.get(PLUGIN_HOT, "false"));
+	}
+
+	/**
+	 * Indicate the plug-in is hot deployed.
+	 *
+	 * @param artifact
+	 *            The Maven artifact identifier and also corresponding to the plug-in simple name.
+	 * @return <code>true</code> when the plug-in is hot deployed.
+	 */
+	public boolean isDeployed(final String artifact) {
+		return plugins.containsKey(artifact);
+	}
+
+	/**
+	 * Deploy the last version of a plug-in available in the plug-ins directory, replacing the previously hot deployed
+	 * one. When there is no more version, the plug-in is only undeployed.
+	 *
+	 * @param artifact
+	 *            The Maven artifact identifier and also corresponding to the plug-in simple name.
+	 * @return <code>true</code> when the plug-in has been hot deployed or undeployed. <code>false</code> when a restart
+	 *         is required: hot deployment is disabled, the plug-in has been loaded by the main context, or it declares
+	 *         some entities or repositories.
+	 * @throws IOException
+	 *             When the plug-in archive cannot be read.
+	 */
+	public synchronized boolean redeploy(final String artifact) throws IOException {
+		final PluginsClassLoader classLoader = getPluginClassLoader();
+		if (classLoader == null || !isEnabled() || !plugins.containsKey(artifact) && getLoadedPlugins(classLoader).contains(artifact)) {
+			// Restart is required
+			return false;
+		}
+		final Path directory = classLoader.getPluginDirectory();
+		final String version = inventory.getLastVersions(directory).get(artifact);
+		final Path file = version == null ? null : inventory.getVersions(directory, artifact).get(version);
+		if (file != null && !isHotDeployable(file)) {
+			// Restart is required, the current version is kept
+			return false;
+		}
+		undeploy(artifact);
+		if (file != null) {
+			deploy(artifact, version, file);
+		}
+		return true;
+	}
+
+	/**
+	 * Return the artifacts loaded by the main context at startup: the archives of the plug-in class loader. Unlike the
+	 * content of the plug-ins directory, a plug-in installed after the startup is not part of them.
+	 */
+	private Set<String> getLoadedPlugins(final PluginsClassLoader classLoader) {
+		if (loaded == null) {
+			// Main context is not yet refreshed
+			loaded = toArtifacts(classLoader.getURLs());
+		}
+		return loaded;
+	}
+
+	private Set<String> toArtifacts(final URL[] urls) {
+		return Arrays.stream(ObjectUtils.defaultIfNull(urls, new URL[0])).map(u -> PluginInventory.getArtifact(FilenameUtils.getName(u.getPath())))
+				.filter(Objects::nonNull).collect(Collectors.toSet());
+	}
+
+	/**
+	 * Indicate the plug-in archive can be deployed in a child context. The persistence unit of the main context is
+	 * built at startup, so the archives declaring some entities or Spring Data repositories cannot.
+	 *
+	 * @param file
+	 *            The plug-in archive.
+	 * @return <code>true</code> when the plug-in can be hot deployed, <code>false</code> when a restart is required.
+	 * @throws IOException
+	 *             When the archive cannot be read.
+	 */
+	public boolean isHotDeployable(final Path file) throws IOException {
+		final List<String> persistent = new ArrayList<>();
+		scan(file, metadata -> {
+			if (isPersistent(metadata)) {
+				persistent.add(metadata.getClassName());
+			}
+		});
+		if (!persistent.isEmpty()) {
+			log.info("Plugin {} declares entities or repositories {}, restart is required", file.getFileName(), persistent);
+		}
+		return persistent.isEmpty();
+	}
+
+	private boolean isPersistent(final AnnotationMetadata metadata) {
+		return PERSISTENT_ANNOTATIONS.stream().anyMatch(metadata::hasAnnotation)
+				|| metadata.isInterface() && Arrays.stream(metadata.getInterfaceNames()).anyMatch(this::isRepository);
+	}
+
+	/**
+	 * Indicate the given interface is a Spring Data repository. The interfaces of the plug-in itself are not available
+	 * and are checked by their own scan.
+	 */
+	private boolean isRepository(final String name) {
+		try {
+			return Repository.class.isAssignableFrom(ClassUtils.forName(name, applicationContext.getClassLoader()));
+		} catch (final ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Once the main context is refreshed, take the snapshot of the plug-ins loaded at startup, and register the lazy
+	 * plug-ins before the plug-ins are configured.
+	 *
+	 * @param event
+	 *            The Spring event.
+	 * @throws IOException
+	 *             When the lazy plug-ins directory cannot be read.
+	 */
+	@EventListener
+	@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+	public void refreshed(final ContextRefreshedEvent event) throws IOException {
+		final PluginsClassLoader classLoader = getPluginClassLoader();
+		if (event.getApplicationContext() == applicationContext && classLoader != null) {
+			loaded = toArtifacts(classLoader.getURLs());
+			registerLazy();
+		}
+	}
+
+	/**
+	 * Register the last version of each plug-in of the lazy plug-ins directory from its metadata: its key from the
+	 * previous configuration, and the paths of its REST resources read from the archive without loading its classes.
+	 * The lazy plug-ins also loaded at startup, and the ones unable to be hot deployed are ignored.
+	 *
+	 * @return The amount of registered lazy plug-ins.
+	 * @throws IOException
+	 *             When the lazy plug-ins directory cannot be read.
+	 */
+	public int registerLazy() throws IOException {
+		final PluginsClassLoader classLoader = getPluginClassLoader();
+		if (classLoader == null || !classLoader.getHomeDirectory().resolve(LAZY_DIR).toFile().isDirectory()) {
+			// No lazy plug-in
+			return 0;
+		}
+		// Keep the last version of each plug-in
+		final Map<String, Path> files = new HashMap<>();
+		try (Stream<Path> list = Files.list(classLoader.getHomeDirectory().resolve(LAZY_DIR))) {
+			list.filter(p -> PluginInventory.getArtifact(p.getFileName().toString()) != null)
+					.forEach(p -> files.merge(PluginInventory.getArtifact(p.getFileName().toString()), p,
+							(p1, p2) -> getVersion(p1).compareTo(getVersion(p2)) < 0 ? p2 : p1));
+		}
+		files.keySet().removeAll(getLoadedPlugins(classLoader));
+		files.values().removeIf(f -> {
+			try {
+				return !isHotDeployable(f);
+			} catch (final IOException e) {
+				log.warn("Plugin archive {} cannot be read", f, e);
+				return true;
+			}
+		});
+		for (final Map.Entry<String, Path> file : files.entrySet()) {
+			final Plugin plugin = repository.findBy("artifact", file.getKey());
+			final LazyPlugin lazy = new LazyPlugin(file.getKey(), getVersion(file.getValue()).toString(), plugin == null ? null : plugin.getKey(),
+					file.getValue(), getPaths(file.getValue()));
+			registry.registerLazy(lazy, this::activate);
+			log.info("Plugin {} v{} will be activated on demand by {}", lazy.getArtifact(), lazy.getVersion(), lazy.getPaths());
+		}
+		return files.size();
+	}
+
+	private PluginVersion getVersion(final Path file) {
+		final String name = file.getFileName().toString();
+		return PluginVersion.valueOf(StringUtils.removeEnd(name.substring(PluginInventory.getArtifact(name).length() + 1), ".jar"));
+	}
+
+	/**
+	 * Return the paths of the REST resources of a plug-in archive. The class files are read without being loaded.
+	 *
+	 * @param file
+	 *            The plug-in archive.
+	 * @return The paths of the REST resources, starting with "/".
+	 * @throws IOException
+	 *             When the archive cannot be read.
+	 */
+	protected List<String> getPaths(final Path file) throws IOException {
+		final List<String> paths = new ArrayList<>();
+		scan(file, metadata -> {
+			final Map<String, Object> annotation = metadata.getAnnotationAttributes(javax.ws.rs.Path.class.getName());
+
+			// The path variables are not part of the prefix
+			final String path = annotation == null ? "" : StringUtils.strip(StringUtils.substringBefore((String) annotation.get("value"), "{"), "/");
+			if (!path.isEmpty()) {
+				paths.add("/" + path);
+			}
+		});
+		return paths;
+	}
+
+	/**
+	 * Read the metadata of the classes of the scanned package of a plug-in archive, without loading them.
+	 */
+	private void scan(final Path file, final Consumer<AnnotationMetadata> consumer) throws IOException {
+		final MetadataReaderFactory factory = new SimpleMetadataReaderFactory();
+		try (JarFile jar = new JarFile(file.toFile())) {
+			for (final JarEntry entry : Collections.list(jar.entries())) {
+				if (entry.getName().startsWith(BASE_PACKAGE.replace('.', '/') + "/") && entry.getName().endsWith(".class")) {
+					try (InputStream input = jar.getInputStream(entry)) {
+						consumer.accept(factory.getMetadataReader(new ByteArrayResource(IOUtils.toByteArray(input))).getAnnotationMetadata());
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Activate a lazy plug-in: it is deployed in its own child context like a hot deployed plug-in. Once activated,
+	 * the plug-in is configured and its REST resources are available.
+	 *
+	 * @param plugin
+	 *            The lazy plug-in to activate.
+	 */
+	public synchronized void activate(final LazyPlugin plugin) {
+		if (!plugins.containsKey(plugin.getArtifact())) {
+			try {
+				deploy(plugin.getArtifact(), plugin.getVersion(), plugin.getFile());
+			} catch (final IOException e) {
+				throw new TechnicalException(String.format("Unable to activate the plugin %s", plugin.getArtifact()), e);
+			}
+		}
+		registry.unregisterLazy(plugin.getArtifact());
+	}
+
+	/**
+	 * Load the plug-in archive in a new child context.
+	 */
+	private void deploy(final String artifact, final String version, final Path file) throws IOException {
+		final long start = System.currentTimeMillis();
+		final URL url = file.toUri().toURL();
+		final URLClassLoader classLoader = new URLClassLoader(new URL[] { url }, applicationContext.getClassLoader());
+		final AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		context.setDisplayName(artifact + "-" + version);
+		context.setParent(applicationContext);
+		context.setClassLoader(classLoader);
+		context.setResourceLoader(newResourceResolver(classLoader, url));
+		registry.register(artifact, context);
+		try {
+			// The refresh configures the plug-in features
+			context.register(HotPluginConfiguration.class);
+			context.scan(BASE_PACKAGE);
+			context.refresh();
+			plugins.put(artifact, new HotPlugin(context, classLoader, addResources(context)));
+		} catch (final RuntimeException e) {
+			registry.unregister(artifact);
+			context.close();
+			IOUtils.closeQuietly(classLoader);
+			throw e;
+		}
+		log.info("Plugin {} v{} has been hot deployed in {}ms", artifact, version, System.currentTimeMillis() - start);
+	}
+
+	/**
+	 * Return a resolver limited to the resources of the plug-in archive, so only its own components are scanned.
+	 */
+	private ResourcePatternResolver newResourceResolver(final ClassLoader classLoader, final URL url) {
+		return new PathMatchingResourcePatternResolver(classLoader) {
+			@Override
+			public Resource[] getResources(final String locationPattern) throws IOException {
+				return super.getResources(StringUtils.replaceOnce(locationPattern, CLASSPATH_ALL_URL_PREFIX, "jar:" + url + "!/"));
+			}
+		};
+	}
+
+	/**
+	 * Unload a hot deployed plug-in: its REST resources, its registered beans, its context and its class loader.
+	 *
+	 * @param artifact
+	 *            The Maven artifact identifier and also corresponding to the plug-in simple name.
+	 */
+	public synchronized void undeploy(final String artifact) {
+		final HotPlugin plugin = plugins.remove(artifact);
+		if (plugin != null) {
+			removeResources(plugin.resources);
+			registry.unregister(artifact);
+			plugin.context.close();
+			IOUtils.closeQuietly(plugin.classLoader);
+			log.info("Plugin {} has been undeployed", artifact);
+		}
+	}
+
+	/**
+	 * Add the REST resources of the child context to the CXF server.
+	 */
+	private List<ClassResourceInfo> addResources(final ApplicationContext context) {
+		final Server server = getServer();
+		if (server == null) {
+			// No REST server to update
+			return Collections.emptyList();
+		}
+		final Bus bus = applicationContext.getBean(Bus.class);
+		final List<ClassResourceInfo> resources = context.getBeansWithAnnotation(javax.ws.rs.Path.class).values().stream().map(bean -> {
+			final Class<?> type = AopUtils.getTargetClass(bean);
+			final ClassResourceInfo resource = ResourceUtils.createClassResourceInfo(type, type, true, true, bus);
+			resource.setResourceProvider(new SingletonResourceProvider(bean));
+			return resource;
+		}).collect(Collectors.toList());
+		getResources(server).addAll(resources);
+		return resources;
+	}
+
+	private void removeResources(final List<ClassResourceInfo> resources) {
+		final Server server = getServer();
+		if (server != null && !resources.isEmpty()) {
+			getResources(server).removeAll(resources);
+		}
+	}
+
+	/**
+	 * Return the resources of the CXF server, updated in place.
+	 */
+	private List<ClassResourceInfo> getResources(final Server server) {
+		return ((JAXRSServiceImpl) server.getEndpoint().getService()).getClassResourceInfos();
+	}
+
+	private Server getServer() {
+		return applicationContext.containsBean(REST_SERVER) ? applicationContext.getBean(REST_SERVER, Server.class) : null;
+	}
+
+	/**
+	 * Return the current plug-in class loader.
+	 *
+	 * @return The current plug-in class loader.
+	 */
+	protected PluginsClassLoader getPluginClassLoader() {
+		return PluginsClassLoader.getInstance();
+	}
+
+	@Override
+	public void destroy() {
+		new ArrayList<>(plugins.keySet()).forEach(this::undeploy);
+	}
+}
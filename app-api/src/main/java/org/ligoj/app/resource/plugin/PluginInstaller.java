@@ -0,0 +1,353 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.input.ProxyInputStream;
+import org.ligoj.app.resource.plugin.repository.ChecksumStatus;
+import org.ligoj.app.resource.plugin.repository.RepositoryManager;
+import org.ligoj.app.resource.plugin.repository.TransferListener;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Atomic installation of the plug-in files. The content is staged in a temporary file, synchronized to the disk, and
+ * then atomically moved to the target, so a plug-in jar is either the previous one, either the complete new one.<br>
+ * The content is staged without lock, and only the replacement of an artifact is serialized with a striped lock, also
+ * taken by the deletions. Concurrent installations of the same artifact version share a single download.<br>
+ * The checksum of each installed file is cached next to it, so the retained versions can be verified without network.
+ */
+@Component
+@Slf4j
+public class PluginInstaller {
+
+	/**
+	 * Amount of locks shared by the artifacts.
+	 */
+	private static final int STRIPES = 64;
+
+	/**
+	 * Extension of the cached checksum of an installed plug-in, relative to the plug-in file.
+	 */
+	public static final String CHECKSUM_EXTENSION = ".sha256";
+
+	private final Lock[] locks = new Lock[STRIPES];
+
+	/**
+	 * The in-flight downloads. Key is the artifact, its version and the normalized target.
+	 */
+	private final Map<String, Flight> inflight = new ConcurrentHashMap<>();
+
+	/**
+	 * A shared download, forwarding its progress to the listener of each installation sharing it. A listener joining
+	 * the download is first notified of the progress already made.
+	 */
+	private static class Flight implements TransferListener {
+
+		private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+		private final List<TransferListener> listeners = new ArrayList<>();
+
+		private long length = -1;
+
+		private long transferred;
+
+		private ChecksumStatus status;
+
+		private synchronized void join(final TransferListener listener) {
+			if (length >= 0) {
+				listener.length(length);
+			}
+			if (transferred > 0) {
+				listener.transferred(transferred);
+			}
+			if (status != null) {
+				listener.verified(status);
+			}
+			listeners.add(listener);
+		}
+
+		@Override
+		public synchronized void length(final long length) {
+			this.length = length;
+			listeners.forEach(l -> l.length(length));
+		}
+
+		@Override
+		public synchronized void transferred(final long bytes) {
+			this.transferred += bytes;
+			listeners.forEach(l -> l.transferred(bytes));
+		}
+
+		@Override
+		public synchronized void verified(final ChecksumStatus status) {
+			this.status = status;
+			listeners.forEach(l -> l.verified(status));
+		}
+	}
+
+	/**
+	 * Writer of the staged file.
+	 */
+	@FunctionalInterface
+	private interface StagingWriter {
+		void write(Path staging) throws IOException;
+	}
+
+	/**
+	 * Default constructor initializing the locks.
+	 */
+	public PluginInstaller() {
+		for (int i = 0; i < STRIPES; i++) {
+			locks[i] = new ReentrantLock();
+		}
+	}
+
+	/**
+	 * Return the lock guarding the files of the given artifact.
+	 *
+	 * @param artifact
+	 *            The Maven artifact identifier and also corresponding to the plug-in simple name.
+	 * @return The lock of this artifact, shared with some other artifacts.
+	 */
+	public Lock getLock(final String artifact) {
+		return locks[Math.floorMod(artifact.hashCode(), STRIPES)];
+	}
+
+	/**
+	 * Download and install a plug-in. When the same version is already being downloaded to the same target, wait for
+	 * this download instead of starting a new one, and share its result. A download to another target, such as the
+	 * staging directory, is not shared since it would not write this target.
+	 *
+	 * @param repository
+	 *            The repository to download from.
+	 * @param artifact
+	 *            The Maven artifact identifier and also corresponding to the plug-in simple name.
+	 * @param version
+	 *            The version to install.
+	 * @param target
+	 *            The target file.
+	 * @param listener
+	 *            The listener notified of the download progress, including when joining another download.
+	 * @throws IOException
+	 *             When the download or the installation failed.
+	 */
+	public void install(final RepositoryManager repository, final String artifact, final String version, final Path target,
+			final TransferListener listener) throws IOException {
+		final String key = artifact + "-" + version + ":" + target.toAbsolutePath().normalize();
+		final Flight flight = new Flight();
+		final Flight previous = inflight.putIfAbsent(key, flight);
+		if (previous != null) {
+			log.info("Plugin {} v{} is already being downloaded, wait for it", artifact, version);
+			previous.join(listener);
+			await(previous.result);
+			return;
+		}
+		flight.join(listener);
+		try {
+			// The staged file is exclusive to this download, and kept by the downloader to resume it
+			write(artifact, target, target.resolveSibling(target.getFileName() + ".tmp"),
+					staging -> repository.copyArtifact(artifact, version, staging, flight));
+			flight.result.complete(null);
+		} catch (final IOException | RuntimeException e) {
+			flight.result.completeExceptionally(e);
+			throw e;
+		} finally {
+			inflight.remove(key, flight);
+		}
+	}
+
+	/**
+	 * Install a plug-in from the given content.
+	 *
+	 * @param input
+	 *            The plug-in content.
+	 * @param artifact
+	 *            The Maven artifact identifier and also corresponding to the plug-in simple name.
+	 * @param target
+	 *            The target file.
+	 * @param listener
+	 *            The listener notified of the copied bytes.
+	 * @throws IOException
+	 *             When the installation failed.
+	 */
+	public void install(final InputStream input, final String artifact, final Path target, final TransferListener listener)
+			throws IOException {
+		final Path staging = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+		write(artifact, target, staging, file -> Files.copy(new ProxyInputStream(input) {
+			@Override
+			protected void afterRead(final int n) {
+				if (n > 0) {
+					listener.transferred(n);
+				}
+			}
+		}, file, StandardCopyOption.REPLACE_EXISTING));
+	}
+
+	private void await(final CompletableFuture<Void> flight) throws IOException {
+		try {
+			flight.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Installation interrupted", e);
+		} catch (final ExecutionException e) {
+			throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Stage and synchronize the file, and then move it under the lock of the artifact.
+	 */
+	private void write(final String artifact, final Path target, final Path staging, final StagingWriter writer) throws IOException {
+		try {
+			writer.write(staging);
+			try (FileChannel channel = FileChannel.open(staging, StandardOpenOption.WRITE)) {
+				channel.force(true);
+			}
+			final String checksum = digest(staging);
+			final Lock lock = getLock(artifact);
+			lock.lock();
+			try {
+				Files.move(staging, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				cache(target, checksum);
+				sync(target.getParent());
+			} finally {
+				lock.unlock();
+			}
+		} catch (final IOException | RuntimeException e) {
+			Files.deleteIfExists(staging);
+			throw e;
+		}
+	}
+
+	/**
+	 * Move the staged plug-ins to the plug-ins directory, with their cached checksum.
+	 *
+	 * @param staging
+	 *            The staging directory. May not exist.
+	 * @param directory
+	 *            The plug-ins directory.
+	 * @return The activated plug-in files.
+	 * @throws IOException
+	 *             When a staged plug-in cannot be moved. The previous ones are activated.
+	 */
+	public static List<Path> activateStaged(final Path staging, final Path directory) throws IOException {
+		final List<Path> activated = new ArrayList<>();
+		if (!Files.isDirectory(staging)) {
+			// Nothing to activate
+			return activated;
+		}
+		try (Stream<Path> files = Files.list(staging)) {
+			for (final Path file : files.filter(p -> p.getFileName().toString().endsWith(".jar")).collect(Collectors.toList())) {
+				log.info("Activate the staged plug-in {}", file.getFileName());
+				activated.add(move(file, directory));
+			}
+		}
+		return activated;
+	}
+
+	/**
+	 * Move a plug-in file to the given directory, with its cached checksum.
+	 *
+	 * @param file
+	 *            The plug-in file.
+	 * @param directory
+	 *            The target directory.
+	 * @return The moved plug-in file.
+	 * @throws IOException
+	 *             When the file cannot be moved.
+	 */
+	public static Path move(final Path file, final Path directory) throws IOException {
+		final Path checksum = getChecksumFile(file);
+		if (Files.exists(checksum)) {
+			Files.move(checksum, directory.resolve(checksum.getFileName().toString()), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		}
+		return Files.move(file, directory.resolve(file.getFileName().toString()), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Return the file caching the checksum of an installed plug-in.
+	 *
+	 * @param file
+	 *            The plug-in file.
+	 * @return The checksum file, next to the plug-in file.
+	 */
+	public static Path getChecksumFile(final Path file) {
+		return file.resolveSibling(file.getFileName() + CHECKSUM_EXTENSION);
+	}
+
+	/**
+	 * Check the integrity of an installed plug-in file without any network access. The file is checked against the
+	 * checksum cached by its installation, or only its archive structure when there is no cached checksum.
+	 *
+	 * @param file
+	 *            The plug-in file.
+	 * @throws IOException
+	 *             When the file cannot be read or is corrupted.
+	 */
+	public void verify(final Path file) throws IOException {
+		final Path checksum = getChecksumFile(file);
+		if (Files.exists(checksum)) {
+			if (!new String(Files.readAllBytes(checksum), StandardCharsets.US_ASCII).trim().equalsIgnoreCase(digest(file))) {
+				throw new IOException(String.format("Checksum of %s does not match the installed one", file.getFileName()));
+			}
+		} else {
+			// Installed before the checksums were cached, the central directory of the archive is read
+			try (JarFile jar = new JarFile(file.toFile())) {
+				log.info("Plugin {} has no cached checksum, only its archive has been checked", file.getFileName());
+			}
+		}
+	}
+
+	/**
+	 * Cache the checksum of an installed plug-in. A failure only disables the checksum verification of this file.
+	 */
+	private void cache(final Path target, final String checksum) {
+		try {
+			Files.write(getChecksumFile(target), checksum.getBytes(StandardCharsets.US_ASCII));
+		} catch (final IOException e) {
+			log.warn("Checksum of plug-in {} cannot be cached", target.getFileName(), e);
+		}
+	}
+
+	private String digest(final Path file) throws IOException {
+		try (InputStream input = Files.newInputStream(file)) {
+			return DigestUtils.sha256Hex(input);
+		}
+	}
+
+	/**
+	 * Synchronize the directory entries, not supported by all the file systems.
+	 */
+	private void sync(final Path directory) {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (final IOException e) {
+			log.debug("Directory {} cannot be synchronized", directory, e);
+		}
+	}
+}
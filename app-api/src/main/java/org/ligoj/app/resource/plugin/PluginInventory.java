@@ -0,0 +1,319 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.IOUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * In-memory inventory of the plug-ins directory. The directory is scanned once, then kept up to date by a
+ * {@link WatchService} and by the explicit notifications of the installations and the deletions, so the requests do
+ * not list the directory.<br>
+ * When the file system cannot be watched, or when some events are lost, the directory is scanned again.
+ */
+@Component
+@Slf4j
+public class PluginInventory implements DisposableBean {
+
+	/**
+	 * A versioned plug-in file name, such as <code>plugin-foo-1.0.1.jar</code>.
+	 */
+	private static final Pattern VERSIONED = Pattern.compile("^(.+?)-(\\d.*)\\.jar$");
+
+	private static final Comparator<String> VERSION_ORDER = Comparator.comparing(PluginVersion::valueOf)
+			.thenComparing(Comparator.naturalOrder());
+
+	/**
+	 * The inventoried files of a directory.
+	 */
+	private static final class Entries {
+
+		/**
+		 * All plug-in files of the directory. Key is the file name.
+		 */
+		private final NavigableMap<String, Path> files = new ConcurrentSkipListMap<>();
+
+		/**
+		 * The versioned plug-in files. Key is the artifact, value is the sorted versions.
+		 */
+		private final Map<String, NavigableMap<String, Path>> artifacts = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * The current inventory. A full scan builds new entries and then replaces this reference, so the lock-free readers
+	 * never see a partially scanned directory. The incremental changes are applied in place under the lock of this
+	 * inventory.
+	 */
+	private volatile Entries entries = new Entries();
+
+	/**
+	 * The current inventoried directory, absolute and normalized.
+	 */
+	private volatile Path directory;
+
+	private volatile WatchService watcher;
+
+	/**
+	 * Return the last version of each plug-in of the given directory.
+	 *
+	 * @param directory
+	 *            The plug-ins directory.
+	 * @return The last version of each plug-in. Key is the artifact.
+	 */
+	public Map<String, String> getLastVersions(final Path directory) {
+		bind(directory);
+		final Map<String, String> result = new HashMap<>();
+		entries.artifacts.forEach((artifact, versions) -> {
+			if (!versions.isEmpty()) {
+				result.put(artifact, versions.lastKey());
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Return all versions of a plug-in.
+	 *
+	 * @param directory
+	 *            The plug-ins directory.
+	 * @param artifact
+	 *            The Maven artifact identifier and also corresponding to the plug-in simple name.
+	 * @return The sorted versions of this plug-in. Key is the version, value is the file.
+	 */
+	public NavigableMap<String, Path> getVersions(final Path directory, final String artifact) {
+		bind(directory);
+		return new ConcurrentSkipListMap<>(entries.artifacts.getOrDefault(artifact, new ConcurrentSkipListMap<>(VERSION_ORDER)));
+	}
+
+	/**
+	 * Return the plug-in files having a name starting with the given prefix.
+	 *
+	 * @param directory
+	 *            The plug-ins directory.
+	 * @param prefix
+	 *            The file name prefix.
+	 * @return The matching files.
+	 */
+	public Collection<Path> getFiles(final Path directory, final String prefix) {
+		bind(directory);
+		return new ArrayList<>(entries.files.subMap(prefix, true, prefix + Character.MAX_VALUE, true).values());
+	}
+
+	/**
+	 * Indicate the given file exists. The files of the inventoried directory are checked from the memory, the other
+	 * ones from the file system.
+	 *
+	 * @param file
+	 *            The file to check.
+	 * @return <code>true</code> when the file exists.
+	 */
+	public boolean exists(final Path file) {
+		final Path normalized = file.toAbsolutePath().normalize();
+		if (isInventoried(normalized)) {
+			return entries.files.containsKey(normalized.getFileName().toString());
+		}
+		return Files.exists(normalized);
+	}
+
+	/**
+	 * Notify a plug-in file has been added. Ignored when the file is not in the inventoried directory.
+	 *
+	 * @param file
+	 *            The added file.
+	 */
+	public void added(final Path file) {
+		final Path normalized = file.toAbsolutePath().normalize();
+		synchronized (this) {
+			if (isInventoried(normalized)) {
+				add(entries, normalized);
+			}
+		}
+	}
+
+	/**
+	 * Notify a plug-in file has been removed. Ignored when the file is not in the inventoried directory.
+	 *
+	 * @param file
+	 *            The removed file.
+	 */
+	public void removed(final Path file) {
+		final Path normalized = file.toAbsolutePath().normalize();
+		synchronized (this) {
+			if (isInventoried(normalized)) {
+				remove(entries, normalized.getFileName().toString());
+			}
+		}
+	}
+
+	/**
+	 * Return the artifact of a versioned plug-in file name.
+	 *
+	 * @param name
+	 *            The file name such as <code>plugin-foo-1.0.1.jar</code>.
+	 * @return The artifact such as <code>plugin-foo</code>. <code>null</code> when the name is not versioned.
+	 */
+	public static String getArtifact(final String name) {
+		final Matcher matcher = VERSIONED.matcher(name);
+		return matcher.matches() ? matcher.group(1) : null;
+	}
+
+	private boolean isInventoried(final Path file) {
+		return watcher != null && file.getParent() != null && file.getParent().equals(directory);
+	}
+
+	/**
+	 * Inventory the given directory, when it is not yet the watched one. When the directory cannot be watched, it is
+	 * scanned each time.
+	 */
+	private void bind(final Path directory) {
+		final Path normalized = directory.toAbsolutePath().normalize();
+		if (watcher != null && normalized.equals(this.directory)) {
+			// Already watched
+			return;
+		}
+		synchronized (this) {
+			if (watcher != null && normalized.equals(this.directory)) {
+				return;
+			}
+			close();
+			this.directory = normalized;
+			try {
+				// Register before the scan to not miss any change
+				final WatchService newWatcher = normalized.getFileSystem().newWatchService();
+				try {
+					normalized.register(newWatcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+							StandardWatchEventKinds.OVERFLOW);
+				} catch (final IOException | RuntimeException e) {
+					IOUtils.closeQuietly(newWatcher);
+					throw e;
+				}
+				watcher = newWatcher;
+				final Thread thread = new Thread(() -> watch(newWatcher), "plugin-inventory"); // NOPMD
+				thread.setDaemon(true);
+				thread.start();
+			} catch (final NoSuchFileException e) {
+				log.info("Plug-ins directory {} does not exist", normalized);
+			} catch (final IOException e) {
+				log.warn("Plug-ins directory {} cannot be watched, it will be scanned each time", normalized, e);
+			}
+			scan();
+		}
+	}
+
+	/**
+	 * Full scan of the current directory.
+	 */
+	private synchronized void scan() {
+		final Entries scanned = new Entries();
+		try (Stream<Path> list = Files.list(directory)) {
+			list.filter(p -> p.getFileName().toString().endsWith(".jar")).forEach(p -> add(scanned, p));
+		} catch (final NoSuchFileException e) {
+			// No plug-in at all
+		} catch (final IOException e) {
+			log.warn("Unable to list the plug-ins directory {}", directory, e);
+		}
+		entries = scanned;
+	}
+
+	private void add(final Entries inventory, final Path file) {
+		final String name = file.getFileName().toString();
+		inventory.files.put(name, file);
+		final Matcher matcher = VERSIONED.matcher(name);
+		if (matcher.matches()) {
+			inventory.artifacts.computeIfAbsent(matcher.group(1), a -> new ConcurrentSkipListMap<>(VERSION_ORDER)).put(matcher.group(2), file);
+		}
+	}
+
+	private void remove(final Entries inventory, final String name) {
+		inventory.files.remove(name);
+		final Matcher matcher = VERSIONED.matcher(name);
+		if (matcher.matches()) {
+			inventory.artifacts.computeIfPresent(matcher.group(1), (a, versions) -> {
+				versions.remove(matcher.group(2));
+				return versions.isEmpty() ? null : versions;
+			});
+		}
+	}
+
+	/**
+	 * Apply the changes of the directory until the watch service is closed.
+	 */
+	private void watch(final WatchService service) {
+		try {
+			while (true) {
+				final WatchKey key = service.take();
+				final List<WatchEvent<?>> events = key.pollEvents();
+				final Path parent = (Path) key.watchable();
+				synchronized (this) {
+					if (service != watcher) {
+						// This watcher has been replaced
+						return;
+					}
+					if (events.stream().anyMatch(e -> e.kind() == StandardWatchEventKinds.OVERFLOW)) {
+						// Some events are lost
+						scan();
+					} else {
+						apply(parent, events);
+					}
+					if (!key.reset()) {
+						// The directory is no more accessible, the next access scans it again
+						log.info("Plug-ins directory {} is no more watched", parent);
+						close();
+						return;
+					}
+				}
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (final ClosedWatchServiceException e) {
+			// Inventory has been closed
+		}
+	}
+
+	private void apply(final Path parent, final List<WatchEvent<?>> events) {
+		for (final WatchEvent<?> event : events.stream().filter(e -> e.context().toString().endsWith(".jar")).collect(Collectors.toList())) {
+			if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+				add(entries, parent.resolve((Path) event.context()));
+			} else {
+				remove(entries, event.context().toString());
+			}
+		}
+	}
+
+	private synchronized void close() {
+		IOUtils.closeQuietly(watcher);
+		watcher = null;
+	}
+
+	@Override
+	public void destroy() {
+		close();
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin;
+
+import org.apache.commons.lang3.StringUtils;
+import org.ligoj.app.model.PluginType;
+
+import lombok.Getter;
+
+/**
+ * A pre-parsed plug-in key. The naming convention is <code>type:name(:sub-name)*</code>, for sample
+ * <code>service:id:ldap</code>.
+ */
+@Getter
+public class PluginKey {
+
+	/**
+	 * The original plug-in key.
+	 */
+	private final String key;
+
+	/**
+	 * The plug-in type computed from the amount of fragments of the key. Only relevant for node plug-ins. May be
+	 * <code>null</code> when the key does not follow the convention.
+	 */
+	private final PluginType type;
+
+	/**
+	 * The closest parent key, or <code>null</code> when this key is the top most node definition. For sample the
+	 * parent of <code>service:id:ldap</code> is <code>service:id</code>, and the one of <code>service:id</code> is
+	 * <code>null</code>.
+	 */
+	private final String parent;
+
+	/**
+	 * The Maven "artifactId" as it should be when the naming convention is respected : the first fragment is replaced
+	 * by "plugin". For sample <code>plugin-id-ldap</code>.
+	 */
+	private final String artifact;
+
+	/**
+	 * Parse the given plug-in key.
+	 *
+	 * @param key
+	 *            The plug-in key to parse.
+	 */
+	public PluginKey(final String key) {
+		this.key = key;
+		final int fragments = StringUtils.countMatches(key, ':');
+		this.type = fragments < PluginType.values().length ? PluginType.values()[fragments] : null;
+		final int index = key.lastIndexOf(':');
+		final String parentKey = index == -1 ? "" : key.substring(0, index);
+		this.parent = parentKey.indexOf(':') == -1 ? null : parentKey;
+		this.artifact = "plugin-" + (key.indexOf(':') == -1 ? "" : key.substring(key.indexOf(':') + 1).replace(':', '-'));
+	}
+}
@@ -0,0 +1,42 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Activate the lazy plug-in owning the requested REST resource before the request reaches the REST servlet. See
+ * {@link PluginHotDeployer}.
+ */
+public class PluginLazyFilter extends OncePerRequestFilter {
+
+	private final PluginRegistry registry;
+
+	/**
+	 * Filter using the lazy plug-ins of the given registry.
+	 *
+	 * @param registry
+	 *            The plug-in registry.
+	 */
+	public PluginLazyFilter(final PluginRegistry registry) {
+		this.registry = registry;
+	}
+
+	@Override
+	protected void doFilterInternal(final HttpServletRequest request, final HttpServletResponse response, final FilterChain chain)
+			throws ServletException, IOException {
+		if (!registry.getLazyPlugins().isEmpty()) {
+			// The path is relative to the REST servlet
+			registry.activate(request.getPathInfo());
+		}
+		chain.doFilter(request, response);
+	}
+}
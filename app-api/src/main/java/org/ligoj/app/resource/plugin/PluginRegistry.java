@@ -0,0 +1,274 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.ligoj.app.api.FeaturePlugin;
+import org.ligoj.app.resource.plugin.repository.EmptyRepositoryManager;
+import org.ligoj.app.resource.plugin.repository.RepositoryManager;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * In-memory registry of the enabled {@link FeaturePlugin} and {@link RepositoryManager} beans. Built once when the
+ * context is refreshed, before the plug-ins are configured, and then provides constant time lookups.<br>
+ * The beans of the hot deployed plug-ins are read from their own child context, see {@link PluginHotDeployer}. The lazy
+ * plug-ins are only known by their metadata until their activation.
+ */
+@Component
+@Slf4j
+public class PluginRegistry {
+
+	/**
+	 * Repository manager used when the requested one is not found.
+	 */
+	public static final RepositoryManager EMPTY_REPOSITORY = new EmptyRepositoryManager();
+
+	/**
+	 * The registered beans of a refresh.
+	 */
+	private static final class Beans {
+
+		/**
+		 * The enabled features. Key is the feature key.
+		 */
+		private final Map<String, FeaturePlugin> features;
+
+		/**
+		 * The enabled features. Key is the Maven artifact identifier.
+		 */
+		private final Map<String, FeaturePlugin> artifacts;
+
+		/**
+		 * The repository managers. Key is the repository identifier.
+		 */
+		private final Map<String, RepositoryManager> repositories;
+
+		private Beans(final Map<String, FeaturePlugin> features, final Map<String, FeaturePlugin> artifacts,
+				final Map<String, RepositoryManager> repositories) {
+			this.features = Collections.unmodifiableMap(features);
+			this.artifacts = Collections.unmodifiableMap(artifacts);
+			this.repositories = Collections.unmodifiableMap(repositories);
+		}
+	}
+
+	/**
+	 * The current beans. A refresh, also done at runtime by the hot deployments, builds new beans and then replaces
+	 * this reference, so the lock-free readers see all the maps of the same refresh.
+	 */
+	private volatile Beans beans = new Beans(Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap());
+
+	/**
+	 * Parsed keys cache. Since this cache also accepts keys of not enabled plug-ins, it is not cleared on refresh.
+	 */
+	private final Map<String, PluginKey> keys = new ConcurrentHashMap<>();
+
+	/**
+	 * The child contexts of the hot deployed plug-ins. Key is the artifact.
+	 */
+	private final Map<String, ConfigurableApplicationContext> children = new ConcurrentHashMap<>();
+
+	/**
+	 * The lazy plug-ins not yet activated. Key is the artifact.
+	 */
+	private final Map<String, LazyPlugin> lazy = new ConcurrentHashMap<>();
+
+	/**
+	 * The activation of the lazy plug-ins.
+	 */
+	private volatile Consumer<LazyPlugin> activator = p -> {
+		// No activation
+	};
+
+	/**
+	 * The main context.
+	 */
+	private ApplicationContext root;
+
+	/**
+	 * Build the registry from the refreshed context. Executed before any other listener.
+	 *
+	 * @param event
+	 *            The Spring event.
+	 */
+	@EventListener
+	@Order(Ordered.HIGHEST_PRECEDENCE)
+	public void refresh(final ContextRefreshedEvent event) {
+		refresh(event.getApplicationContext());
+	}
+
+	/**
+	 * Build the registry from the beans of the given context. When this context is not a registered child context, it
+	 * replaces the main context.
+	 *
+	 * @param context
+	 *            The context holding the plug-ins and the repository managers.
+	 */
+	public synchronized void refresh(final ApplicationContext context) {
+		if (!children.containsValue(context)) {
+			this.root = context;
+		}
+		final List<ApplicationContext> contexts = new ArrayList<>();
+		contexts.add(root);
+		children.values().stream().filter(ConfigurableApplicationContext::isActive).forEach(contexts::add);
+		final Map<String, FeaturePlugin> features = contexts.stream().flatMap(c -> c.getBeansOfType(FeaturePlugin.class).values().stream())
+				.collect(Collectors.toMap(FeaturePlugin::getKey, Function.identity(), (f1, f2) -> f1));
+		final Map<String, FeaturePlugin> artifacts = features.values().stream()
+				.collect(Collectors.toMap(f -> getKey(f.getKey()).getArtifact(), Function.identity(), (f1, f2) -> f1));
+		final Map<String, RepositoryManager> repositories = contexts.stream()
+				.flatMap(c -> c.getBeansOfType(RepositoryManager.class).values().stream())
+				.collect(Collectors.toMap(RepositoryManager::getId, Function.identity(), (r1, r2) -> r1));
+		this.beans = new Beans(features, artifacts, repositories);
+		log.info("Plugin registry refreshed with {} features and {} repositories", features.size(), repositories.size());
+	}
+
+	/**
+	 * Register the child context of a hot deployed plug-in. Its beans are added to the registry when this context is
+	 * refreshed.
+	 *
+	 * @param artifact
+	 *            The Maven artifact identifier of the plug-in.
+	 * @param context
+	 *            The child context, not yet refreshed.
+	 */
+	public void register(final String artifact, final ConfigurableApplicationContext context) {
+		children.put(artifact, context);
+	}
+
+	/**
+	 * Remove the beans of a hot deployed plug-in from the registry.
+	 *
+	 * @param artifact
+	 *            The Maven artifact identifier of the plug-in.
+	 */
+	public synchronized void unregister(final String artifact) {
+		if (children.remove(artifact) != null && root != null) {
+			refresh(root);
+		}
+	}
+
+	/**
+	 * Register a plug-in activated on demand, by the first request to one of its REST resources. Its beans are added to
+	 * the registry when it is activated.
+	 *
+	 * @param plugin
+	 *            The lazy plug-in metadata.
+	 * @param activator
+	 *            The activation of the lazy plug-ins.
+	 */
+	public void registerLazy(final LazyPlugin plugin, final Consumer<LazyPlugin> activator) {
+		this.activator = activator;
+		lazy.put(plugin.getArtifact(), plugin);
+	}
+
+	/**
+	 * Remove a lazy plug-in, once activated or deleted.
+	 *
+	 * @param artifact
+	 *            The Maven artifact identifier of the plug-in.
+	 */
+	public void unregisterLazy(final String artifact) {
+		lazy.remove(artifact);
+	}
+
+	/**
+	 * Return the lazy plug-ins not yet activated.
+	 *
+	 * @return The lazy plug-ins not yet activated. Key is the artifact.
+	 */
+	public Map<String, LazyPlugin> getLazyPlugins() {
+		return Collections.unmodifiableMap(lazy);
+	}
+
+	/**
+	 * Activate the lazy plug-in owning the REST resource of the given path, if any.
+	 *
+	 * @param path
+	 *            The requested path, relative to the REST servlet.
+	 * @return <code>true</code> when a lazy plug-in has been activated.
+	 */
+	public boolean activate(final String path) {
+		final Optional<LazyPlugin> plugin = lazy.values().stream().filter(p -> p.matches(path)).findFirst();
+		plugin.ifPresent(activator);
+		return plugin.isPresent();
+	}
+
+	/**
+	 * Return all enabled features.
+	 *
+	 * @return All enabled features. Key is the feature key.
+	 */
+	public Map<String, FeaturePlugin> getFeatures() {
+		return beans.features;
+	}
+
+	/**
+	 * Return the enabled feature by its key.
+	 *
+	 * @param key
+	 *            The feature key.
+	 * @return The enabled feature or <code>null</code>.
+	 */
+	public FeaturePlugin getFeature(final String key) {
+		return beans.features.get(key);
+	}
+
+	/**
+	 * Return the enabled feature by its Maven artifact identifier.
+	 *
+	 * @param artifact
+	 *            The Maven artifact identifier.
+	 * @return The enabled feature or <code>null</code>.
+	 */
+	public FeaturePlugin getFeatureByArtifact(final String artifact) {
+		return beans.artifacts.get(artifact);
+	}
+
+	/**
+	 * Return the {@link RepositoryManager} with the given identifier.
+	 *
+	 * @param repository
+	 *            The repository identifier.
+	 * @return The {@link RepositoryManager} with the given identifier or {@link #EMPTY_REPOSITORY}
+	 */
+	public RepositoryManager getRepositoryManager(final String repository) {
+		return beans.repositories.getOrDefault(repository, EMPTY_REPOSITORY);
+	}
+
+	/**
+	 * Return all registered repository managers.
+	 *
+	 * @return All registered repository managers. Key is the repository identifier.
+	 */
+	public Map<String, RepositoryManager> getRepositoryManagers() {
+		return beans.repositories;
+	}
+
+	/**
+	 * Return the parsed plug-in key.
+	 *
+	 * @param key
+	 *            The plug-in key.
+	 * @return The parsed plug-in key.
+	 */
+	public PluginKey getKey(final String key) {
+		return keys.computeIfAbsent(key, PluginKey::new);
+	}
+}
@@ -4,32 +4,49 @@
 package org.ligoj.app.resource.plugin;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.URLConnection;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.NavigableMap;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.jar.JarFile;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
 
 import javax.persistence.EntityManager;
+import javax.persistence.EntityNotFoundException;
 import javax.transaction.Transactional;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
@@ -43,45 +60,55 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.cxf.jaxrs.ext.multipart.Multipart;
+import org.hibernate.Session;
 import org.ligoj.app.api.FeaturePlugin;
 import org.ligoj.app.api.ServicePlugin;
 import org.ligoj.app.api.SubscriptionMode;
 import org.ligoj.app.api.ToolPlugin;
 import org.ligoj.app.dao.NodeRepository;
 import org.ligoj.app.dao.PluginRepository;
-import org.ligoj.app.dao.SubscriptionRepository;
 import org.ligoj.app.model.Node;
 import org.ligoj.app.model.Plugin;
 import org.ligoj.app.model.PluginType;
 import org.ligoj.app.model.Subscription;
 import org.ligoj.app.resource.node.NodeResource;
+import org.ligoj.app.resource.plugin.repository.AggregatedRepositoryManager;
 import org.ligoj.app.resource.plugin.repository.Artifact;
-import org.ligoj.app.resource.plugin.repository.EmptyRepositoryManager;
+import org.ligoj.app.resource.plugin.repository.PluginCatalog;
+import org.ligoj.app.resource.plugin.repository.RepositoryIndexCache;
+import org.ligoj.app.resource.plugin.repository.RepositorySnapshot;
 import org.ligoj.app.resource.plugin.repository.RepositoryManager;
+import org.ligoj.app.resource.plugin.repository.TransferListener;
 import org.ligoj.bootstrap.core.INamableBean;
 import org.ligoj.bootstrap.core.NamedBean;
-import org.ligoj.bootstrap.core.SpringUtils;
 import org.ligoj.bootstrap.core.dao.csv.CsvForJpa;
 import org.ligoj.bootstrap.core.model.AbstractBusinessEntity;
 import org.ligoj.bootstrap.core.resource.BusinessException;
 import org.ligoj.bootstrap.core.resource.TechnicalException;
 import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.CacheManager;
 import org.springframework.cloud.context.restart.RestartEndpoint;
-import org.springframework.context.ApplicationContext;
 import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.data.domain.Persistable;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import lombok.extern.slf4j.Slf4j;
 
 /**
- * Manage plug-in life-cycle.
+ * Manage plug-in life-cycle.<br>
+ * Only the operations updating the plug-in entities are transactional. The remote repository queries, the downloads
+ * and the file system operations run without transaction, so they do not hold a connection of the pool. The read-only
+ * queries use the short transactions of the repositories.
  *
  * @see <a href="https://repository.sonatype.org/nexus-indexer-lucene-plugin/default/docs/path__lucene_search.html">OSS
  *      lucene_search</a>
@@ -89,28 +116,62 @@ import lombok.extern.slf4j.Slf4j;
 @Path("/system/plugin")
 @Slf4j
 @Component
-@Transactional
 @Produces(MediaType.APPLICATION_JSON)
 public class PluginResource {
 
 	private static final String REPO_CENTRAL = "central";
 
+	/**
+	 * Default maximal amount of plug-ins returned by a search.
+	 */
+	private static final String SEARCH_LIMIT = "50";
+
 	/**
 	 * Property identifying an array of plug-ins to ignore.
 	 */
 	private static final String PLUGIN_IGNORE = "ligoj.plugin.ignore";
 
 	/**
-	 * Plug-ins auto update flag.
+	 * Directory of the staged plug-in updates, relative to the home directory.
+	 */
+	public static final String STAGING_DIR = "plugins-staging";
+
+	/**
+	 * Directory of the plug-in versions set aside by a rollback, relative to the home directory.
+	 */
+	public static final String ROLLBACK_DIR = "plugins-rollback";
+
+	/**
+	 * Fingerprint of the plug-ins configured by the last refresh. When unchanged, the refresh is skipped.
 	 */
-	private static final String PLUGIN_UPDATE = "ligoj.plugin.update";
+	private static final String PLUGIN_FINGERPRINT = "ligoj.plugin.fingerprint";
 
 	/**
 	 * Plug-ins repository used for auto-update mode.
 	 */
 	private static final String PLUGIN_REPOSITORY = "ligoj.plugin.repository";
 
-	private static final RepositoryManager EMPTY_REPOSITORY = new EmptyRepositoryManager();
+	/**
+	 * Amount of plug-ins concurrently downloaded by the auto-update.
+	 */
+	private static final String PLUGIN_UPDATE_PARALLELISM = "ligoj.plugin.update.parallelism";
+
+	/**
+	 * Amount of CSV entities checked, inserted and flushed together by the import of a plug-in.
+	 */
+	private static final int IMPORT_CHUNK = 500;
+
+	/**
+	 * Amount of plug-ins concurrently installed or updated at startup. Default is 1: one plug-in at a time within a
+	 * single transaction.
+	 */
+	private static final String PLUGIN_INSTALL_PARALLELISM = "ligoj.plugin.install.parallelism";
+
+	/**
+	 * Size of the connection pool. The concurrent plug-in configurations keep at least one connection available.
+	 */
+	@Value("${jdbc.maxPoolSize:150}")
+	protected int maxPoolSize;
 
 	@Autowired
 	private NodeRepository nodeRepository;
@@ -121,9 +182,6 @@ public class PluginResource {
 	@Autowired
 	private PluginRepository repository;
 
-	@Autowired
-	private SubscriptionRepository subscriptionRepository;
-
 	@Autowired
 	protected CsvForJpa csvForJpa;
 
@@ -134,16 +192,37 @@ public class PluginResource {
 	private RestartEndpoint restartEndpoint;
 
 	@Autowired
-	private ApplicationContext context;
+	protected PluginRegistry registry;
+
+	@Autowired
+	private PluginCatalog catalog;
+
+	@Autowired
+	private RepositoryIndexCache indexCache;
 
 	@Autowired
 	private ConfigurationResource configuration;
 
+	@Autowired
+	private PluginInstaller installer;
+
+	@Autowired
+	protected InstallJobResource jobs;
+
+	@Autowired
+	protected PluginInventory inventory;
+
+	@Autowired
+	protected PluginHotDeployer deployer;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
 	/**
 	 * Return all plug-ins with details.
 	 *
 	 * @param repository
-	 *            The repository identifier to query.
+	 *            The repository identifier to query. See {@link AggregatedRepositoryManager#ID} to query all of them.
 	 * @return All plug-ins with details.
 	 * @throws IOException
 	 *             When the last version index file cannot be be retrieved.
@@ -152,20 +231,22 @@ public class PluginResource {
 	public List<PluginVo> findAll(@QueryParam("repository") @DefaultValue(REPO_CENTRAL) final String repository) throws IOException {
 		// Get the available plug-ins
 		final Map<String, Artifact> lastVersion = getLastPluginVersions(repository);
-		final Map<String, FeaturePlugin> enabledFeatures = context.getBeansOfType(FeaturePlugin.class);
+		// Get the node statistics of all plug-ins at once
+		final PluginStatistics statistics = new PluginStatistics(this.repository);
 
 		// Get the enabled plug-in features
 		final Map<String, PluginVo> enabled = this.repository.findAll().stream()
-				.map(p -> toVo(lastVersion, p, enabledFeatures.values().stream().filter(f -> p.getKey().equals(f.getKey())).findFirst().orElse(null)))
+				.map(p -> toVo(lastVersion, statistics, p, registry.getFeature(p.getKey())))
 				.filter(Objects::nonNull).collect(Collectors.toMap(p -> p.getPlugin().getArtifact(), Function.identity()));
 
 		// Add pending installation: available but not yet enabled plug-ins
-		getPluginClassLoader().getInstalledPlugins().entrySet().forEach(i -> {
+		getInstalledPlugins().entrySet().forEach(i -> {
+			final PluginVersion localVersion = PluginVersion.valueOf(i.getValue());
 			enabled.computeIfPresent(i.getKey(), (k, p) -> {
 				// Check if it's an update
-				if (!p.getPlugin().getVersion().equals(toTrimmedVersion(i.getValue()))) {
+				if (!PluginVersion.valueOf(p.getPlugin().getVersion()).equals(localVersion)) {
 					// Corresponds to a different version
-					p.setLatestLocalVersion(toTrimmedVersion(i.getValue()));
+					p.setLatestLocalVersion(localVersion.toString());
 				}
 				p.setDeleted(isDeleted(p));
 				return p;
@@ -181,7 +262,7 @@ public class PluginResource {
 				p.setId(k);
 				p.setName(k);
 				p.setPlugin(plugin);
-				p.setLatestLocalVersion(toTrimmedVersion(i.getValue()));
+				p.setLatestLocalVersion(localVersion.toString());
 				return p;
 			});
 		});
@@ -196,7 +277,16 @@ public class PluginResource {
 	 * @return <true> when the plug-in is deleted locally from the FS.
 	 */
 	protected boolean isDeleted(final PluginVo plugin) {
-		return !new File(plugin.getLocation()).exists();
+		return !inventory.exists(new File(plugin.getLocation()).toPath());
+	}
+
+	/**
+	 * Return the last version of each plug-in available in the plug-ins directory, from the inventory.
+	 *
+	 * @return The last version of each installed plug-in. Key is the artifact.
+	 */
+	protected Map<String, String> getInstalledPlugins() {
+		return inventory.getLastVersions(getPluginClassLoader().getPluginDirectory());
 	}
 
 	/**
@@ -217,19 +307,15 @@ public class PluginResource {
 	 * @return Trim version.
 	 */
 	protected String toTrimmedVersion(final String extendedVersion) {
-		String trim = Arrays.stream(StringUtils.split(extendedVersion, "-Z.")).dropWhile(s -> !s.matches("^(Z?\\d+.*)"))
-				.map(s -> StringUtils.defaultIfBlank(StringUtils.replaceFirst(s, "^0+", ""), "0")).collect(Collectors.joining("."))
-				.replace(".SNAPSHOT", "-SNAPSHOT").replaceFirst("([^-])SNAPSHOT", "$1-SNAPSHOT");
-		if (trim.endsWith(".0") && StringUtils.countMatches(trim, '.') > 2) {
-			trim = StringUtils.removeEnd(trim, ".0");
-		}
-		return trim;
+		return PluginVersion.valueOf(extendedVersion).toString();
 	}
 
 	/**
-	 * Build the plug-in information from the plug-in itself and the last version being available.
+	 * Build the plug-in information from the plug-in itself, the pre-computed node statistics and the last version
+	 * being available.
 	 */
-	private PluginVo toVo(final Map<String, Artifact> lastVersion, final Plugin p, final FeaturePlugin feature) {
+	private PluginVo toVo(final Map<String, Artifact> lastVersion, final PluginStatistics statistics, final Plugin p,
+			final FeaturePlugin feature) {
 		if (feature == null) {
 			// Plug-in is no more available or in fail-safe mode
 			return null;
@@ -246,35 +332,71 @@ public class PluginResource {
 
 		// Expose the resolve newer version
 		vo.setNewVersion(Optional.ofNullable(lastVersion.get(p.getArtifact())).map(Artifact::getVersion)
-				.filter(v -> PluginsClassLoader.toExtendedVersion(v).compareTo(PluginsClassLoader.toExtendedVersion(p.getVersion())) > 0)
-				.orElse(null));
+				.filter(v -> PluginVersion.valueOf(v).isNewerThan(PluginVersion.valueOf(p.getVersion()))).orElse(null));
 
 		// Node statistics
 		if (p.getType() != PluginType.FEATURE) {
 			// This is a node (service or tool) add statistics and details
-			vo.setNodes(nodeRepository.countByRefined(key));
-			vo.setSubscriptions(subscriptionRepository.countByNode(key));
-			vo.setNode(NodeResource.toVo(nodeRepository.findOne(key)));
+			vo.setNodes(statistics.getNodes(key));
+			vo.setSubscriptions(statistics.getSubscriptions(key));
+			vo.setNode(Optional.ofNullable(statistics.getNode(key)).map(NodeResource::toVo).orElse(null));
 		}
 		return vo;
 	}
 
 	/**
-	 * Search plug-ins in repository which can be installed.
+	 * Search plug-ins in repository which can be installed. The result is ranked : exact name, then name prefix, then
+	 * word prefix, then any other match.
 	 *
 	 * @param query
-	 *            The optional searched term..
+	 *            The optional searched term. Case is ignored.
 	 * @param repository
-	 *            The repository identifier to query.
-	 * @return All plug-ins artifacts name.
+	 *            The repository identifier to query. See {@link AggregatedRepositoryManager#ID} to query all of them.
+	 * @param offset
+	 *            The amount of first ranked plug-ins to skip.
+	 * @param limit
+	 *            The maximal amount of returned plug-ins.
+	 * @return The requested page of ranked plug-ins artifacts.
 	 * @throws IOException
 	 *             When the last version index file cannot be be retrieved.
 	 */
 	@GET
 	@Path("search")
 	public List<Artifact> search(@QueryParam("q") @DefaultValue("") final String query,
-			@QueryParam("repository") @DefaultValue(REPO_CENTRAL) final String repository) throws IOException {
-		return getLastPluginVersions(repository).values().stream().filter(a -> a.getArtifact().contains(query)).collect(Collectors.toList());
+			@QueryParam("repository") @DefaultValue(REPO_CENTRAL) final String repository,
+			@QueryParam("offset") @DefaultValue("0") final int offset, @QueryParam("limit") @DefaultValue(SEARCH_LIMIT) final int limit)
+			throws IOException {
+		// The index is built from the unfiltered versions, the same instance while the repository index is unchanged
+		final Set<String> ignored = getIgnoredPlugins();
+		return catalog.getIndex(repository, getRepositoryManager(repository).getLastPluginVersions()).search(query, offset, limit,
+				a -> !ignored.contains(a.getArtifact()));
+	}
+
+	/**
+	 * Return the directory of the plug-in updates staged until the next planned restart.
+	 *
+	 * @return The staging directory.
+	 */
+	protected java.nio.file.Path getStagingDirectory() {
+		return getPluginClassLoader().getHomeDirectory().resolve(STAGING_DIR);
+	}
+
+	/**
+	 * Move the staged plug-ins to the plug-ins directory, they will be loaded by the next restart. The staged plug-ins
+	 * are also activated at startup by {@link PluginApplicationRunListener}, so this is only a shortcut.
+	 */
+	protected void activateStaged() {
+		final PluginsClassLoader classLoader = getPluginClassLoader();
+		if (classLoader == null) {
+			// Nothing to activate
+			return;
+		}
+		try {
+			PluginInstaller.activateStaged(getStagingDirectory(), classLoader.getPluginDirectory()).forEach(inventory::added);
+		} catch (final IOException e) {
+			// The remaining staged plug-ins will be activated by the next restart
+			log.warn("Unable to activate the staged plug-ins", e);
+		}
 	}
 
 	/**
@@ -282,19 +404,20 @@ public class PluginResource {
 	 *
 	 * @param repository
 	 *            The repository identifier.
-	 * @return The {@link RepositoryManager} with the given identifier or {@link #EMPTY_REPOSITORY}
+	 * @return The {@link RepositoryManager} with the given identifier or {@link PluginRegistry#EMPTY_REPOSITORY}
 	 */
 	protected RepositoryManager getRepositoryManager(final String repository) {
-		return SpringUtils.getApplicationContext().getBeansOfType(RepositoryManager.class).values().stream().filter(r -> r.getId().equals(repository))
-				.findFirst().orElse(EMPTY_REPOSITORY);
+		return registry.getRepositoryManager(repository);
 	}
 
 	/**
-	 * Request a restart of the current application context in a separated thread.
+	 * Request a restart of the current application context in a separated thread. The staged plug-in updates are
+	 * activated by this restart.
 	 */
 	@PUT
 	@Path("restart")
 	public void restart() {
+		activateStaged();
 		final Thread restartThread = new Thread(() -> restartEndpoint.restart(), "Restart"); // NOPMD
 		restartThread.setDaemon(false);
 		restartThread.start();
@@ -310,6 +433,21 @@ public class PluginResource {
 	@Path("cache")
 	public void invalidateLastPluginVersions(@QueryParam("repository") @DefaultValue(REPO_CENTRAL) final String repository) {
 		getRepositoryManager(repository).invalidateLastPluginVersions();
+		catalog.invalidate(repository);
+	}
+
+	/**
+	 * Return the state of the plug-in versions cache of a repository: age of the last successful fetch, and the error of
+	 * the last refresh when the served versions are stale.
+	 *
+	 * @param repository
+	 *            The repository identifier.
+	 * @return The state of the cache. <code>null</code> when the repository index has never been fetched.
+	 */
+	@GET
+	@Path("cache")
+	public RepositorySnapshot getLastPluginVersionsState(@QueryParam("repository") @DefaultValue(REPO_CENTRAL) final String repository) {
+		return indexCache.getSnapshot(repository);
 	}
 
 	/**
@@ -323,7 +461,9 @@ public class PluginResource {
 	@DELETE
 	@Path("{artifact:[\\w-]+}")
 	public void delete(@PathParam("artifact") final String artifact) throws IOException {
-		removeFilter(artifact, "(-.*)?");
+		for (final String removed : remove(artifact, n -> n.equals(artifact + ".jar") || n.startsWith(artifact + "-"))) {
+			deployer.redeploy(removed);
+		}
 		log.info("Plugin {} has been deleted, restart is required", artifact);
 	}
 
@@ -340,18 +480,170 @@ public class PluginResource {
 	@DELETE
 	@Path("{artifact:[\\w-]+}/{version}")
 	public void delete(@PathParam("artifact") final String artifact, @PathParam("version") final String version) throws IOException {
-		removeFilter(artifact, "-" + version.replace(".", "\\."));
+		remove(artifact, (artifact + "-" + version + ".jar")::equals);
+		deployer.redeploy(artifact);
 		log.info("Plugin {} v{} has been deleted, restart is required", artifact, version);
 	}
 
-	private void removeFilter(final String artifact, final String filter) throws IOException {
-		Files.list(getPluginClassLoader().getPluginDirectory()).filter(p -> p.getFileName().toString().matches("^" + artifact + filter + "\\.jar$"))
-				.forEach(p -> p.toFile().delete());
+	/**
+	 * Remove the inventoried files of an artifact accepted by the given filter.
+	 *
+	 * @return The artifacts of the removed versioned files.
+	 */
+	private Set<String> remove(final String artifact, final Predicate<String> filter) {
+		final Set<String> removed = new HashSet<>();
+		final Lock lock = installer.getLock(artifact);
+		lock.lock();
+		try {
+			for (final java.nio.file.Path file : inventory.getFiles(getPluginClassLoader().getPluginDirectory(), artifact)) {
+				final String name = file.getFileName().toString();
+				if (filter.test(name) && file.toFile().delete()) {
+					PluginInstaller.getChecksumFile(file).toFile().delete();
+					inventory.removed(file);
+					Optional.ofNullable(PluginInventory.getArtifact(name)).ifPresent(removed::add);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+		return removed;
+	}
+
+	/**
+	 * Roll back a plug-in to a version retained in the plug-ins directory, without any download. The retained file is
+	 * verified against its cached checksum, then the newer versions, including the staged ones, are moved to the
+	 * {@value #ROLLBACK_DIR} directory. Only file names are changed, the retained version is loaded by the next restart.
+	 *
+	 * @param artifact
+	 *            The Maven artifact identifier and also corresponding to the plug-in simple name.
+	 * @param version
+	 *            The retained version to activate.
+	 * @throws IOException
+	 *             When the newer versions cannot be moved.
+	 */
+	@PUT
+	@Path("rollback/{artifact:[\\w-]+}/{version}")
+	public void rollback(@PathParam("artifact") final String artifact, @PathParam("version") final String version) throws IOException {
+		final Lock lock = installer.getLock(artifact);
+		lock.lock();
+		try {
+			final NavigableMap<String, java.nio.file.Path> versions = inventory.getVersions(getPluginClassLoader().getPluginDirectory(), artifact);
+			final java.nio.file.Path retained = versions.get(version);
+			if (retained == null) {
+				throw new EntityNotFoundException(artifact + "-" + version);
+			}
+			try {
+				installer.verify(retained);
+			} catch (final IOException e) {
+				throw new BusinessException(artifact, String.format("Cannot be rolled back %s", artifact), e);
+			}
+
+			// Set aside the newer versions, and the staged updates
+			final java.nio.file.Path aside = Files.createDirectories(getPluginClassLoader().getHomeDirectory().resolve(ROLLBACK_DIR));
+			for (final java.nio.file.Path newer : versions.tailMap(version, false).values()) {
+				log.info("Set aside the plug-in {}", newer.getFileName());
+				move(newer, aside);
+				inventory.removed(newer);
+			}
+			if (getStagingDirectory().toFile().isDirectory()) {
+				try (Stream<java.nio.file.Path> files = Files.list(getStagingDirectory())) {
+					for (final java.nio.file.Path staged : files.filter(p -> artifact.equals(PluginInventory.getArtifact(p.getFileName().toString())))
+							.collect(Collectors.toList())) {
+						log.info("Set aside the staged plug-in {}", staged.getFileName());
+						move(staged, aside);
+					}
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+		deployer.redeploy(artifact);
+		log.info("Plugin {} has been rolled back to v{}, restart is required", artifact, version);
+	}
+
+	/**
+	 * Switch a plug-in to the lazy activation mode: its archives are moved to the lazy plug-ins directory, so they are
+	 * no more loaded at startup. After the next restart, the plug-in is activated by the first request to one of its
+	 * REST resources, see {@link PluginHotDeployer}.<br>
+	 * A node plug-in having subscriptions cannot be lazy: its beans are looked up by the subscriptions without
+	 * activating it. Neither can be a plug-in declaring entities or repositories, since it cannot be hot deployed.
+	 *
+	 * @param artifact
+	 *            The Maven artifact identifier and also corresponding to the plug-in simple name.
+	 * @throws IOException
+	 *             When the plug-in archives cannot be moved.
+	 */
+	@PUT
+	@Path("lazy/{artifact:[\\w-]+}")
+	public void lazy(@PathParam("artifact") final String artifact) throws IOException {
+		final Plugin plugin = repository.findBy("artifact", artifact);
+		if (plugin != null && plugin.getType() != PluginType.FEATURE && new PluginStatistics(repository).getSubscriptions(plugin.getKey()) > 0) {
+			throw new BusinessException(String.format("Plug-in %s has subscriptions and cannot be activated on demand", artifact));
+		}
+		final PluginsClassLoader classLoader = getPluginClassLoader();
+		moveAll(artifact, classLoader.getPluginDirectory(), classLoader.getHomeDirectory().resolve(PluginHotDeployer.LAZY_DIR), true);
+		log.info("Plugin {} will be activated on demand, restart is required", artifact);
+	}
+
+	/**
+	 * Switch a plug-in back to the activation at startup: its archives are moved back to the plug-ins directory.
+	 *
+	 * @param artifact
+	 *            The Maven artifact identifier and also corresponding to the plug-in simple name.
+	 * @throws IOException
+	 *             When the plug-in archives cannot be moved.
+	 */
+	@DELETE
+	@Path("lazy/{artifact:[\\w-]+}")
+	public void eager(@PathParam("artifact") final String artifact) throws IOException {
+		final PluginsClassLoader classLoader = getPluginClassLoader();
+		moveAll(artifact, classLoader.getHomeDirectory().resolve(PluginHotDeployer.LAZY_DIR), classLoader.getPluginDirectory(), false);
+		log.info("Plugin {} will be activated at startup, restart is required", artifact);
+	}
+
+	/**
+	 * Move all the versions of a plug-in to the given directory. When they are moved to the lazy plug-ins directory,
+	 * nothing is moved unless all the versions can be hot deployed.
+	 */
+	private void moveAll(final String artifact, final java.nio.file.Path from, final java.nio.file.Path to, final boolean lazy)
+			throws IOException {
+		final Lock lock = installer.getLock(artifact);
+		lock.lock();
+		try (Stream<java.nio.file.Path> files = from.toFile().isDirectory() ? Files.list(from) : Stream.empty()) {
+			final List<java.nio.file.Path> versions = files.filter(p -> artifact.equals(PluginInventory.getArtifact(p.getFileName().toString())))
+					.collect(Collectors.toList());
+			if (versions.isEmpty()) {
+				throw new EntityNotFoundException(artifact);
+			}
+			for (final java.nio.file.Path file : versions) {
+				if (lazy && !deployer.isHotDeployable(file)) {
+					throw new BusinessException(
+							String.format("Plug-in %s declares entities or repositories and cannot be activated on demand", artifact));
+				}
+			}
+			Files.createDirectories(to);
+			for (final java.nio.file.Path file : versions) {
+				inventory.added(move(file, to));
+				inventory.removed(file);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Move a plug-in file to the given directory, with its cached checksum.
+	 *
+	 * @return The moved plug-in file.
+	 */
+	private java.nio.file.Path move(final java.nio.file.Path file, final java.nio.file.Path directory) throws IOException {
+		return PluginInstaller.move(file, directory);
 	}
 
 	/**
 	 * Install the specific version of given plug-in from the remote server. The previous version is not deleted. The
-	 * downloaded version will be used only if it is a most recent version than the locally ones.
+	 * downloaded version will be used only if it is a most recent version than the locally ones.<br>
+	 * The download runs asynchronously, its progress is available from {@link InstallJobResource}.
 	 *
 	 * @param artifact
 	 *            The Maven artifact identifier and also corresponding to the plug-in simple name.
@@ -359,16 +651,23 @@ public class PluginResource {
 	 *            The version to install.
 	 * @param repository
 	 *            The repository identifier to query.
+	 * @return The installation job identifier.
 	 */
 	@POST
 	@Path("{artifact:[\\w-]+}/{version:[\\w-]+}")
-	public void install(@PathParam("artifact") final String artifact, @PathParam("version") final String version,
+	public String install(@PathParam("artifact") final String artifact, @PathParam("version") final String version,
 			@QueryParam("repository") @DefaultValue(REPO_CENTRAL) final String repository) {
-		install(null, artifact, version, repository);
+		return jobs.submit(artifact, version, repository,
+				l -> {
+					install(null, artifact, version, repository, getPluginClassLoader().getPluginDirectory(), l);
+					deployer.redeploy(artifact);
+				}).getId();
 	}
 
 	/**
-	 * Upload a file of entries to create or update users. The whole entry is replaced.
+	 * Upload a file of entries to create or update users. The whole entry is replaced.<br>
+	 * The content is received synchronously, then installed asynchronously, its progress is available from
+	 * {@link InstallJobResource}.
 	 *
 	 * @param input
 	 *            The Maven artifact file.
@@ -376,25 +675,68 @@ public class PluginResource {
 	 *            The Maven <code>artifactId</code>.
 	 * @param version
 	 *            The Maven <code>version</code>.
+	 * @return The installation job identifier.
+	 * @throws IOException
+	 *             When the content cannot be received.
 	 */
 	@PUT
 	@Consumes(MediaType.MULTIPART_FORM_DATA)
 	@Path("upload")
-	public void upload(@Multipart(required = true, value = "plugin-file") final InputStream input,
+	public String upload(@Multipart(required = true, value = "plugin-file") final InputStream input,
 			@Multipart(required = true, value = "plugin-id") final String pluginId,
-			@Multipart(required = true, value = "plugin-version") final String version) {
-		install(input, pluginId, version, "(local)");
+			@Multipart(required = true, value = "plugin-version") final String version) throws IOException {
+		// The request content is no more readable once the response is sent
+		final java.nio.file.Path spool = Files.createTempFile(pluginId + "-", ".upload");
+		try {
+			Files.copy(input, spool, StandardCopyOption.REPLACE_EXISTING);
+			return jobs.submit(pluginId, version, "(local)", l -> {
+				try (InputStream content = Files.newInputStream(spool)) {
+					install(content, pluginId, version, "(local)", getPluginClassLoader().getPluginDirectory(), l);
+				} finally {
+					Files.deleteIfExists(spool);
+				}
+				deployer.redeploy(pluginId);
+			}).getId();
+		} catch (final IOException | RuntimeException e) {
+			Files.deleteIfExists(spool);
+			throw e;
+		}
 	}
 
-	private void install(final InputStream input, final String artifact, final String version, final String repository) {
-		final PluginsClassLoader classLoader = getPluginClassLoader();
-		final java.nio.file.Path target = classLoader.getPluginDirectory().resolve(artifact + "-" + version + ".jar");
+	/**
+	 * Install synchronously the given plug-in version.
+	 *
+	 * @param input
+	 *            The plug-in content. When <code>null</code>, the plug-in is downloaded from the repository.
+	 * @param artifact
+	 *            The Maven artifact identifier and also corresponding to the plug-in simple name.
+	 * @param version
+	 *            The version to install.
+	 * @param repository
+	 *            The repository identifier to query.
+	 * @param directory
+	 *            The target directory: the plug-ins directory, or the staging directory.
+	 * @param listener
+	 *            The listener notified of the progress.
+	 */
+	protected void install(final InputStream input, final String artifact, final String version, final String repository,
+			final java.nio.file.Path directory, final TransferListener listener) {
+		final java.nio.file.Path target = directory.resolve(artifact + "-" + version + ".jar");
 		log.info("Download plug-in {} v{} from {}", artifact, version, repository);
 		try {
-			// Get the right input
-			final InputStream input2 = input == null ? getRepositoryManager(repository).getArtifactInputStream(artifact, version) : input;
 			// Download and copy the file, note the previous version is not removed
-			Files.copy(input2, target, StandardCopyOption.REPLACE_EXISTING);
+			if (input == null) {
+				installer.install(getRepositoryManager(repository), artifact, version, target, listener);
+			} else {
+				installer.install(input, artifact, target, listener);
+			}
+			final Lock lock = installer.getLock(artifact);
+			lock.lock();
+			try {
+				inventory.added(target);
+			} finally {
+				lock.unlock();
+			}
 			log.info("Plugin {} v{} has been installed, restart is required", artifact, version);
 		} catch (final Exception ioe) {
 			// Installation failed, either download, either FS error
@@ -410,27 +752,39 @@ public class PluginResource {
 	 *            The Maven artifact identifier and also corresponding to the plug-in simple name.
 	 * @param repository
 	 *            The repository identifier to query.
+	 * @return The installation job identifier.
 	 * @throws IOException
-	 *             When install failed.
+	 *             When the last versions cannot be retrieved.
 	 */
 	@POST
 	@Path("{artifact:[\\w-]+}")
-	public void install(@PathParam("artifact") final String artifact, @QueryParam("repository") @DefaultValue(REPO_CENTRAL) final String repository)
+	public String install(@PathParam("artifact") final String artifact, @QueryParam("repository") @DefaultValue(REPO_CENTRAL) final String repository)
 			throws IOException {
+		return install(artifact, getLastVersion(artifact, repository), repository);
+	}
+
+	private String getLastVersion(final String artifact, final String repository) throws IOException {
 		final Artifact resultItem = getLastPluginVersions(repository).get(artifact);
 		if (resultItem == null) {
 			// Plug-in not found, or not the last version
 			throw new BusinessException(String.format("No latest version found for plug-in %s on repository %s", artifact, repository));
 		}
-		install(artifact, resultItem.getVersion(), repository);
+		return resultItem.getVersion();
 	}
 
 	private Map<String, Artifact> getLastPluginVersions(final String repository) throws IOException {
-		final Map<String, Artifact> versions = getRepositoryManager(repository).getLastPluginVersions();
-		Arrays.stream(configuration.get(PLUGIN_IGNORE, "").split(",")).map(String::trim).forEach(versions::remove);
+		final Map<String, Artifact> versions = new HashMap<>(getRepositoryManager(repository).getLastPluginVersions());
+		versions.keySet().removeAll(getIgnoredPlugins());
 		return versions;
 	}
 
+	/**
+	 * Return the ignored plug-in artifacts.
+	 */
+	private Set<String> getIgnoredPlugins() {
+		return Arrays.stream(configuration.get(PLUGIN_IGNORE, "").split(",")).map(String::trim).collect(Collectors.toSet());
+	}
+
 	/**
 	 * Return the current plug-in class loader.
 	 *
@@ -444,111 +798,298 @@ public class PluginResource {
 	 * Handle the newly installed plug-ins implementing {@link FeaturePlugin}, and that's includes
 	 * {@link ServicePlugin}. Note the plug-ins are installed in a natural order based on their key's name to ensure the
 	 * parents plug-ins are configured first. <br>
-	 * Note the transactional behavior of this process : if one plug-in failed to be configured, then the entire process
-	 * is cancelled. The previously and the not processed discovered plug-ins are not configured.
+	 * Note the transactional behavior of this process : by default, the plug-ins are configured one by one within a
+	 * single transaction, and if one plug-in failed to be configured, then the entire process is cancelled. The
+	 * previously and the not processed discovered plug-ins are not configured. When
+	 * <code>ligoj.plugin.install.parallelism</code> is greater than 1, there is no enclosing transaction: the independent
+	 * plug-ins are configured concurrently, each one in its own transaction including its version update, see
+	 * {@link #configurePlugins(Set, int, Consumer)}. The enabled plug-ins are read from the {@link PluginRegistry},
+	 * refreshed from the same event just before.<br>
+	 * When the fingerprint of the enabled plug-ins is unchanged since their last configuration, nothing is done. It is
+	 * stored only when all plug-ins are configured.
 	 *
 	 * @param event
 	 *            The Spring event.
-	 * @throws Exception
-	 *             When the context can not be refreshed because of plugin updates or configurations..
 	 */
 	@EventListener
-	public void refreshPlugins(final ContextRefreshedEvent event) throws Exception {
-		// Auto update plug-ins
-		if (Boolean.valueOf(configuration.get(PLUGIN_UPDATE, "false"))) {
-			// Update the plug-ins
-			final int counter = autoUpdate();
-			if (counter > 0) {
-				log.info("{} plug-ins have been downloaded for update, context will be restarted", counter);
-				restart();
-				return;
-			}
-			log.info("No plug-ins have been automatically downloaded for update");
+	public void refreshPlugins(final ContextRefreshedEvent event) {
+		// The updates are staged in background, see PluginUpdateScheduler
+		if (getFingerprint().equals(configuration.get(PLUGIN_FINGERPRINT))) {
+			log.info("Plugins are unchanged since their last configuration");
+			return;
+		}
+
+		// Keep a connection available for the other operations
+		final int parallelism = Math.min(NumberUtils.toInt(configuration.get(PLUGIN_INSTALL_PARALLELISM), 1), maxPoolSize - 1);
+		if (parallelism < 2) {
+			// The whole refresh within a single transaction
+			new TransactionTemplate(transactionManager).execute(t -> {
+				refreshPlugins(1);
+				configuration.put(PLUGIN_FINGERPRINT, getFingerprint());
+				return null;
+			});
+		} else {
+			refreshPlugins(parallelism);
+
+			// The configured plug-ins are part of the fingerprint
+			configuration.put(PLUGIN_FINGERPRINT, getFingerprint());
 		}
+	}
+
+	/**
+	 * Return the fingerprint of the enabled plug-ins: their key, their version, and the size and the last modified time
+	 * of their location. The configured plug-ins are also part of it, so a restored database or another node
+	 * configuring the plug-ins is not ignored.
+	 *
+	 * @return The SHA-256 of the enabled and the configured plug-ins.
+	 */
+	protected String getFingerprint() {
+		final StringBuilder buffer = new StringBuilder();
+		new TreeMap<>(registry.getFeatures()).values().forEach(f -> {
+			final URL location = getPluginLocation(f);
+			buffer.append(f.getKey()).append(':').append(f.getVersion()).append(':').append(location);
+			try {
+				final File file = new File(location.toURI());
+				buffer.append(':').append(file.length()).append(':').append(file.lastModified());
+			} catch (final URISyntaxException | IllegalArgumentException e) {
+				// Not a file, the location is enough
+			}
+			buffer.append('\n');
+		});
 
-		refreshPlugins(event.getApplicationContext());
+		// The few configured plug-ins
+		repository.findAll().stream().sorted(Comparator.comparing(Plugin::getKey))
+				.forEach(p -> buffer.append(p.getKey()).append(':').append(p.getVersion()).append('\n'));
+		return DigestUtils.sha256Hex(buffer.toString());
 	}
 
 	/**
-	 * Auto update the installed plug-ins.
+	 * Auto update the installed plug-ins. The new versions are downloaded concurrently, verified and staged, and are
+	 * all activated by the next planned restart. A plug-in failing to be updated keeps its current version without
+	 * aborting the other updates.
 	 *
 	 * @return The amount of updated plug-ins.
 	 * @throws IOException
 	 *             When plug-ins cannot be updated.
 	 */
 	public int autoUpdate() throws IOException {
-		final Map<String, String> plugins = getPluginClassLoader().getInstalledPlugins();
 		final String repository = configuration.get(PLUGIN_REPOSITORY, REPO_CENTRAL);
-		int counter = 0;
-		for (final Artifact artifact : getLastPluginVersions(repository).values().stream().filter(a -> plugins.containsKey(a.getArtifact()))
-				.filter(a -> PluginsClassLoader.toExtendedVersion(a.getVersion())
-						.compareTo(StringUtils.removeStart(plugins.get(a.getArtifact()), a.getArtifact() + "-")) > 0)
-				.collect(Collectors.toList())) {
-			install(artifact.getArtifact(), repository);
-			counter++;
+		final List<Artifact> candidates = getUpdateCandidates(repository);
+		if (candidates.isEmpty()) {
+			return 0;
+		}
+		final java.nio.file.Path staging = Files.createDirectories(getStagingDirectory());
+
+		// Download concurrently the new versions, each one is verified and staged
+		final int parallelism = Math.min(candidates.size(), Math.max(1, NumberUtils.toInt(configuration.get(PLUGIN_UPDATE_PARALLELISM), 4)));
+		final ExecutorService executor = Executors.newFixedThreadPool(parallelism, r -> {
+			final Thread thread = new Thread(r, "plugin-update"); // NOPMD
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			final List<CompletableFuture<Boolean>> updates = candidates.stream()
+					.map(a -> CompletableFuture.supplyAsync(() -> update(a, repository, staging), executor)).collect(Collectors.toList());
+			return (int) updates.stream().filter(CompletableFuture::join).count();
+		} finally {
+			executor.shutdownNow();
 		}
-		return counter;
 	}
 
-	private void refreshPlugins(final ApplicationContext context) throws Exception {
+	/**
+	 * Return the installed plug-ins having a newer version in the given repository.
+	 *
+	 * @param repository
+	 *            The repository identifier to query.
+	 * @return The newer versions of the installed plug-ins.
+	 * @throws IOException
+	 *             When the last versions cannot be retrieved.
+	 */
+	protected List<Artifact> getUpdateCandidates(final String repository) throws IOException {
+		final Map<String, String> plugins = getInstalledPlugins();
+		return getLastPluginVersions(repository).values().stream().filter(a -> plugins.containsKey(a.getArtifact()))
+				.filter(a -> PluginVersion.valueOf(a.getVersion()).isNewerThan(PluginVersion.valueOf(plugins.get(a.getArtifact()))))
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * Download and stage the new version of a plug-in. A failure does not abort the other updates.
+	 *
+	 * @return <code>true</code> when the new version is staged.
+	 */
+	private boolean update(final Artifact artifact, final String repository, final java.nio.file.Path staging) {
+		try {
+			install(null, artifact.getArtifact(), artifact.getVersion(), repository, staging, TransferListener.NONE);
+			return true;
+		} catch (final RuntimeException e) {
+			// The current version of this plug-in is kept
+			log.warn("Plugin {} cannot be updated to v{}, the current version is kept", artifact.getArtifact(), artifact.getVersion(), e);
+			return false;
+		}
+	}
+
+	/**
+	 * Install or update the enabled plug-ins, then remove the old ones no more installed.
+	 *
+	 * @param parallelism
+	 *            The maximal amount of plug-ins configured concurrently.
+	 */
+	private void refreshPlugins(final int parallelism) {
 		// Get the existing plug-in features
 		final Map<String, Plugin> plugins = repository.findAll().stream().collect(Collectors.toMap(Plugin::getKey, Function.identity()));
 
 		// Changes, order by the related feature's key
-		final Map<String, FeaturePlugin> newFeatures = new TreeMap<>();
-		final Map<String, FeaturePlugin> updateFeatures = new TreeMap<>();
+		final Map<String, FeaturePlugin> features = new TreeMap<>();
+		final List<Plugin> movedPlugins = new ArrayList<>();
 		final Set<Plugin> removedPlugins = new HashSet<>(plugins.values());
 
 		// Compare with the available plug-in implementing ServicePlugin
-		context.getBeansOfType(FeaturePlugin.class).values().stream().forEach(s -> {
+		registry.getFeatures().values().stream().forEach(s -> {
 			final Plugin plugin = plugins.get(s.getKey());
-			if (plugin == null) {
-				// New plug-in case
-				newFeatures.put(s.getKey(), s);
-			} else {
-				// Update the artifactId. May have not changed
-				plugin.setArtifact(toArtifactId(s));
-				if (!plugin.getVersion().equals(getVersion(s))) {
-					// The version is different, consider it as an update
-					updateFeatures.put(s.getKey(), s);
-				}
+			final String artifact = toArtifactId(s);
+			if (plugin == null || !plugin.getVersion().equals(getVersion(s))) {
+				// New plug-in, or the version is different, consider it as an update
+				features.put(s.getKey(), s);
+			} else if (!artifact.equals(plugin.getArtifact())) {
+				// Only the artifactId has changed
+				plugin.setArtifact(artifact);
+				movedPlugins.add(plugin);
+			}
+
+			// This plug-in has just been handled, so not removed
+			removedPlugins.remove(plugin);
+		});
 
-				// This plug-in has just been handled, so not removed
-				removedPlugins.remove(plugin);
+		// Install/update the plug-ins: the parents before their children
+		final long start = System.currentTimeMillis();
+		final Map<String, Long> durations = configurePlugins(features.keySet(), parallelism, k -> {
+			final Plugin entity = plugins.get(k);
+			if (entity != null) {
+				// Update the version within the transaction of this plug-in
+				entity.setArtifact(toArtifactId(features.get(k)));
+				configurePluginUpdate(features.get(k), entity);
+				repository.save(entity);
 			}
+			configurePlugin(features.get(k), entity);
 		});
+		log.info("Plugins are now configured in {}ms, per plugin: {}", System.currentTimeMillis() - start, durations);
 
-		// First install the data of new plug-ins
-		updateFeatures.values().stream().forEach(s -> configurePluginUpdate(s, plugins.get(s.getKey())));
-		newFeatures.values().stream().forEach(this::configurePluginInstall);
+		// And remove the old plug-in no more installed, except the lazy ones not yet activated
+		removedPlugins.removeIf(p -> registry.getLazyPlugins().containsKey(p.getArtifact()));
+		new TransactionTemplate(transactionManager).execute(t -> {
+			repository.saveAll(movedPlugins);
+			repository.deleteAll(removedPlugins.stream().map(Persistable::getId).collect(Collectors.toList()));
+			return null;
+		});
+	}
 
-		// Then install/update the plug-in
-		update(updateFeatures, plugins);
-		installInternal(newFeatures);
-		log.info("Plugins are now configured");
+	/**
+	 * Configure the given plug-ins, the parents before their children, following the hierarchy of their keys. When the
+	 * parallelism is greater than 1, the independent branches are configured concurrently, each plug-in in its own
+	 * transaction, so this function must not be called within a transaction. A failed plug-in cancels only its own
+	 * configuration and the one of its children, the failures are reported once all the other branches are configured.
+	 * Otherwise, the plug-ins are configured one by one within the current transaction, and the first failure stops the
+	 * configuration.
+	 *
+	 * @param keys
+	 *            The plug-in keys to configure.
+	 * @param parallelism
+	 *            The maximal amount of plug-ins configured concurrently.
+	 * @param configurer
+	 *            The configuration of a plug-in from its key.
+	 * @return The configuration duration in milliseconds of each plug-in. Key is the plug-in key.
+	 */
+	protected Map<String, Long> configurePlugins(final Set<String> keys, final int parallelism, final Consumer<String> configurer) {
+		final Map<String, Long> durations = new ConcurrentSkipListMap<>();
+		final Consumer<String> timed = k -> {
+			final long start = System.currentTimeMillis();
+			configurer.accept(k);
+			durations.put(k, System.currentTimeMillis() - start);
+		};
+
+		// The natural order of the keys ensures the parents are handled before their children
+		final Set<String> ordered = new TreeSet<>(keys);
+		if (parallelism < 2 || ordered.size() < 2) {
+			ordered.forEach(timed);
+			return durations;
+		}
 
-		// And remove the old plug-in no more installed
-		repository.deleteAll(removedPlugins.stream().map(Persistable::getId).collect(Collectors.toList()));
+		final TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+		final Map<String, RuntimeException> failures = new ConcurrentSkipListMap<>();
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.min(ordered.size(), parallelism), r -> {
+			final Thread thread = new Thread(r, "plugin-install"); // NOPMD
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			// Each plug-in waits for its closest configured parent
+			final Map<String, CompletableFuture<Void>> tasks = new HashMap<>();
+			ordered.forEach(k -> {
+				final Runnable task = () -> {
+					try {
+						transaction.execute(t -> {
+							timed.accept(k);
+							return null;
+						});
+					} catch (final RuntimeException e) {
+						// Cancel the children of this plug-in
+						log.error("Configuring the plugin {} failed", k, e);
+						failures.put(k, e);
+						throw e;
+					}
+				};
+				final CompletableFuture<Void> parent = tasks.get(getConfiguredParent(tasks.keySet(), k));
+				tasks.put(k, parent == null ? CompletableFuture.runAsync(task, executor) : parent.thenRunAsync(task, executor));
+			});
+			CompletableFuture.allOf(tasks.values().toArray(new CompletableFuture<?>[0])).exceptionally(e -> null).join();
+		} finally {
+			executor.shutdownNow();
+		}
+		if (!failures.isEmpty()) {
+			final TechnicalException error = new TechnicalException(String.format("Configuring the plugins %s failed", failures.keySet()),
+					failures.values().iterator().next());
+			failures.values().stream().skip(1).forEach(error::addSuppressed);
+			throw error;
+		}
+		return durations;
 	}
 
 	/**
-	 * Install all ordered plug-ins.
+	 * Return the closest parent key within the given keys, or <code>null</code>.
 	 */
-	private void installInternal(final Map<String, FeaturePlugin> newFeatures) throws Exception {
-		for (final FeaturePlugin feature : newFeatures.values()) {
-			// Do not trigger the install event when corresponding node is already there
-			if (!nodeRepository.existsById(feature.getKey())) {
-				feature.install();
-			}
+	private String getConfiguredParent(final Set<String> keys, final String key) {
+		String parent = registry.getKey(key).getParent();
+		while (parent != null && !keys.contains(parent)) {
+			parent = registry.getKey(parent).getParent();
 		}
+		return parent;
 	}
 
 	/**
-	 * Update all ordered plug-ins.
+	 * Install or update a plug-in.
+	 *
+	 * @param feature
+	 *            The plug-in to install or update.
+	 * @param entity
+	 *            The current plug-in entity, <code>null</code> for a new plug-in.
 	 */
-	private void update(final Map<String, FeaturePlugin> updateFeatures, final Map<String, Plugin> plugins) throws Exception {
-		for (Entry<String, FeaturePlugin> feature : updateFeatures.entrySet()) {
-			feature.getValue().update(plugins.get(feature.getKey()).getVersion());
+	private void configurePlugin(final FeaturePlugin feature, final Plugin entity) {
+		try {
+			if (entity == null) {
+				// Install the data, then the plug-in
+				configurePluginInstall(feature);
+
+				// Do not trigger the install event when corresponding node is already there
+				if (!nodeRepository.existsById(feature.getKey())) {
+					feature.install();
+				}
+			} else {
+				feature.update(entity.getVersion());
+			}
+		} catch (final RuntimeException e) {
+			throw e;
+		} catch (final Exception e) { // NOSONAR - Catch all to notice every time the failure
+			throw new TechnicalException(String.format("Configuring the plugin %s failed", feature.getKey()), e);
 		}
 	}
 
@@ -638,7 +1179,7 @@ public class PluginResource {
 	 *         version.
 	 */
 	public String toArtifactId(final FeaturePlugin plugin) {
-		return "plugin-" + Arrays.stream(plugin.getKey().split(":")).skip(1).collect(Collectors.joining("-"));
+		return registry.getKey(plugin.getKey()).getArtifact();
 	}
 
 	/**
@@ -654,6 +1195,7 @@ public class PluginResource {
 	 * @throws IOException
 	 *             When the file creation failed.
 	 */
+	@Transactional
 	public File toFile(final Subscription subscription, final String... fragments) throws IOException {
 		java.nio.file.Path parent = toPath(getPluginClassLoader().getHomeDirectory(), subscription.getNode());
 		parent = parent.resolve(String.valueOf(subscription.getId()));
@@ -706,7 +1248,7 @@ public class PluginResource {
 	 */
 	protected PluginType determinePluginType(final ServicePlugin plugin) {
 		// Determine the type from the key by convention
-		final PluginType result = PluginType.values()[StringUtils.countMatches(plugin.getKey(), ':')];
+		final PluginType result = registry.getKey(plugin.getKey()).getType();
 
 		// Double check the convention with related interface
 		final PluginType interfaceType;
@@ -724,7 +1266,9 @@ public class PluginResource {
 
 	/**
 	 * Insert the configuration entities of the plug-in. This function can be called multiple times : a check prevent
-	 * duplicate entries.
+	 * duplicate entries. The CSV files are read only from the JAR/folder where the plug-in is installed from, without
+	 * scanning the whole class-path, and the JAR is opened only once for all the entities. A plug-in nested in another
+	 * archive, such as the classes of an executable WAR, is read through its "jar:" URL.
 	 *
 	 * @param plugin
 	 *            The related plug-in
@@ -734,17 +1278,81 @@ public class PluginResource {
 	 *             When the CSV management failed.
 	 */
 	protected void configurePluginEntities(final FeaturePlugin plugin, final List<Class<?>> csvEntities) throws IOException {
-		//
-		final ClassLoader classLoader = plugin.getClass().getClassLoader();
+		if (csvEntities.isEmpty()) {
+			// Nothing to read from the plug-in location
+			return;
+		}
+		final URL location = getPluginLocation(plugin);
+		if (!"file".equals(location.getProtocol())) {
+			// Plug-in nested in another archive, such as "jar:file:/app.war!/WEB-INF/classes!/"
+			final String base = StringUtils.appendIfMissing(location.toString(), "/");
+			for (final Class<?> entityClass : csvEntities) {
+				configurePluginEntity(new URL(base + getCsvName(entityClass)), entityClass);
+			}
+			return;
+		}
+		final File file = toFile(location);
+		if (file.isDirectory()) {
+			// Plug-in from a project
+			for (final Class<?> entityClass : csvEntities) {
+				final File csv = new File(file, getCsvName(entityClass));
+				if (!csv.isFile()) {
+					throw newCsvNotFound(entityClass);
+				}
+				try (InputStream input = new FileInputStream(csv)) {
+					configurePluginEntity(input, entityClass);
+				}
+			}
+		} else {
+			// Plug-in from a JAR
+			try (JarFile jar = new JarFile(file)) {
+				for (final Class<?> entityClass : csvEntities) {
+					final ZipEntry csv = Optional.ofNullable(jar.getEntry(getCsvName(entityClass))).orElseThrow(() -> newCsvNotFound(entityClass));
+					try (InputStream input = jar.getInputStream(csv)) {
+						configurePluginEntity(input, entityClass);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Build and save the entities read from the given CSV URL, without keeping the enclosing archive open.
+	 */
+	private void configurePluginEntity(final URL csv, final Class<?> entityClass) throws IOException {
+		final URLConnection connection = csv.openConnection();
+		connection.setUseCaches(false);
+		final InputStream input;
+		try {
+			input = connection.getInputStream();
+		} catch (final FileNotFoundException e) {
+			throw newCsvNotFound(entityClass);
+		}
+		try (input) {
+			configurePluginEntity(input, entityClass);
+		}
+	}
+
+	/**
+	 * Return the CSV file name of the given entity : "csv/" and the hyphenated entity name.
+	 */
+	private String getCsvName(final Class<?> entityClass) {
+		return "csv/" + StringUtils.join(StringUtils.splitByCharacterTypeCamelCase(entityClass.getSimpleName()), '-').toLowerCase(Locale.ENGLISH)
+				+ ".csv";
+	}
+
+	private TechnicalException newCsvNotFound(final Class<?> entityClass) {
+		return new TechnicalException(String.format("Unable to find CSV file for entity %s", entityClass.getSimpleName()));
+	}
 
-		// Compute the location of this plug-in, ensuring the
-		final String pluginLocation = getPluginLocation(plugin).toString();
-		for (final Class<?> entityClass : csvEntities) {
-			// Build the required CSV file
-			final String csv = "csv/"
-					+ StringUtils.join(StringUtils.splitByCharacterTypeCamelCase(entityClass.getSimpleName()), '-').toLowerCase(Locale.ENGLISH)
-					+ ".csv";
-			configurePluginEntity(Collections.list(classLoader.getResources(csv)).stream(), entityClass, pluginLocation);
+	/**
+	 * Return the file corresponding to the given plug-in location.
+	 */
+	private File toFile(final URL location) {
+		try {
+			return new File(location.toURI());
+		} catch (final URISyntaxException | IllegalArgumentException e) {
+			throw new TechnicalException(String.format("Invalid plug-in location %s", location), e);
 		}
 	}
 
@@ -759,47 +1367,89 @@ public class PluginResource {
 		return plugin.getClass().getProtectionDomain().getCodeSource().getLocation();
 	}
 
-	protected <T> void configurePluginEntity(final Stream<URL> csv, final Class<T> entityClass, final String pluginLocation) throws IOException {
-		// Accept the CSV file only from the JAR/folder where the plug-in is installed from
-		try (InputStreamReader input = new InputStreamReader(csv
-				.filter(u -> u.getPath().startsWith(pluginLocation) || u.toString().startsWith(pluginLocation)).findFirst()
-				.orElseThrow(() -> new TechnicalException(String.format("Unable to find CSV file for entity %s", entityClass.getSimpleName())))
-				.openStream(), StandardCharsets.UTF_8)) {
+	/**
+	 * Build and save the entities read from the given CSV content.
+	 *
+	 * @param csv
+	 *            The CSV content. Not closed by this function.
+	 * @param entityClass
+	 *            The entity class to persist.
+	 * @param <T>
+	 *            The entity type.
+	 * @throws IOException
+	 *             When the CSV cannot be read.
+	 */
+	protected <T> void configurePluginEntity(final InputStream csv, final Class<T> entityClass) throws IOException {
+		final InputStreamReader input = new InputStreamReader(csv, StandardCharsets.UTF_8);
 
-			// Build and save the entities managed by this plug-in
+		// Enable the JDBC batching of the inserts during this import
+		final Optional<Session> session = Optional.ofNullable(em.unwrap(Session.class));
+		final Integer batchSize = session.map(Session::getJdbcBatchSize).orElse(null);
+		session.ifPresent(s -> s.setJdbcBatchSize(IMPORT_CHUNK));
+		try {
+			// Build and save the entities managed by this plug-in, chunk by chunk
+			final List<T> chunk = new ArrayList<>(IMPORT_CHUNK);
 			csvForJpa.toJpa(entityClass, input, true, false, e -> {
-				persistAsNeeded(entityClass, e);
+				chunk.add(e);
+				if (chunk.size() == IMPORT_CHUNK) {
+					persistAllAsNeeded(entityClass, chunk);
+					chunk.clear();
+				}
 			});
-			em.flush();
-			em.clear();
+			persistAllAsNeeded(entityClass, chunk);
+		} finally {
+			session.ifPresent(s -> s.setJdbcBatchSize(batchSize));
 		}
-
 	}
 
 	/**
-	 * Persist the given entity only if it is not yet persisted. This is not an update mode.
+	 * Persist the given entities only if they are not yet persisted. This is not an update mode. The existing entities
+	 * are checked with a single query, then the persistence context is flushed and cleared, so its size stays bounded
+	 * whatever the amount of imported entities.
 	 *
 	 * @param entityClass
 	 *            The entity class to persist.
-	 * @param entity
-	 *            The entity read from the CSV, and to persist.
+	 * @param entities
+	 *            The chunk of entities read from the CSV, and to persist.
 	 * @param <T>
 	 *            The entity type.
 	 */
-	protected <T> void persistAsNeeded(final Class<T> entityClass, T entity) {
-		if (entity instanceof AbstractBusinessEntity) {
-			// Check for duplicate before the insert
-			if (em.find(entityClass, ((AbstractBusinessEntity<?>) entity).getId()) == null) {
-				em.persist(entity);
-			}
-		} else if (entity instanceof INamableBean) {
-			if (em.createQuery("SELECT 1 FROM " + entityClass.getName() + " WHERE name = :name")
-					.setParameter("name", ((INamableBean<?>) entity).getName()).getResultList().isEmpty()) {
-				em.persist(entity);
-			}
+	protected <T> void persistAllAsNeeded(final Class<T> entityClass, final List<T> entities) {
+		if (entities.isEmpty()) {
+			// Nothing to import
+			return;
+		}
+		final Collection<T> missing;
+		if (AbstractBusinessEntity.class.isAssignableFrom(entityClass)) {
+			missing = getMissing(entityClass, entities, "id", e -> ((AbstractBusinessEntity<?>) e).getId());
+		} else if (INamableBean.class.isAssignableFrom(entityClass)) {
+			missing = getMissing(entityClass, entities, "name", e -> ((INamableBean<?>) e).getName());
 		} else {
-			em.persist(entity);
+			missing = entities;
+		}
+		missing.forEach(em::persist);
+		em.flush();
+		em.clear();
+	}
+
+	/**
+	 * Return the entities whose key is not yet persisted, keeping the order. Only the first entity of a duplicated key
+	 * is returned.
+	 */
+	private <T> Collection<T> getMissing(final Class<T> entityClass, final List<T> entities, final String property,
+			final Function<T, Object> toKey) {
+		final Set<Object> keys = entities.stream().map(toKey).filter(Objects::nonNull).collect(Collectors.toSet());
+		final Set<Object> existing = new HashSet<>();
+		if (!keys.isEmpty()) {
+			existing.addAll(em.createQuery("SELECT " + property + " FROM " + entityClass.getName() + " WHERE " + property + " IN :keys")
+					.setParameter("keys", keys).getResultList());
 		}
+
+		// A generated key cannot exist, and the next entities of a duplicated key are ignored
+		return entities.stream().filter(e -> {
+			final Object key = toKey.apply(e);
+			return key == null || existing.add(key);
+		}).collect(Collectors.toList());
 	}
 
 	/**
@@ -835,8 +1485,8 @@ public class PluginResource {
 	 *         expected parent by convention, and the parent is not found, an error will be raised.
 	 */
 	protected Node getParentNode(final String key) {
-		final String parentKey = key.substring(0, key.lastIndexOf(':'));
-		if (parentKey.indexOf(':') == -1) {
+		final String parentKey = registry.getKey(key).getParent();
+		if (parentKey == null) {
 			// Was already the top most parent
 			return null;
 		}
@@ -0,0 +1,167 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Collectors;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+import org.apache.commons.lang3.math.NumberUtils;
+import org.ligoj.app.dao.PluginRepository;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Retention of the plug-in versions. Only the last <code>ligoj.plugin.retention</code> versions of each plug-in are
+ * kept in the plug-ins directory, the superseded ones are deleted in background once the application is ready. The
+ * version of the running plug-ins is always kept.<br>
+ * So the cost of the plug-ins directory scans depends on the installed plug-ins, not on their history.
+ */
+@Path("/system/plugin/retention")
+@Component
+@Produces(MediaType.APPLICATION_JSON)
+@Slf4j
+public class PluginRetentionResource {
+
+	/**
+	 * Amount of kept versions per plug-in. When lower than 1, the superseded versions are never deleted.
+	 */
+	public static final String PLUGIN_RETENTION = "ligoj.plugin.retention";
+
+	/**
+	 * Default amount of kept versions: the current one and the previous one.
+	 */
+	private static final String DEFAULT_RETENTION = "2";
+
+	@Autowired
+	protected ConfigurationResource configuration;
+
+	@Autowired
+	protected PluginRepository repository;
+
+	@Autowired
+	protected PluginInventory inventory;
+
+	@Autowired
+	protected PluginInstaller installer;
+
+	/**
+	 * Return the superseded plug-in versions the retention policy would delete, without deleting them.
+	 *
+	 * @return The superseded versions. Key is the artifact, value is the sorted versions to delete.
+	 */
+	@GET
+	public Map<String, List<String>> report() {
+		final Map<String, List<String>> result = new TreeMap<>();
+		getSuperseded().forEach((artifact, files) -> result.put(artifact, new ArrayList<>(files.keySet())));
+		return result;
+	}
+
+	/**
+	 * Delete in background the superseded plug-in versions once the application is ready.
+	 *
+	 * @param event
+	 *            The Spring event.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void pruneAsync(final ApplicationReadyEvent event) {
+		final Thread thread = new Thread(this::prune, "plugin-retention"); // NOPMD
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Delete the superseded plug-in versions.
+	 *
+	 * @return The amount of deleted files.
+	 */
+	public int prune() {
+		int counter = 0;
+		for (final Map.Entry<String, NavigableMap<String, java.nio.file.Path>> superseded : getSuperseded().entrySet()) {
+			final Lock lock = installer.getLock(superseded.getKey());
+			lock.lock();
+			try {
+				for (final java.nio.file.Path file : superseded.getValue().values()) {
+					counter += delete(file);
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+		if (counter > 0) {
+			log.info("{} superseded plug-in versions have been deleted", counter);
+		}
+		return counter;
+	}
+
+	private int delete(final java.nio.file.Path file) {
+		try {
+			Files.deleteIfExists(file);
+			Files.deleteIfExists(PluginInstaller.getChecksumFile(file));
+			inventory.removed(file);
+			log.info("Superseded plug-in {} has been deleted", file.getFileName());
+			return 1;
+		} catch (final IOException e) {
+			// Will be deleted by the next pruning
+			log.warn("Unable to delete the superseded plug-in {}", file, e);
+			return 0;
+		}
+	}
+
+	/**
+	 * Return the versions exceeding the retention, excluding the running ones.
+	 */
+	private Map<String, NavigableMap<String, java.nio.file.Path>> getSuperseded() {
+		final int retention = NumberUtils.toInt(configuration.get(PLUGIN_RETENTION, DEFAULT_RETENTION));
+		final PluginsClassLoader classLoader = getPluginClassLoader();
+		final Map<String, NavigableMap<String, java.nio.file.Path>> result = new TreeMap<>();
+		if (retention < 1 || classLoader == null) {
+			// Retention is disabled, or plug-ins are not managed
+			return result;
+		}
+
+		// The running versions are always kept
+		final Set<String> running = repository.findAll().stream().filter(p -> p.getArtifact() != null)
+				.map(p -> p.getArtifact() + ":" + PluginVersion.valueOf(p.getVersion())).collect(Collectors.toSet());
+		final java.nio.file.Path directory = classLoader.getPluginDirectory();
+		inventory.getLastVersions(directory).keySet().forEach(artifact -> {
+			// Versions are sorted from the oldest to the newest
+			final NavigableMap<String, java.nio.file.Path> versions = inventory.getVersions(directory, artifact);
+			final NavigableMap<String, java.nio.file.Path> superseded = new TreeMap<>(versions.comparator());
+			versions.entrySet().stream().limit(Math.max(0, versions.size() - retention))
+					.filter(v -> !running.contains(artifact + ":" + PluginVersion.valueOf(v.getKey())))
+					.forEach(v -> superseded.put(v.getKey(), v.getValue()));
+			if (!superseded.isEmpty()) {
+				result.put(artifact, superseded);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Return the current plug-in class loader.
+	 *
+	 * @return The current plug-in class loader.
+	 */
+	protected PluginsClassLoader getPluginClassLoader() {
+		return PluginsClassLoader.getInstance();
+	}
+}
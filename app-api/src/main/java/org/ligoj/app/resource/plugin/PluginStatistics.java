@@ -0,0 +1,72 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.ligoj.app.dao.PluginRepository;
+import org.ligoj.app.model.Node;
+
+/**
+ * Node statistics of all node plug-ins (service and tool), gathered with a fixed amount of grouped queries whatever the
+ * amount of installed plug-ins.
+ */
+public class PluginStatistics {
+
+	private final Map<String, Integer> nodes;
+	private final Map<String, Integer> subscriptions;
+	private final Map<String, Node> roots;
+
+	/**
+	 * Gather all statistics from the given repository.
+	 *
+	 * @param repository
+	 *            The plug-in repository providing the grouped queries.
+	 */
+	public PluginStatistics(final PluginRepository repository) {
+		this.nodes = toMap(repository.countNodes());
+		this.subscriptions = toMap(repository.countSubscriptions());
+		this.roots = repository.findAllNodes().stream().collect(Collectors.toMap(Node::getId, Function.identity()));
+	}
+
+	private static Map<String, Integer> toMap(final List<Object[]> tuples) {
+		return tuples.stream().collect(Collectors.toMap(t -> (String) t[0], t -> ((Number) t[1]).intValue()));
+	}
+
+	/**
+	 * Return the amount of nodes refining the given plug-in.
+	 *
+	 * @param key
+	 *            The plug-in key.
+	 * @return The amount of nodes refining the given plug-in. <code>0</code> when unknown.
+	 */
+	public int getNodes(final String key) {
+		return nodes.getOrDefault(key, 0);
+	}
+
+	/**
+	 * Return the amount of subscriptions linked to the given plug-in or one of its refining nodes.
+	 *
+	 * @param key
+	 *            The plug-in key.
+	 * @return The amount of subscriptions. <code>0</code> when unknown.
+	 */
+	public int getSubscriptions(final String key) {
+		return subscriptions.getOrDefault(key, 0);
+	}
+
+	/**
+	 * Return the root node of the given plug-in.
+	 *
+	 * @param key
+	 *            The plug-in key.
+	 * @return The root node of the given plug-in. May be <code>null</code>.
+	 */
+	public Node getNode(final String key) {
+		return roots.get(key);
+	}
+}
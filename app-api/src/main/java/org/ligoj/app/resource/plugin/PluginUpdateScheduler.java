@@ -0,0 +1,166 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin;
+
+import java.time.LocalTime;
+import java.util.concurrent.ScheduledFuture;
+
+import org.apache.commons.lang3.StringUtils;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.support.CronTrigger;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Background plug-in updates. When <code>ligoj.plugin.update</code> is enabled, the newer versions of the installed
+ * plug-ins are checked according to the <code>ligoj.plugin.update.cron</code> expression, and are downloaded in a
+ * staging directory while the node keeps serving. They are activated by the next planned restart.<br>
+ * The optional <code>ligoj.plugin.update.window</code> restricts the downloads to a maintenance window such as
+ * <code>01:00-05:00</code>, possibly over midnight.
+ */
+@Component
+@Slf4j
+public class PluginUpdateScheduler implements DisposableBean {
+
+	/**
+	 * Plug-ins auto update flag.
+	 */
+	public static final String PLUGIN_UPDATE = "ligoj.plugin.update";
+
+	/**
+	 * Cron expression of the update checks.
+	 */
+	public static final String PLUGIN_UPDATE_CRON = "ligoj.plugin.update.cron";
+
+	/**
+	 * Maintenance window of the downloads.
+	 */
+	public static final String PLUGIN_UPDATE_WINDOW = "ligoj.plugin.update.window";
+
+	/**
+	 * Default cron expression : every day at 3 AM.
+	 */
+	private static final String DEFAULT_CRON = "0 0 3 * * *";
+
+	@Autowired
+	protected PluginResource resource;
+
+	@Autowired
+	protected ConfigurationResource configuration;
+
+	@Autowired
+	protected ApplicationContext applicationContext;
+
+	private ThreadPoolTaskScheduler scheduler;
+
+	private ScheduledFuture<?> task;
+
+	/**
+	 * Schedule the update checks from the current configuration, replacing the previous schedule. The refresh of the
+	 * child contexts of the hot deployed plug-ins is ignored.
+	 *
+	 * @param event
+	 *            The Spring event.
+	 */
+	@EventListener
+	public synchronized void schedule(final ContextRefreshedEvent event) {
+		if (event.getApplicationContext() != applicationContext) {
+			// Not the main context
+			return;
+		}
+		cancel();
+		if (!isEnabled()) {
+			return;
+		}
+		final String cron = configuration.get(PLUGIN_UPDATE_CRON, DEFAULT_CRON);
+		log.info("Plug-in updates are checked with cron '{}'", cron);
+		task = getScheduler().schedule(this::update, new CronTrigger(cron));
+	}
+
+	/**
+	 * Indicate the update checks are scheduled.
+	 *
+	 * @return <code>true</code> when the update checks are scheduled.
+	 */
+	public synchronized boolean isScheduled() {
+		return task != null;
+	}
+
+	/**
+	 * Check and stage the plug-in updates, when enabled and within the maintenance window.
+	 */
+	public void update() {
+		try {
+			final String window = configuration.get(PLUGIN_UPDATE_WINDOW);
+			if (!isEnabled()) {
+				log.info("Plug-in updates are disabled");
+			} else if (isInWindow(window, LocalTime.now())) {
+				final int counter = resource.autoUpdate();
+				log.info("{} plug-in updates have been staged, they will be activated by the next restart", counter);
+			} else {
+				log.info("Plug-in updates are skipped outside of the maintenance window {}", window);
+			}
+		} catch (final Exception e) { // NOSONAR - Catch all to keep the scheduled task alive
+			log.warn("Plug-in updates failed", e);
+		}
+	}
+
+	private boolean isEnabled() {
+		return Boolean.valueOf(configuration.get(PLUGIN_UPDATE, "false"));
+	}
+
+	/**
+	 * Indicate the given time is within the maintenance window.
+	 *
+	 * @param window
+	 *            The maintenance window such as <code>01:00-05:00</code>. When blank, there is no restriction.
+	 * @param time
+	 *            The time to check.
+	 * @return <code>true</code> when the time is within the window.
+	 */
+	static boolean isInWindow(final String window, final LocalTime time) {
+		if (StringUtils.isBlank(window)) {
+			return true;
+		}
+		final LocalTime start = LocalTime.parse(StringUtils.substringBefore(window, "-").trim());
+		final LocalTime end = LocalTime.parse(StringUtils.substringAfter(window, "-").trim());
+		if (start.isAfter(end)) {
+			// Window over midnight
+			return !time.isBefore(start) || time.isBefore(end);
+		}
+		return !time.isBefore(start) && time.isBefore(end);
+	}
+
+	private ThreadPoolTaskScheduler getScheduler() {
+		if (scheduler == null) {
+			scheduler = new ThreadPoolTaskScheduler();
+			scheduler.setThreadNamePrefix("plugin-update-");
+			scheduler.setDaemon(true);
+			scheduler.initialize();
+		}
+		return scheduler;
+	}
+
+	private void cancel() {
+		if (task != null) {
+			task.cancel(false);
+			task = null;
+		}
+	}
+
+	@Override
+	public synchronized void destroy() {
+		cancel();
+		if (scheduler != null) {
+			scheduler.shutdown();
+		}
+	}
+}
@@ -0,0 +1,217 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Parsed and immutable plug-in version. Accepts the semantic version (<code>1.2.3</code>,
+ * <code>1.2.3-SNAPSHOT</code>), the extended version used in the plug-in file names
+ * (<code>Z0000001Z0000002Z0000003Z0000000</code>), and both prefixed by the artifact identifier
+ * (<code>plugin-sample-1.2.3</code>).<br>
+ * The numeric parts are compared as numbers, the missing ones are considered as <code>0</code>. For the same numeric
+ * parts, a version without qualifier is greater than a qualified one, so <code>1.2.3-SNAPSHOT</code> is lower than
+ * <code>1.2.3</code>.
+ */
+public final class PluginVersion implements Comparable<PluginVersion> {
+
+	/**
+	 * Maximum amount of interned versions.
+	 */
+	private static final int MAX_INTERNED = 4096;
+
+	private static final Map<String, PluginVersion> INTERNED = new ConcurrentHashMap<>();
+
+	/**
+	 * The numeric parts.
+	 */
+	private final int[] parts;
+
+	/**
+	 * The qualifier, such as "SNAPSHOT". May be <code>null</code>.
+	 */
+	private final String qualifier;
+
+	/**
+	 * The trimmed textual representation.
+	 */
+	private final String text;
+
+	private PluginVersion(final int[] parts, final String qualifier) {
+		this.parts = parts;
+		this.qualifier = qualifier;
+		this.text = toText(parts, qualifier);
+	}
+
+	/**
+	 * Return the interned parsed version.
+	 *
+	 * @param version
+	 *            The version to parse. See {@link #parse(String)}.
+	 * @return The interned parsed version.
+	 */
+	public static PluginVersion valueOf(final String version) {
+		final PluginVersion interned = INTERNED.get(version);
+		if (interned != null) {
+			return interned;
+		}
+		final PluginVersion parsed = parse(version);
+		if (INTERNED.size() < MAX_INTERNED) {
+			INTERNED.putIfAbsent(version, parsed);
+		}
+		return parsed;
+	}
+
+	/**
+	 * Parse the given version in a single pass.
+	 *
+	 * @param version
+	 *            The version to parse, possibly in the extended format and prefixed by the artifact identifier.
+	 * @return The parsed version.
+	 */
+	public static PluginVersion parse(final String version) {
+		final int length = version.length();
+		int[] parts = new int[4];
+		int count = 0;
+		long value = -1;
+		String qualifier = null;
+		boolean started = false;
+		for (int i = 0; i < length; i++) {
+			final char c = version.charAt(i);
+			if (!started) {
+				// Skip the artifact prefix until a digit starts a fragment
+				started = c >= '0' && c <= '9' && (i == 0 || isSeparator(version.charAt(i - 1)));
+				if (!started) {
+					continue;
+				}
+			}
+			if (c >= '0' && c <= '9') {
+				value = Math.min(Integer.MAX_VALUE, Math.max(value, 0) * 10 + c - '0');
+				continue;
+			}
+			if (value >= 0) {
+				if (count == parts.length) {
+					parts = Arrays.copyOf(parts, count * 2);
+				}
+				parts[count++] = (int) value;
+				value = -1;
+			}
+			if (c != '.' && !(c == 'Z' && i + 1 < length && Character.isDigit(version.charAt(i + 1)))) {
+				// Start of the qualifier
+				qualifier = version.substring(c == '-' ? i + 1 : i);
+				break;
+			}
+		}
+		if (value >= 0) {
+			if (count == parts.length) {
+				parts = Arrays.copyOf(parts, count + 1);
+			}
+			parts[count++] = (int) value;
+		}
+		return new PluginVersion(Arrays.copyOf(parts, count), qualifier == null || qualifier.isEmpty() ? null : qualifier);
+	}
+
+	private static boolean isSeparator(final char c) {
+		return c == '-' || c == '.' || c == 'Z';
+	}
+
+	private static String toText(final int[] parts, final String qualifier) {
+		final StringBuilder result = new StringBuilder(16);
+		// Trim the last '0' of a version having more than 3 numeric parts
+		final int length = parts.length > 3 && parts[parts.length - 1] == 0 ? parts.length - 1 : parts.length;
+		for (int i = 0; i < length; i++) {
+			if (i > 0) {
+				result.append('.');
+			}
+			result.append(parts[i]);
+		}
+		if (qualifier != null) {
+			result.append('-').append(qualifier);
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Indicate this version has a qualifier such as "SNAPSHOT".
+	 *
+	 * @return <code>true</code> when this version has a qualifier.
+	 */
+	public boolean isQualified() {
+		return qualifier != null;
+	}
+
+	/**
+	 * Indicate this version is a "SNAPSHOT" one.
+	 *
+	 * @return <code>true</code> when this version is a "SNAPSHOT" one.
+	 */
+	public boolean isSnapshot() {
+		return qualifier != null && qualifier.endsWith("SNAPSHOT");
+	}
+
+	/**
+	 * Return the qualifier.
+	 *
+	 * @return The qualifier. May be <code>null</code>.
+	 */
+	public String getQualifier() {
+		return qualifier;
+	}
+
+	/**
+	 * Indicate this version is strictly greater than the given one.
+	 *
+	 * @param other
+	 *            The version to compare.
+	 * @return <code>true</code> when this version is strictly greater than the given one.
+	 */
+	public boolean isNewerThan(final PluginVersion other) {
+		return compareTo(other) > 0;
+	}
+
+	@Override
+	public int compareTo(final PluginVersion other) {
+		final int length = Math.max(parts.length, other.parts.length);
+		for (int i = 0; i < length; i++) {
+			final int compare = Integer.compare(i < parts.length ? parts[i] : 0, i < other.parts.length ? other.parts[i] : 0);
+			if (compare != 0) {
+				return compare;
+			}
+		}
+		if (qualifier == null) {
+			return other.qualifier == null ? 0 : 1;
+		}
+		return other.qualifier == null ? -1 : qualifier.compareToIgnoreCase(other.qualifier);
+	}
+
+	@Override
+	public boolean equals(final Object other) {
+		return other instanceof PluginVersion && compareTo((PluginVersion) other) == 0;
+	}
+
+	@Override
+	public int hashCode() {
+		// Ignore the trailing zeros to stay consistent with equals
+		int length = parts.length;
+		while (length > 0 && parts[length - 1] == 0) {
+			length--;
+		}
+		int hash = 1;
+		for (int i = 0; i < length; i++) {
+			hash = 31 * hash + parts[i];
+		}
+		return 31 * hash + (qualifier == null ? 0 : qualifier.toUpperCase(Locale.ENGLISH).hashCode());
+	}
+
+	/**
+	 * Return the trimmed version, for sample <code>1.2.3</code> for <code>Z0000001Z0000002Z0000003Z0000000</code>.
+	 */
+	@Override
+	public String toString() {
+		return text;
+	}
+}
@@ -5,24 +5,111 @@ package org.ligoj.app.resource.plugin.repository;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URL;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import lombok.extern.slf4j.Slf4j;
 
 /**
- * Base class for remote repository manager.
+ * Base class for remote repository manager. The remote index is served from the refresh-ahead
+ * {@link RepositoryIndexCache}.
  */
 @Slf4j
 public abstract class AbstractRemoteRepositoryManager implements RepositoryManager {
 
+	/**
+	 * Default period in seconds between two refreshes of the remote index: 6 hours.
+	 */
+	private static final long DEFAULT_REFRESH = 6 * 3600;
+
+	/**
+	 * Default filtered group-id of the plug-ins.
+	 */
+	protected static final String DEFAULT_GROUP_ID = "org.ligoj.plugin";
+
+	/**
+	 * Default delay in seconds before trying again a failed first fetch of the remote index: 1 minute.
+	 */
+	private static final long DEFAULT_RETRY = 60;
+
 	@Autowired
 	protected ConfigurationResource configuration;
 
+	@Autowired
+	protected RepositoryIndexCache indexCache;
+
+	@Autowired
+	protected RepositorySearchClient searchClient;
+
+	@Autowired
+	protected RepositoryHttpClient httpClient;
+
+	@Autowired
+	protected ArtifactDownloader downloader;
+
+	/**
+	 * Query the remote repository and get the last version of all available plug-ins.
+	 *
+	 * @return All plug-ins with their last available version. Key is the plug-in identifier.
+	 * @throws IOException
+	 *             When index download failed.
+	 */
+	protected abstract Map<String, Artifact> fetchLastPluginVersions() throws IOException;
+
+	@Override
+	public Map<String, Artifact> getLastPluginVersions() throws IOException {
+		return indexCache.get(this).getVersions();
+	}
+
+	@Override
+	public void invalidateLastPluginVersions() {
+		// Synchronous refresh, the previous snapshot is kept on failure
+		indexCache.refresh(this);
+	}
+
+	/**
+	 * Merge the artifacts of the search result pages. When an artifact is present in several pages, the first one is
+	 * kept.
+	 *
+	 * @param first
+	 *            The first page.
+	 * @param next
+	 *            The next pages.
+	 * @return All artifacts. Key is the plug-in identifier.
+	 */
+	protected Map<String, Artifact> toMap(final SearchPage first, final List<SearchPage> next) {
+		return Stream.concat(Stream.of(first), next.stream()).flatMap(p -> p.getArtifacts().stream())
+				.collect(Collectors.toMap(Artifact::getArtifact, Function.identity(), (a1, a2) -> a1));
+	}
+
+	/**
+	 * Return the period between two refreshes of the remote index.
+	 *
+	 * @return The period in seconds between two refreshes of the remote index.
+	 */
+	protected long getRefreshPeriod() {
+		return NumberUtils.toLong(getConfiguration("refresh", null), DEFAULT_REFRESH);
+	}
+
+	/**
+	 * Return the delay before trying again a failed first fetch of the remote index.
+	 *
+	 * @return The delay in seconds before trying again a failed first fetch.
+	 */
+	protected long getRetryDelay() {
+		return NumberUtils.toLong(getConfiguration("retry", null), DEFAULT_RETRY);
+	}
+
 	/**
 	 * Return the plug-ins search URL.
 	 * 
@@ -44,6 +131,31 @@ public abstract class AbstractRemoteRepositoryManager implements RepositoryManag
 		return getConfiguration("groupId", defaultGroupIp);
 	}
 
+	/**
+	 * Return the plug-ins filtered group-id to query the repository manager.
+	 *
+	 * @return The "groupId" filter.
+	 */
+	protected String getGroupId() {
+		return getGroupId(DEFAULT_GROUP_ID);
+	}
+
+	/**
+	 * Return the URL of the remote index, including the filtered group-id unless the search URL is configured.
+	 *
+	 * @return The URL of the remote index.
+	 */
+	protected String getIndexUrl() {
+		return getSearchUrl(getDefaultSearchUrl() + getGroupId());
+	}
+
+	/**
+	 * Return the default plug-ins search URL, without the filtered group-id.
+	 *
+	 * @return The default plug-ins search URL.
+	 */
+	protected abstract String getDefaultSearchUrl();
+
 	/**
 	 * Return the plug-ins download base URL.
 	 * 
@@ -64,7 +176,7 @@ public abstract class AbstractRemoteRepositoryManager implements RepositoryManag
 	 *            The default configuration value.
 	 * @return The configuration value. Default is the given "defaultValue" parameter.
 	 */
-	private String getConfiguration(final String suffix, final String defaultValue) {
+	protected String getConfiguration(final String suffix, final String defaultValue) {
 		return ObjectUtils.defaultIfNull(configuration.get("plugins.repository-manager." + getId() + "." + suffix), defaultValue);
 
 	}
@@ -84,6 +196,31 @@ public abstract class AbstractRemoteRepositoryManager implements RepositoryManag
 		return StringUtils.appendIfMissing(getArtifactlBaseUrl(defaultUrl), "/") + artifact + "/" + version + "/" + artifact + "-" + version + ".jar";
 	}
 
+	/**
+	 * Return the default plug-ins download base URL.
+	 *
+	 * @return The default plug-ins download base URL.
+	 */
+	protected abstract String getDefaultArtifactUrl();
+
+	@Override
+	public InputStream getArtifactInputStream(final String artifact, final String version) throws IOException {
+		return getArtifactInputStream(artifact, version, getDefaultArtifactUrl());
+	}
+
+	/**
+	 * Download the artifact with a resumable and verified transfer.
+	 *
+	 * @see ArtifactDownloader
+	 */
+	@Override
+	public void copyArtifact(final String artifact, final String version, final Path target, final TransferListener listener)
+			throws IOException {
+		final String url = getArtifactUrl(artifact, version, getDefaultArtifactUrl());
+		log.info("Resolved remote URL is {}", url);
+		downloader.download(getId(), url, target, listener);
+	}
+
 	/**
 	 * Return the input stream from the remote URL.
 	 * 
@@ -101,7 +238,7 @@ public abstract class AbstractRemoteRepositoryManager implements RepositoryManag
 	public InputStream getArtifactInputStream(String artifact, String version, final String defaultUrl) throws IOException {
 		final String url = getArtifactUrl(artifact, version, defaultUrl);
 		log.info("Resolved remote URL is {}", url);
-		return new URL(url).openStream();
+		return httpClient.open(getId(), url);
 	}
 
 }
@@ -0,0 +1,363 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin.repository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.ligoj.app.resource.plugin.PluginRegistry;
+import org.ligoj.app.resource.plugin.PluginVersion;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Repository manager aggregating all other registered repository managers. The sources are queried in parallel, and
+ * the versions are merged by keeping the highest one. Once a first source has answered, the slower ones are only
+ * waited for a short grace delay, so the latency is bounded by the fastest healthy source. The versions of a late
+ * source are ignored by this call. Its query is not cancelled, so a remote source still fills its own index cache and
+ * is then likely to answer in time to the next call.<br>
+ * The artifact download is hedged : the source providing the requested version is queried first, then the next
+ * sources are queried as well when it does not answer within the hedging delay. The first opened stream wins. The
+ * installation tries the sources in the same order, one after the other.
+ */
+@Component
+@Slf4j
+public class AggregatedRepositoryManager implements RepositoryManager, DisposableBean {
+
+	/**
+	 * The identifier of this repository.
+	 */
+	public static final String ID = "all";
+
+	/**
+	 * Default maximal time in milliseconds to wait for the sources.
+	 */
+	private static final long DEFAULT_TIMEOUT = 10000;
+
+	/**
+	 * Default time in milliseconds to wait for the other sources once one has answered.
+	 */
+	private static final long DEFAULT_GRACE = 500;
+
+	/**
+	 * Default time in milliseconds to wait for a download source before querying the next one as well.
+	 */
+	private static final long DEFAULT_HEDGE = 500;
+
+	/**
+	 * Maximal amount of threads querying the sources.
+	 */
+	private static final int MAX_THREADS = 8;
+
+	/**
+	 * Maximal amount of source queries waiting for a thread. Beyond, the new queries are rejected.
+	 */
+	private static final int MAX_QUEUE = 64;
+
+	@Autowired
+	protected PluginRegistry registry;
+
+	@Autowired
+	protected ConfigurationResource configuration;
+
+	/**
+	 * The source of the highest version of each plug-in, computed by the last merge. Key is the plug-in identifier.
+	 */
+	private volatile Map<String, String> origins = Collections.emptyMap();
+
+	/**
+	 * The last merged versions, returned again while unchanged so the catalog index built from it is reused.
+	 */
+	private volatile Map<String, Artifact> versions = Collections.emptyMap();
+
+	/**
+	 * Bounded pool of the source queries, with a bounded queue. The queue is FIFO, so a task waiting for a previously
+	 * submitted one, such as the release of a losing stream, never waits for a queued task.
+	 */
+	private final ThreadPoolExecutor executor = newExecutor();
+
+	private static ThreadPoolExecutor newExecutor() {
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(MAX_QUEUE),
+				r -> {
+					final Thread thread = new Thread(r, "repository-aggregate"); // NOPMD
+					thread.setDaemon(true);
+					return thread;
+				});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	@Override
+	public String getId() {
+		return ID;
+	}
+
+	/**
+	 * Return the aggregated repository managers.
+	 *
+	 * @return The aggregated repository managers, all registered ones but this one.
+	 */
+	protected List<RepositoryManager> getSources() {
+		return registry.getRepositoryManagers().values().stream().filter(r -> !ID.equals(r.getId())).collect(Collectors.toList());
+	}
+
+	@Override
+	public Map<String, Artifact> getLastPluginVersions() throws IOException {
+		final List<RepositoryManager> sources = getSources();
+		final CompletionService<RepositoryResult> completion = new ExecutorCompletionService<>(executor);
+		try {
+			sources.forEach(s -> completion.submit(() -> new RepositoryResult(s.getId(), s.getLastPluginVersions())));
+		} catch (final RejectedExecutionException e) {
+			// The submitted queries complete in background and fill their own cache
+			throw new IOException("Too many pending repository queries", e);
+		}
+
+		final Map<String, Artifact> versions = new HashMap<>();
+		final Map<String, String> newOrigins = new HashMap<>();
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(getTimeout());
+		boolean answered = false;
+		for (int i = 0; i < sources.size(); i++) {
+			final Future<RepositoryResult> future = poll(completion, deadline - System.nanoTime());
+			if (future == null) {
+				log.warn("{} repositories did not answer in time, their plugins are ignored", sources.size() - i);
+				break;
+			}
+			final RepositoryResult result = get(future);
+			if (result != null) {
+				merge(result, versions, newOrigins);
+				if (!answered && !result.versions.isEmpty()) {
+					// Fastest healthy source, the other ones have a short delay to answer
+					answered = true;
+					deadline = Math.min(deadline, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(getGrace()));
+				}
+			}
+		}
+		origins = newOrigins;
+		if (!versions.equals(this.versions)) {
+			this.versions = versions;
+		}
+		return this.versions;
+	}
+
+	private void merge(final RepositoryResult result, final Map<String, Artifact> versions, final Map<String, String> newOrigins) {
+		result.versions.values().forEach(a -> {
+			final Artifact previous = versions.get(a.getArtifact());
+			if (previous == null || PluginVersion.valueOf(a.getVersion()).isNewerThan(PluginVersion.valueOf(previous.getVersion()))) {
+				versions.put(a.getArtifact(), a);
+				newOrigins.put(a.getArtifact(), result.repository);
+			}
+		});
+	}
+
+	private <T> Future<T> poll(final CompletionService<T> completion, final long nanos) throws IOException {
+		try {
+			return completion.poll(Math.max(0, nanos), TimeUnit.NANOSECONDS);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Repository aggregation interrupted", e);
+		}
+	}
+
+	private <T> T get(final Future<T> future) {
+		try {
+			return future.get();
+		} catch (final ExecutionException e) {
+			log.warn("Repository source failed", e.getCause());
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return null;
+	}
+
+	@Override
+	public InputStream getArtifactInputStream(final String artifact, final String version) throws IOException {
+		final List<RepositoryManager> sources = getSources(artifact);
+		final CompletionService<InputStream> completion = new ExecutorCompletionService<>(executor);
+		final List<Future<InputStream>> futures = new ArrayList<>();
+		final Iterator<RepositoryManager> iterator = sources.iterator();
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(getTimeout());
+		Future<InputStream> winner = null;
+		int pending = 0;
+		try {
+			while (winner == null && (iterator.hasNext() || pending > 0)) {
+				if (iterator.hasNext()) {
+					futures.add(submit(completion, open(iterator.next(), artifact, version)));
+					pending++;
+				}
+				final long remaining = deadline - System.nanoTime();
+				final Future<InputStream> future = poll(completion,
+						iterator.hasNext() ? Math.min(TimeUnit.MILLISECONDS.toNanos(getHedge()), remaining) : remaining);
+				if (future != null) {
+					pending--;
+					if (get(future) != null) {
+						winner = future;
+					}
+				} else if (System.nanoTime() >= deadline) {
+					break;
+				}
+			}
+		} finally {
+			release(futures, winner);
+		}
+		if (winner == null) {
+			throw new IOException(String.format("Plug-in %s v%s is not available in any repository", artifact, version));
+		}
+		return get(winner);
+	}
+
+	/**
+	 * Return the aggregated repository managers, the source of the known highest version of the given artifact first.
+	 */
+	private List<RepositoryManager> getSources(final String artifact) {
+		final String origin = origins.get(artifact);
+		final List<RepositoryManager> sources = new ArrayList<>(getSources());
+		sources.sort(Comparator.comparing(r -> !r.getId().equals(origin)));
+		return sources;
+	}
+
+	/**
+	 * Download the artifact from the first source able to provide it. The sources are tried one after the other since
+	 * they share the same target file, and each of them resumes the download of the previous ones.
+	 */
+	@Override
+	public void copyArtifact(final String artifact, final String version, final Path target, final TransferListener listener)
+			throws IOException {
+		final IOException failure = new IOException(String.format("Plug-in %s v%s is not available in any repository", artifact, version));
+		for (final RepositoryManager source : getSources(artifact)) {
+			try {
+				source.copyArtifact(artifact, version, target, listener);
+				log.info("Plug-in {} v{} downloaded from {}", artifact, version, source.getId());
+				return;
+			} catch (final IOException | RuntimeException e) {
+				log.info("Plug-in {} v{} cannot be downloaded from {}", artifact, version, source.getId());
+				failure.addSuppressed(e);
+			}
+		}
+		throw failure;
+	}
+
+	private Callable<InputStream> open(final RepositoryManager source, final String artifact, final String version) {
+		return () -> {
+			final InputStream input = source.getArtifactInputStream(artifact, version);
+			if (input == null) {
+				throw new IOException(String.format("Plug-in %s v%s is not available in repository %s", artifact, version, source.getId()));
+			}
+			log.info("Plug-in {} v{} downloaded from {}", artifact, version, source.getId());
+			return input;
+		};
+	}
+
+	private <T> Future<T> submit(final CompletionService<T> completion, final Callable<T> task) throws IOException {
+		try {
+			return completion.submit(task);
+		} catch (final RejectedExecutionException e) {
+			throw new IOException("Too many pending repository queries", e);
+		}
+	}
+
+	/**
+	 * Close the streams opened by the losing sources, possibly once they are opened. A source not opened within the
+	 * timeout is cancelled, so a hanging source does not hold a thread of the pool.
+	 */
+	private void release(final List<Future<InputStream>> futures, final Future<InputStream> winner) {
+		final long timeout = getTimeout();
+		futures.stream().filter(f -> f != winner).forEach(f -> {
+			if (f.isDone()) {
+				IOUtils.closeQuietly(get(f));
+				return;
+			}
+			try {
+				executor.execute(() -> IOUtils.closeQuietly(get(f, timeout)));
+			} catch (final RejectedExecutionException e) {
+				f.cancel(true);
+			}
+		});
+	}
+
+	/**
+	 * Wait for the given future until the timeout, then cancel it.
+	 */
+	private <T> T get(final Future<T> future, final long timeout) {
+		try {
+			return future.get(timeout, TimeUnit.MILLISECONDS);
+		} catch (final TimeoutException e) {
+			log.warn("Repository source did not answer in {}ms, cancelled", timeout);
+			future.cancel(true);
+		} catch (final ExecutionException e) {
+			log.warn("Repository source failed", e.getCause());
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return null;
+	}
+
+	@Override
+	public void invalidateLastPluginVersions() {
+		final List<Future<?>> futures = new ArrayList<>();
+		getSources().forEach(s -> {
+			try {
+				futures.add(executor.submit(s::invalidateLastPluginVersions));
+			} catch (final RejectedExecutionException e) {
+				// Saturated pool, refresh this source in the current thread
+				s.invalidateLastPluginVersions();
+			}
+		});
+		futures.forEach(this::get);
+	}
+
+	private long getTimeout() {
+		return NumberUtils.toLong(configuration.get("plugins.repository-manager." + ID + ".timeout"), DEFAULT_TIMEOUT);
+	}
+
+	private long getGrace() {
+		return NumberUtils.toLong(configuration.get("plugins.repository-manager." + ID + ".grace"), DEFAULT_GRACE);
+	}
+
+	private long getHedge() {
+		return NumberUtils.toLong(configuration.get("plugins.repository-manager." + ID + ".hedge"), DEFAULT_HEDGE);
+	}
+
+	@Override
+	public void destroy() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * The versions provided by a source.
+	 */
+	private static class RepositoryResult {
+		private final String repository;
+		private final Map<String, Artifact> versions;
+
+		private RepositoryResult(final String repository, final Map<String, Artifact> versions) {
+			this.repository = repository;
+			this.versions = versions;
+		}
+	}
+}
@@ -0,0 +1,331 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin.repository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Resumable and verified artifact download. The artifact is downloaded in a <code>.part</code> file next to the
+ * target, and is moved to the target only once its checksum is verified, so a truncated or corrupted jar is never
+ * visible.<br>
+ * When the repository supports the HTTP range requests, the artifact is fetched in chunks, concurrently. The
+ * completed chunks are recorded in a <code>.state</code> file, so an interrupted download resumes with the missing
+ * chunks only. Otherwise, the artifact is downloaded in a single request.<br>
+ * The chunk size comes from <code>plugins.repository-manager.[id].chunk-size</code>, in bytes.
+ */
+@Component
+@Slf4j
+public class ArtifactDownloader implements DisposableBean {
+
+	private static final long DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+	/**
+	 * Maximal amount of concurrently fetched chunks.
+	 */
+	private static final int PARALLELISM = 4;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Size of the state file header : the total length and the chunk size.
+	 */
+	private static final int STATE_HEADER = 16;
+
+	/**
+	 * The checksum file extensions and the corresponding algorithms, the strongest first.
+	 */
+	private static final String[][] CHECKSUMS = { { "sha256", "SHA-256" }, { "sha1", "SHA-1" } };
+
+	@Autowired
+	protected RepositoryHttpClient httpClient;
+
+	@Autowired
+	protected ConfigurationResource configuration;
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(PARALLELISM, r -> {
+		final Thread thread = new Thread(r, "artifact-download"); // NOPMD
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Download an artifact, resuming the previous interrupted download, and replace the target once verified.
+	 *
+	 * @param repository
+	 *            The repository identifier.
+	 * @param url
+	 *            The artifact URL. The checksum URLs are built from it.
+	 * @param target
+	 *            The target file.
+	 * @throws IOException
+	 *             When the download failed, or when the checksum does not match.
+	 */
+	public void download(final String repository, final String url, final Path target) throws IOException {
+		download(repository, url, target, TransferListener.NONE);
+	}
+
+	/**
+	 * Download an artifact, resuming the previous interrupted download, and replace the target once verified.
+	 *
+	 * @param repository
+	 *            The repository identifier.
+	 * @param url
+	 *            The artifact URL. The checksum URLs are built from it.
+	 * @param target
+	 *            The target file.
+	 * @param listener
+	 *            The listener notified of the transferred bytes and of the verification result.
+	 * @throws IOException
+	 *             When the download failed, or when the checksum does not match.
+	 */
+	public void download(final String repository, final String url, final Path target, final TransferListener listener)
+			throws IOException {
+		final Path part = target.resolveSibling(target.getFileName() + ".part");
+		final Path state = target.resolveSibling(target.getFileName() + ".state");
+		if (!Files.exists(state)) {
+			// Nothing to resume
+			Files.deleteIfExists(part);
+		}
+		try (RandomAccessFile stateFile = new RandomAccessFile(state.toFile(), "rw");
+				FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			download(repository, url, channel, stateFile, listener);
+		}
+		verify(repository, url, part, state, listener);
+		Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		Files.deleteIfExists(state);
+	}
+
+	private void download(final String repository, final String url, final FileChannel channel, final RandomAccessFile state,
+			final TransferListener listener) throws IOException {
+		long chunk = NumberUtils.toLong(configuration.get("plugins.repository-manager." + repository + ".chunk-size"), DEFAULT_CHUNK_SIZE);
+		long length = -1;
+		if (state.length() > STATE_HEADER) {
+			state.seek(0);
+			length = state.readLong();
+			chunk = state.readLong();
+		}
+		if (length > 0 && chunk > 0 && state.length() == STATE_HEADER + chunkCount(length, chunk)) {
+			// Resume the previous download
+			log.info("Resume the download of {}, {} bytes", url, length);
+		} else {
+			// Probe the range support with the first chunk
+			length = probe(repository, url, channel, chunk, listener);
+			if (length < 0) {
+				// Whole content has been downloaded
+				return;
+			}
+			state.setLength(0);
+			state.writeLong(length);
+			state.writeLong(chunk);
+			state.setLength(STATE_HEADER + chunkCount(length, chunk));
+			state.seek(STATE_HEADER);
+			state.writeByte(1);
+		}
+
+		// Fetch concurrently the missing chunks
+		listener.length(length);
+		final List<Future<?>> futures = new ArrayList<>();
+		final int count = chunkCount(length, chunk);
+		for (int i = 0; i < count; i++) {
+			if (!isDone(state, i)) {
+				final long start = i * chunk;
+				final long end = Math.min(length, start + chunk) - 1;
+				final int index = i;
+				futures.add(executor.submit(() -> {
+					fetch(repository, url, channel, start, end, listener);
+					setDone(state, index);
+					return null;
+				}));
+			}
+		}
+		await(futures);
+
+		// Previous content may be longer
+		channel.truncate(length);
+	}
+
+	/**
+	 * Fetch the first chunk.
+	 *
+	 * @return The total length of the artifact when the range requests are supported and the first chunk has been
+	 *         written. <code>-1</code> when the range requests are not supported, and then the whole content has been
+	 *         written.
+	 */
+	private long probe(final String repository, final String url, final FileChannel channel, final long chunk,
+			final TransferListener listener) throws IOException {
+		try (RepositoryHttpClient.Response response = httpClient.execute(repository, newRange(url, 0, chunk - 1))) {
+			if (response.getStatus() == HttpStatus.SC_PARTIAL_CONTENT) {
+				final long length = NumberUtils.toLong(StringUtils.substringAfterLast(response.getHeader("Content-Range"), "/"), -1);
+				if (length < 0) {
+					throw new IOException(String.format("Unknown length of artifact %s", url));
+				}
+				write(response, channel, 0, listener);
+				return length;
+			}
+			checkStatus(url, response);
+
+			// Range requests are not supported
+			channel.truncate(0);
+			write(response, channel, 0, listener);
+			return -1;
+		}
+	}
+
+	private void fetch(final String repository, final String url, final FileChannel channel, final long start, final long end,
+			final TransferListener listener) throws IOException {
+		try (RepositoryHttpClient.Response response = httpClient.execute(repository, newRange(url, start, end))) {
+			if (response.getStatus() != HttpStatus.SC_PARTIAL_CONTENT) {
+				checkStatus(url, response);
+				throw new IOException(String.format("Range requests of artifact %s are no more supported", url));
+			}
+			write(response, channel, start, listener);
+		}
+	}
+
+	private HttpGet newRange(final String url, final long start, final long end) {
+		final HttpGet request = new HttpGet(url);
+		request.setHeader("Range", "bytes=" + start + "-" + end);
+
+		// Ranges are relative to the uncompressed content
+		request.setHeader("Accept-Encoding", "identity");
+		return request;
+	}
+
+	private void checkStatus(final String url, final RepositoryHttpClient.Response response) throws IOException {
+		if (response.getStatus() >= HttpStatus.SC_BAD_REQUEST) {
+			throw new IOException(String.format("Artifact %s is not available, status %d", url, response.getStatus()));
+		}
+	}
+
+	/**
+	 * Write the response body at the given position. Concurrent writes at distinct positions are safe.
+	 */
+	private void write(final RepositoryHttpClient.Response response, final FileChannel channel, final long start,
+			final TransferListener listener) throws IOException {
+		final byte[] buffer = new byte[BUFFER_SIZE];
+		long position = start;
+		try (InputStream input = response.getContent()) {
+			for (int read = input.read(buffer); read != -1; read = input.read(buffer)) {
+				final ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, read);
+				while (bytes.hasRemaining()) {
+					position += channel.write(bytes, position);
+				}
+				listener.transferred(read);
+			}
+		}
+	}
+
+	private int chunkCount(final long length, final long chunk) {
+		return (int) ((length + chunk - 1) / chunk);
+	}
+
+	private synchronized boolean isDone(final RandomAccessFile state, final int index) throws IOException {
+		state.seek(STATE_HEADER + (long) index);
+		return state.readByte() == 1;
+	}
+
+	private synchronized void setDone(final RandomAccessFile state, final int index) throws IOException {
+		state.seek(STATE_HEADER + (long) index);
+		state.writeByte(1);
+	}
+
+	private void await(final List<Future<?>> futures) throws IOException {
+		try {
+			for (final Future<?> future : futures) {
+				future.get();
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Download interrupted", e);
+		} catch (final ExecutionException e) {
+			throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+		} finally {
+			// Stop the other chunks on failure, the completed ones are kept for the resume
+			futures.forEach(f -> f.cancel(true));
+		}
+	}
+
+	/**
+	 * Verify the downloaded file against the strongest checksum published by the repository. Only a corrupted content
+	 * is deleted to restart from scratch next time, a failure while fetching the checksum keeps it for the resume.
+	 */
+	private void verify(final String repository, final String url, final Path file, final Path state, final TransferListener listener)
+			throws IOException {
+		for (final String[] checksum : CHECKSUMS) {
+			final String expected = getChecksum(repository, url + "." + checksum[0]);
+			if (expected != null) {
+				final String actual = digest(file, checksum[1]);
+				if (!expected.equalsIgnoreCase(actual)) {
+					Files.deleteIfExists(file);
+					Files.deleteIfExists(state);
+					listener.verified(ChecksumStatus.MISMATCH);
+					throw new IOException(String.format("Checksum %s of artifact %s does not match, expected %s, got %s", checksum[1], url,
+							expected, actual));
+				}
+				listener.verified(ChecksumStatus.VERIFIED);
+				return;
+			}
+		}
+		log.warn("No checksum published for artifact {}, the download is not verified", url);
+		listener.verified(ChecksumStatus.UNVERIFIED);
+	}
+
+	/**
+	 * Return the published checksum.
+	 *
+	 * @return The published checksum. <code>null</code> when not published.
+	 */
+	private String getChecksum(final String repository, final String url) throws IOException {
+		try (RepositoryHttpClient.Response response = httpClient.execute(repository, new HttpGet(url))) {
+			if (response.getStatus() == HttpStatus.SC_NOT_FOUND) {
+				return null;
+			}
+			checkStatus(url, response);
+			try (InputStream input = response.getContent()) {
+				// Content may be followed by the file name
+				return StringUtils.trimToNull(StringUtils.substringBefore(IOUtils.toString(input, StandardCharsets.US_ASCII).trim(), " "));
+			}
+		}
+	}
+
+	private String digest(final Path file, final String algorithm) throws IOException {
+		try (InputStream input = Files.newInputStream(file)) {
+			return Hex.encodeHexString(DigestUtils.updateDigest(DigestUtils.getDigest(algorithm), input).digest());
+		}
+	}
+
+	@Override
+	public void destroy() {
+		executor.shutdownNow();
+	}
+}
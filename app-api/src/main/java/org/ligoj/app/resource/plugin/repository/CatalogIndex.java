@@ -0,0 +1,250 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Immutable search index of the artifacts available in a repository. Artifact names are indexed by their n-grams
+ * (1 to {@value #GRAM} characters), so a search costs the size of the smallest matching posting list, not the size
+ * of the catalog. Results are ranked: exact name, then name prefix, then word prefix, then any other substring; and
+ * ordered by name within the same rank.
+ */
+public class CatalogIndex {
+
+	/**
+	 * The maximal indexed n-gram length.
+	 */
+	private static final int GRAM = 3;
+
+	/**
+	 * The common prefix of plug-in artifacts, ignored for the prefix ranking.
+	 */
+	private static final String PREFIX = "plugin-";
+
+	private static final int[] NONE = new int[0];
+
+	/**
+	 * Indexed artifacts, ordered by name.
+	 */
+	private final Artifact[] artifacts;
+
+	/**
+	 * Lower case names, same order than {@link #artifacts}.
+	 */
+	private final String[] names;
+
+	/**
+	 * Posting lists : n-gram to ordered artifact positions.
+	 */
+	private final Map<String, int[]> grams;
+
+	/**
+	 * The source artifacts, used to detect a change of the repository index. The fetched indexes are never updated in
+	 * place, so a new index is a new instance.
+	 */
+	private final Map<String, Artifact> source;
+
+	/**
+	 * Build the index from the artifacts of a repository.
+	 *
+	 * @param source
+	 *            The last versions of the repository's artifacts. Key is the artifact identifier.
+	 */
+	public CatalogIndex(final Map<String, Artifact> source) {
+		this.artifacts = source.values().stream().sorted(Comparator.comparing(Artifact::getArtifact)).toArray(Artifact[]::new);
+		this.names = Arrays.stream(artifacts).map(a -> a.getArtifact().toLowerCase(Locale.ENGLISH)).toArray(String[]::new);
+		this.source = source;
+
+		// Build the posting lists, positions are naturally ordered and unique
+		final Map<String, Postings> builder = new HashMap<>();
+		for (int i = 0; i < names.length; i++) {
+			final String name = names[i];
+			for (int start = 0; start < name.length(); start++) {
+				for (int end = start + 1; end <= Math.min(start + GRAM, name.length()); end++) {
+					builder.computeIfAbsent(name.substring(start, end), g -> new Postings()).add(i);
+				}
+			}
+		}
+		this.grams = new HashMap<>(builder.size());
+		builder.forEach((g, p) -> grams.put(g, p.toArray()));
+	}
+
+	/**
+	 * Indicate this index has been built from the given artifacts. Only the identity is compared, so this check does
+	 * not depend on the size of the catalog.
+	 *
+	 * @param source
+	 *            The last versions of the repository's artifacts.
+	 * @return <code>true</code> when this index is up to date regarding the given artifacts.
+	 */
+	public boolean isBuiltFrom(final Map<String, Artifact> source) {
+		return this.source == source;
+	}
+
+	/**
+	 * Return the amount of indexed artifacts.
+	 *
+	 * @return The amount of indexed artifacts.
+	 */
+	public int size() {
+		return artifacts.length;
+	}
+
+	/**
+	 * Return the ranked artifacts whose name contains the query, ignoring the case.
+	 *
+	 * @param query
+	 *            The searched term. When empty, all artifacts are returned.
+	 * @param offset
+	 *            The amount of first ranked artifacts to skip.
+	 * @param limit
+	 *            The maximal amount of returned artifacts.
+	 * @return The requested page of ranked artifacts.
+	 */
+	public List<Artifact> search(final String query, final int offset, final int limit) {
+		return search(query, offset, limit, a -> true);
+	}
+
+	/**
+	 * Return the ranked artifacts whose name contains the query, ignoring the case, and accepted by the given filter.
+	 * The filtered artifacts are not counted by the offset.
+	 *
+	 * @param query
+	 *            The searched term. When empty, all artifacts are returned.
+	 * @param offset
+	 *            The amount of first ranked artifacts to skip.
+	 * @param limit
+	 *            The maximal amount of returned artifacts.
+	 * @param filter
+	 *            The accepted artifacts.
+	 * @return The requested page of ranked artifacts.
+	 */
+	public List<Artifact> search(final String query, final int offset, final int limit, final Predicate<Artifact> filter) {
+		final String term = StringUtils.trimToEmpty(query).toLowerCase(Locale.ENGLISH);
+
+		// Rank the candidates in buckets, each one stays ordered by name
+		final List<List<Artifact>> ranks = new ArrayList<>(4);
+		for (int rank = 0; rank < 4; rank++) {
+			ranks.add(new ArrayList<>());
+		}
+		for (final int candidate : getCandidates(term)) {
+			final String name = names[candidate];
+			if (term.length() > GRAM && !name.contains(term) || !filter.test(artifacts[candidate])) {
+				// The n-grams matched, but not the whole term, or this artifact is filtered
+				continue;
+			}
+			ranks.get(rank(name, term)).add(artifacts[candidate]);
+		}
+
+		// Build the requested page from the highest rank
+		final List<Artifact> result = new ArrayList<>(Math.min(Math.max(0, limit), artifacts.length));
+		int skip = Math.max(0, offset);
+		for (int rank = 3; rank >= 0 && result.size() < limit; rank--) {
+			final List<Artifact> bucket = ranks.get(rank);
+			final int from = Math.min(skip, bucket.size());
+			skip -= from;
+			result.addAll(bucket.subList(from, from + Math.min(bucket.size() - from, limit - result.size())));
+		}
+		return result;
+	}
+
+	/**
+	 * Return the positions of the artifacts possibly matching the given term.
+	 */
+	private int[] getCandidates(final String term) {
+		if (term.isEmpty()) {
+			final int[] all = new int[artifacts.length];
+			Arrays.setAll(all, i -> i);
+			return all;
+		}
+		if (term.length() <= GRAM) {
+			// Exact n-gram match
+			return grams.getOrDefault(term, NONE);
+		}
+
+		// Intersect the posting lists of all n-grams of the term, starting from the smallest one
+		final List<int[]> postings = new ArrayList<>(term.length() - GRAM + 1);
+		for (int start = 0; start + GRAM <= term.length(); start++) {
+			final int[] posting = grams.get(term.substring(start, start + GRAM));
+			if (posting == null) {
+				return NONE;
+			}
+			postings.add(posting);
+		}
+		postings.sort(Comparator.comparingInt(p -> p.length));
+		int[] result = postings.get(0);
+		for (int i = 1; i < postings.size() && result.length > 0; i++) {
+			result = intersect(result, postings.get(i));
+		}
+		return result;
+	}
+
+	/**
+	 * Intersect two ordered posting lists.
+	 */
+	private static int[] intersect(final int[] p1, final int[] p2) {
+		final int[] result = new int[Math.min(p1.length, p2.length)];
+		int count = 0;
+		for (int i = 0, j = 0; i < p1.length && j < p2.length;) {
+			if (p1[i] == p2[j]) {
+				result[count++] = p1[i];
+				i++;
+				j++;
+			} else if (p1[i] < p2[j]) {
+				i++;
+			} else {
+				j++;
+			}
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+	/**
+	 * Rank a matching name: <code>3</code> for exact match, <code>2</code> for prefix, <code>1</code> for a word
+	 * prefix, <code>0</code> otherwise. The common plug-in prefix is ignored.
+	 */
+	private static int rank(final String name, final String term) {
+		final String simple = StringUtils.removeStart(name, PREFIX);
+		if (name.equals(term) || simple.equals(term)) {
+			return 3;
+		}
+		if (name.startsWith(term) || simple.startsWith(term)) {
+			return 2;
+		}
+		return name.contains("-" + term) ? 1 : 0;
+	}
+
+	/**
+	 * Growing list of ordered and unique positions.
+	 */
+	private static class Postings {
+		private int[] positions = new int[4];
+		private int size;
+
+		private void add(final int position) {
+			if (size > 0 && positions[size - 1] == position) {
+				// Already added for this artifact
+				return;
+			}
+			if (size == positions.length) {
+				positions = Arrays.copyOf(positions, size * 2);
+			}
+			positions[size++] = position;
+		}
+
+		private int[] toArray() {
+			return Arrays.copyOf(positions, size);
+		}
+	}
+}
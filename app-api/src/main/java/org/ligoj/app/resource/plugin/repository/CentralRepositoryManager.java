@@ -4,19 +4,14 @@
 package org.ligoj.app.resource.plugin.repository;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
-import javax.cache.annotation.CacheRemoveAll;
-import javax.cache.annotation.CacheResult;
-
-import org.apache.commons.lang3.StringUtils;
-import org.ligoj.app.resource.plugin.CurlProcessor;
 import org.springframework.stereotype.Component;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 
 /**
  * Maven central repository.
@@ -25,7 +20,6 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 public class CentralRepositoryManager extends AbstractRemoteRepositoryManager {
 
 	private static final String DEFAULT_ARTIFACT_URL = "http://central.maven.org/maven2/org/ligoj/plugin/";
-	private static final String DEFAULT_GROUP_ID = "org.ligoj.plugin";
 	private static final String DEFAULT_SEARCH_URL = "http://search.maven.org/solrsearch/select?wt=json&rows=100&q=";
 
 	@Override
@@ -34,27 +28,57 @@ public class CentralRepositoryManager extends AbstractRemoteRepositoryManager {
 	}
 
 	@Override
-	@CacheResult(cacheName = "plugins-last-version-central")
-	public Map<String, Artifact> getLastPluginVersions() throws IOException {
-		try (CurlProcessor processor = new CurlProcessor()) {
-			final String searchResult = StringUtils.defaultString(processor.get(getSearchUrl(DEFAULT_SEARCH_URL + getGroupId(DEFAULT_GROUP_ID))),
-					"{\"response\":{\"docs\":[]}}}");
-			// Extract artifacts
-			final ObjectMapper jsonMapper = new ObjectMapper();
-			return Arrays.stream(jsonMapper.treeToValue(jsonMapper.readTree(searchResult).at("/response/docs"), CentralSearchResult[].class))
-					.collect(Collectors.toMap(CentralSearchResult::getArtifact, ArtifactVo::new));
+	protected Map<String, Artifact> fetchLastPluginVersions() throws IOException {
+		final String url = getIndexUrl();
+		final SearchPage first = searchClient.fetch(getId(), url, CentralRepositoryManager::parsePage);
+
+		// Fetch the next pages concurrently, "numFound" is the total amount of documents
+		final int size = first.getArtifacts().size();
+		final List<String> next = new ArrayList<>();
+		for (int start = size; size > 0 && start < first.getTotal() && next.size() < RepositorySearchClient.MAX_PAGES; start += size) {
+			next.add(url + "&start=" + start);
+		}
+		return toMap(first, searchClient.fetch(getId(), next, CentralRepositoryManager::parsePage));
+	}
+
+	/**
+	 * Parse a Solr search result page : <code>{"response":{"numFound":1,"docs":[...]}}</code>
+	 */
+	private static SearchPage parsePage(final JsonParser parser) throws IOException {
+		final SearchPage page = new SearchPage();
+		if (parser.nextToken() != JsonToken.START_OBJECT) {
+			return page;
+		}
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			if ("response".equals(parser.getCurrentName()) && parser.nextToken() == JsonToken.START_OBJECT) {
+				while (parser.nextToken() == JsonToken.FIELD_NAME) {
+					final String name = parser.getCurrentName();
+					if ("docs".equals(name)) {
+						RepositorySearchClient.readArtifacts(parser, CentralSearchResult.class, page);
+					} else {
+						parser.nextToken();
+						if ("numFound".equals(name)) {
+							page.setTotal(parser.getValueAsInt(-1));
+						}
+						parser.skipChildren();
+					}
+				}
+			} else {
+				parser.nextToken();
+				parser.skipChildren();
+			}
 		}
+		return page;
 	}
 
 	@Override
-	public InputStream getArtifactInputStream(String artifact, String version) throws IOException {
-		return getArtifactInputStream(artifact, version, DEFAULT_ARTIFACT_URL);
+	protected String getDefaultSearchUrl() {
+		return DEFAULT_SEARCH_URL;
 	}
 
 	@Override
-	@CacheRemoveAll(cacheName = "plugins-last-version-central")
-	public void invalidateLastPluginVersions() {
-		// Nothing to do
+	protected String getDefaultArtifactUrl() {
+		return DEFAULT_ARTIFACT_URL;
 	}
 
 }
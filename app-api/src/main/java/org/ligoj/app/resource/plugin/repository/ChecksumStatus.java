@@ -0,0 +1,25 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin.repository;
+
+/**
+ * Verification status of a downloaded artifact.
+ */
+public enum ChecksumStatus {
+
+	/**
+	 * The content matches the checksum published by the repository.
+	 */
+	VERIFIED,
+
+	/**
+	 * The repository does not publish any checksum for this artifact.
+	 */
+	UNVERIFIED,
+
+	/**
+	 * The content does not match the checksum published by the repository.
+	 */
+	MISMATCH
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin.repository;
+
+/**
+ * Circuit breaker of a repository. After too many consecutive failures the circuit is open, and the requests are
+ * rejected without reaching the repository. Once the delay is elapsed, a single trial request is allowed : its success
+ * closes the circuit, its failure opens it again for a new delay.
+ */
+public class CircuitBreaker {
+
+	private final int threshold;
+
+	private final long delay;
+
+	private int failures;
+
+	/**
+	 * The time stamp in milliseconds of the last opening or trial. <code>-1</code> when the circuit is closed.
+	 */
+	private long opened = -1;
+
+	/**
+	 * All arguments constructor.
+	 *
+	 * @param threshold
+	 *            The amount of consecutive failures opening the circuit.
+	 * @param delay
+	 *            The delay in milliseconds the circuit stays open before a trial request.
+	 */
+	public CircuitBreaker(final int threshold, final long delay) {
+		this.threshold = threshold;
+		this.delay = delay;
+	}
+
+	/**
+	 * Indicate a request is allowed.
+	 *
+	 * @return <code>true</code> when the circuit is closed, or when this request is the trial one.
+	 */
+	public synchronized boolean allow() {
+		if (opened == -1) {
+			return true;
+		}
+		final long now = System.currentTimeMillis();
+		if (now - opened >= delay) {
+			// Trial request, the other ones are rejected until its completion
+			opened = now;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Record a successful request, and close the circuit.
+	 */
+	public synchronized void success() {
+		failures = 0;
+		opened = -1;
+	}
+
+	/**
+	 * Record a failed request, and open the circuit when the threshold is reached.
+	 */
+	public synchronized void failure() {
+		failures++;
+		if (failures >= threshold) {
+			opened = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Indicate the circuit is open.
+	 *
+	 * @return <code>true</code> when the circuit is open.
+	 */
+	public synchronized boolean isOpen() {
+		return opened != -1;
+	}
+}
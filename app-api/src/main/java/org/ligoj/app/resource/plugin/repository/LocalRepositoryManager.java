@@ -0,0 +1,296 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin.repository;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.ObjectUtils;
+import org.ligoj.app.resource.plugin.PluginVersion;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Repository manager backed by a local directory, or a mounted one, in Maven layout :
+ * <code>[path]/org/ligoj/plugin/[artifact]/[version]/[artifact]-[version].jar</code>. The root directory is configured
+ * with <code>plugins.repository-manager.local.path</code>, and the repository is empty when not configured.<br>
+ * The index is built incrementally : only the artifact directories modified since the previous scan are listed again.
+ * This index is stored locally to survive restarts. The installation is a zero-copy file transfer.
+ */
+@Component
+@Slf4j
+public class LocalRepositoryManager implements RepositoryManager {
+
+	/**
+	 * The identifier of this repository.
+	 */
+	public static final String ID = "local";
+
+	private static final String DEFAULT_GROUP_ID = "org.ligoj.plugin";
+
+	private static final int MAGIC = 0x4C4C4458;
+
+	/**
+	 * Modification time stamp of an artifact directory containing a version without its jar yet.
+	 */
+	private static final long INCOMPLETE = -1;
+
+	@Autowired
+	protected ConfigurationResource configuration;
+
+	@Autowired
+	protected RepositoryIndexStore store;
+
+	/**
+	 * The indexed group directory.
+	 */
+	private Path indexed;
+
+	/**
+	 * The index entries. Key is the plug-in identifier.
+	 */
+	private final Map<String, IndexEntry> index = new HashMap<>();
+
+	/**
+	 * The last versions built from the index, the same instance while the index is unchanged. <code>null</code> when
+	 * not yet built.
+	 */
+	private Map<String, Artifact> versions;
+
+	/**
+	 * The last version of an artifact and the modification time stamp of its directory when it has been scanned.
+	 */
+	private static class IndexEntry {
+		private final long modified;
+		private final String version;
+
+		private IndexEntry(final long modified, final String version) {
+			this.modified = modified;
+			this.version = version;
+		}
+	}
+
+	@Override
+	public String getId() {
+		return ID;
+	}
+
+	/**
+	 * Return the configuration value of this repository.
+	 *
+	 * @param suffix
+	 *            The configuration key name suffix.
+	 * @param defaultValue
+	 *            The default configuration value.
+	 * @return The configuration value. Default is the given "defaultValue" parameter.
+	 */
+	private String getConfiguration(final String suffix, final String defaultValue) {
+		return ObjectUtils.defaultIfNull(configuration.get("plugins.repository-manager." + ID + "." + suffix), defaultValue);
+	}
+
+	/**
+	 * Return the directory of the plug-ins group.
+	 *
+	 * @return The directory of the plug-ins group. <code>null</code> when the repository is not configured.
+	 */
+	protected Path getGroupDirectory() {
+		final String path = getConfiguration("path", null);
+		return path == null ? null : Paths.get(path, getConfiguration("groupId", DEFAULT_GROUP_ID).split("\\."));
+	}
+
+	@Override
+	public synchronized Map<String, Artifact> getLastPluginVersions() throws IOException {
+		final Path group = getGroupDirectory();
+		if (group == null || !Files.isDirectory(group)) {
+			return Collections.emptyMap();
+		}
+		if (!group.equals(indexed)) {
+			// Repository has moved, start from the stored index
+			index.clear();
+			versions = null;
+			indexed = group;
+			load();
+		}
+
+		// Scan only the modified artifact directories
+		boolean changed = false;
+		final Set<String> artifacts = new HashSet<>();
+		try (DirectoryStream<Path> directories = Files.newDirectoryStream(group, Files::isDirectory)) {
+			for (final Path directory : directories) {
+				final String artifact = directory.getFileName().toString();
+				artifacts.add(artifact);
+				final long modified = Files.getLastModifiedTime(directory).toMillis();
+				final IndexEntry entry = index.get(artifact);
+				if (entry == null || entry.modified != modified) {
+					index.put(artifact, scan(directory, artifact, modified));
+					changed = true;
+				}
+			}
+		}
+		changed |= index.keySet().retainAll(artifacts);
+		if (changed) {
+			save();
+		}
+		if (changed || versions == null) {
+			versions = Collections.unmodifiableMap(
+					index.entrySet().stream().filter(e -> e.getValue().version != null).collect(Collectors.toMap(Map.Entry::getKey, e -> {
+						final ArtifactVo artifact = new ArtifactVo();
+						artifact.setArtifact(e.getKey());
+						artifact.setVersion(e.getValue().version);
+						return artifact;
+					})));
+		}
+		return versions;
+	}
+
+	/**
+	 * Return the last complete version of the given artifact directory.
+	 */
+	private IndexEntry scan(final Path directory, final String artifact, final long modified) throws IOException {
+		PluginVersion last = null;
+		String version = null;
+		boolean incomplete = false;
+		try (DirectoryStream<Path> candidates = Files.newDirectoryStream(directory, Files::isDirectory)) {
+			for (final Path versionDirectory : candidates) {
+				final String candidate = versionDirectory.getFileName().toString();
+				if (!Files.isRegularFile(versionDirectory.resolve(artifact + "-" + candidate + ".jar"))) {
+					// Version being deployed, scan this artifact again next time
+					incomplete = true;
+				} else if (last == null || PluginVersion.valueOf(candidate).isNewerThan(last)) {
+					last = PluginVersion.valueOf(candidate);
+					version = candidate;
+				}
+			}
+		}
+		return new IndexEntry(incomplete ? INCOMPLETE : modified, version);
+	}
+
+	private Path getIndexFile() {
+		final Path directory = store == null ? null : store.getDirectory();
+		return directory == null ? null : directory.resolve(ID + "-layout.idx");
+	}
+
+	/**
+	 * Load the stored index when it has been built from the current group directory.
+	 */
+	private void load() {
+		final Path file = getIndexFile();
+		if (file == null || !Files.isRegularFile(file)) {
+			return;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC || !indexed.toString().equals(in.readUTF())) {
+				return;
+			}
+			final int size = in.readInt();
+			for (int i = 0; i < size; i++) {
+				final String artifact = in.readUTF();
+				final long modified = in.readLong();
+				index.put(artifact, new IndexEntry(modified, in.readBoolean() ? in.readUTF() : null));
+			}
+		} catch (final IOException e) {
+			log.warn("Unable to load the index of the local repository from {}", file, e);
+			index.clear();
+		}
+	}
+
+	/**
+	 * Store the index, the failures are only logged.
+	 */
+	private void save() {
+		final Path file = getIndexFile();
+		if (file == null) {
+			return;
+		}
+		try {
+			Files.createDirectories(file.getParent());
+			final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+				out.writeInt(MAGIC);
+				out.writeUTF(indexed.toString());
+				out.writeInt(index.size());
+				for (final Map.Entry<String, IndexEntry> entry : index.entrySet()) {
+					out.writeUTF(entry.getKey());
+					out.writeLong(entry.getValue().modified);
+					out.writeBoolean(entry.getValue().version != null);
+					if (entry.getValue().version != null) {
+						out.writeUTF(entry.getValue().version);
+					}
+				}
+			}
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (final IOException e) {
+			log.warn("Unable to store the index of the local repository in {}", file, e);
+		}
+	}
+
+	/**
+	 * Return the jar file of the given artifact.
+	 */
+	private Path getArtifactFile(final String artifact, final String version) throws IOException {
+		final Path group = getGroupDirectory();
+		if (group == null) {
+			throw new IOException("Local repository is not configured");
+		}
+		return group.resolve(artifact).resolve(version).resolve(artifact + "-" + version + ".jar");
+	}
+
+	@Override
+	public InputStream getArtifactInputStream(final String artifact, final String version) throws IOException {
+		return Files.newInputStream(getArtifactFile(artifact, version));
+	}
+
+	@Override
+	public void copyArtifact(final String artifact, final String version, final Path target, final TransferListener listener)
+			throws IOException {
+		try (FileChannel in = FileChannel.open(getArtifactFile(artifact, version), StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING)) {
+			// Zero-copy transfer, may need several calls
+			final long size = in.size();
+			listener.length(size);
+			for (long position = 0; position < size;) {
+				final long transferred = in.transferTo(position, size - position, out);
+				if (transferred == 0) {
+					// The source has been truncated since its size has been read
+					throw new IOException(String.format("Plug-in %s v%s has been truncated at %d/%d bytes", artifact, version, position, size));
+				}
+				listener.transferred(transferred);
+				position += transferred;
+			}
+		}
+	}
+
+	@Override
+	public synchronized void invalidateLastPluginVersions() {
+		// Next call scans all the artifact directories
+		index.clear();
+		indexed = null;
+		final Path file = getIndexFile();
+		if (file != null) {
+			FileUtils.deleteQuietly(file.toFile());
+		}
+	}
+}
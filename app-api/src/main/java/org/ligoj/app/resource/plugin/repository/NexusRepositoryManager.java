@@ -4,19 +4,14 @@
 package org.ligoj.app.resource.plugin.repository;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
-import javax.cache.annotation.CacheRemoveAll;
-import javax.cache.annotation.CacheResult;
-
-import org.apache.commons.lang3.StringUtils;
-import org.ligoj.app.resource.plugin.CurlProcessor;
 import org.springframework.stereotype.Component;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 
 /**
  * Nexus repository manager.
@@ -25,20 +20,46 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 public class NexusRepositoryManager extends AbstractRemoteRepositoryManager {
 
 	private static final String DEFAULT_ARTIFACT_URL = "https://oss.sonatype.org/service/local/repositories/releases/content/";
-	private static final String DEFAULT_GROUP_ID = "org.ligoj.plugin";
 	private static final String DEFAULT_SEARCH_URL = "https://oss.sonatype.org/service/local/lucene/search?collapseresults=true&repositoryId=releases&p=jar&c=sources&g=";
 
 	@Override
-	@CacheResult(cacheName = "plugins-last-version-nexus")
-	public Map<String, Artifact> getLastPluginVersions() throws IOException {
-		try (CurlProcessor processor = new CurlProcessor()) {
-			final String searchResult = StringUtils.defaultString(
-					processor.get(getSearchUrl(DEFAULT_SEARCH_URL + getGroupId(DEFAULT_GROUP_ID)), "Accept:application/json"), "{\"data\":[]}");
-			// Extract artifacts
-			final ObjectMapper jsonMapper = new ObjectMapper();
-			return Arrays.stream(jsonMapper.treeToValue(jsonMapper.readTree(searchResult).at("/data"), NexusSearchResult[].class))
-					.collect(Collectors.toMap(NexusSearchResult::getArtifact, ArtifactVo::new, (a1, a2) -> a1));
+	protected Map<String, Artifact> fetchLastPluginVersions() throws IOException {
+		final String url = getIndexUrl();
+		final SearchPage first = searchClient.fetch(getId(), url, NexusRepositoryManager::parsePage);
+
+		// Fetch the next pages concurrently only when Nexus has truncated the result
+		final int size = first.getArtifacts().size();
+		final List<String> next = new ArrayList<>();
+		for (int from = size; first.isTruncated() && size > 0 && from < first.getTotal()
+				&& next.size() < RepositorySearchClient.MAX_PAGES; from += size) {
+			next.add(url + "&from=" + from + "&count=" + size);
+		}
+		return toMap(first, searchClient.fetch(getId(), next, NexusRepositoryManager::parsePage));
+	}
+
+	/**
+	 * Parse a Lucene search result page : <code>{"totalCount":1,"tooManyResults":false,"data":[...]}</code>
+	 */
+	private static SearchPage parsePage(final JsonParser parser) throws IOException {
+		final SearchPage page = new SearchPage();
+		if (parser.nextToken() != JsonToken.START_OBJECT) {
+			return page;
+		}
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			final String name = parser.getCurrentName();
+			if ("data".equals(name)) {
+				RepositorySearchClient.readArtifacts(parser, NexusSearchResult.class, page);
+			} else {
+				parser.nextToken();
+				if ("totalCount".equals(name)) {
+					page.setTotal(parser.getValueAsInt(-1));
+				} else if ("tooManyResults".equals(name)) {
+					page.setTruncated(parser.getValueAsBoolean());
+				}
+				parser.skipChildren();
+			}
 		}
+		return page;
 	}
 
 	@Override
@@ -47,14 +68,13 @@ public class NexusRepositoryManager extends AbstractRemoteRepositoryManager {
 	}
 
 	@Override
-	public InputStream getArtifactInputStream(String artifact, String version) throws IOException {
-		return getArtifactInputStream(artifact, version, DEFAULT_ARTIFACT_URL + getGroupId(DEFAULT_GROUP_ID).replace('.', '/'));
+	protected String getDefaultSearchUrl() {
+		return DEFAULT_SEARCH_URL;
 	}
 
 	@Override
-	@CacheRemoveAll(cacheName = "plugins-last-version-nexus")
-	public void invalidateLastPluginVersions() {
-		// Nothing to do
+	protected String getDefaultArtifactUrl() {
+		return DEFAULT_ARTIFACT_URL + getGroupId().replace('.', '/');
 	}
 
 }
@@ -0,0 +1,52 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin.repository;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Search indexes of the repositories' catalogs. An index is built from the fetched repository index, and is rebuilt
+ * only when the fetched artifacts or versions have changed.
+ */
+@Component
+@Slf4j
+public class PluginCatalog {
+
+	private final Map<String, CatalogIndex> indexes = new ConcurrentHashMap<>();
+
+	/**
+	 * Return the up to date search index of a repository.
+	 *
+	 * @param repository
+	 *            The repository identifier.
+	 * @param versions
+	 *            The last fetched versions of the repository's artifacts.
+	 * @return The search index built from the given artifacts.
+	 */
+	public CatalogIndex getIndex(final String repository, final Map<String, Artifact> versions) {
+		return indexes.compute(repository, (k, index) -> {
+			if (index != null && index.isBuiltFrom(versions)) {
+				return index;
+			}
+			final CatalogIndex newIndex = new CatalogIndex(versions);
+			log.info("Catalog index of repository {} built with {} artifacts", repository, newIndex.size());
+			return newIndex;
+		});
+	}
+
+	/**
+	 * Invalidate the search index of a repository.
+	 *
+	 * @param repository
+	 *            The repository identifier.
+	 */
+	public void invalidate(final String repository) {
+		indexes.remove(repository);
+	}
+}
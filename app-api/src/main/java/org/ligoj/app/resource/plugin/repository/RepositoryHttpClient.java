@@ -0,0 +1,250 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin.repository;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * HTTP client shared by the repository managers. The connections are pooled and kept alive, the responses are
+ * requested compressed. Each request is bounded by the connect, read and total timeouts of its repository, and goes
+ * through the circuit breaker of this repository. The settings come from the repository configuration :
+ * <ul>
+ * <li><code>plugins.repository-manager.[id].connect-timeout</code> : connect timeout in milliseconds.</li>
+ * <li><code>plugins.repository-manager.[id].read-timeout</code> : read timeout in milliseconds.</li>
+ * <li><code>plugins.repository-manager.[id].total-timeout</code> : total timeout in milliseconds, including the
+ * download of the body.</li>
+ * <li><code>plugins.repository-manager.[id].circuit.failures</code> : amount of consecutive failures opening the
+ * circuit.</li>
+ * <li><code>plugins.repository-manager.[id].circuit.delay</code> : delay in seconds the circuit stays open.</li>
+ * </ul>
+ */
+@Component
+public class RepositoryHttpClient implements DisposableBean {
+
+	private static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+	private static final int DEFAULT_READ_TIMEOUT = 30000;
+	private static final long DEFAULT_TOTAL_TIMEOUT = 600000;
+	private static final int DEFAULT_FAILURES = 5;
+	private static final long DEFAULT_DELAY = 60;
+
+	@Autowired
+	protected ConfigurationResource configuration;
+
+	private final PoolingHttpClientConnectionManager pool = new PoolingHttpClientConnectionManager();
+
+	private final CloseableHttpClient client;
+
+	private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+		final Thread thread = new Thread(r, "repository-timeout"); // NOPMD
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+	/**
+	 * Default constructor building the pooled client. The proxy is read from the standard system properties such as
+	 * "https.proxyHost" and "http.nonProxyHosts".
+	 */
+	public RepositoryHttpClient() {
+		pool.setMaxTotal(20);
+		pool.setDefaultMaxPerRoute(10);
+		client = HttpClientBuilder.create().useSystemProperties().setConnectionManager(pool).evictExpiredConnections()
+				.evictIdleConnections(30, TimeUnit.SECONDS).build();
+	}
+
+	/**
+	 * A response to release once read.
+	 */
+	public static class Response implements Closeable {
+
+		private final CloseableHttpResponse response;
+		private final ScheduledFuture<?> abort;
+
+		private Response(final CloseableHttpResponse response, final ScheduledFuture<?> abort) {
+			this.response = response;
+			this.abort = abort;
+		}
+
+		/**
+		 * Return the HTTP status.
+		 *
+		 * @return The HTTP status.
+		 */
+		public int getStatus() {
+			return response.getStatusLine().getStatusCode();
+		}
+
+		/**
+		 * Return a response header.
+		 *
+		 * @param name
+		 *            The header name.
+		 * @return The first header value. <code>null</code> when not present.
+		 */
+		public String getHeader(final String name) {
+			final Header header = response.getFirstHeader(name);
+			return header == null ? null : header.getValue();
+		}
+
+		/**
+		 * Return the response body. Closing this stream releases the response.
+		 *
+		 * @return The response body. Never <code>null</code>.
+		 * @throws IOException
+		 *             When the body cannot be read.
+		 */
+		public InputStream getContent() throws IOException {
+			if (response.getEntity() == null) {
+				throw new IOException("No content");
+			}
+			return new FilterInputStream(response.getEntity().getContent()) {
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					} finally {
+						Response.this.close();
+					}
+				}
+			};
+		}
+
+		@Override
+		public void close() throws IOException {
+			abort.cancel(false);
+			response.close();
+		}
+	}
+
+	/**
+	 * Execute a request.
+	 *
+	 * @param repository
+	 *            The repository identifier owning the settings and the circuit breaker.
+	 * @param request
+	 *            The request to execute.
+	 * @return The response to close.
+	 * @throws IOException
+	 *             When the circuit is open, or when the request failed.
+	 */
+	public Response execute(final String repository, final HttpRequestBase request) throws IOException {
+		final CircuitBreaker breaker = getBreaker(repository);
+		if (!breaker.allow()) {
+			throw new IOException(String.format("Repository %s is unavailable, the circuit is open", repository));
+		}
+		request.setConfig(RequestConfig.custom().setConnectTimeout(getConfiguration(repository, "connect-timeout", DEFAULT_CONNECT_TIMEOUT))
+				.setConnectionRequestTimeout(getConfiguration(repository, "connect-timeout", DEFAULT_CONNECT_TIMEOUT))
+				.setSocketTimeout(getConfiguration(repository, "read-timeout", DEFAULT_READ_TIMEOUT)).build());
+
+		// The total timeout aborts the request, even during the body download
+		final ScheduledFuture<?> abort = timer.schedule(request::abort,
+				NumberUtils.toLong(configuration.get(getKey(repository, "total-timeout")), DEFAULT_TOTAL_TIMEOUT), TimeUnit.MILLISECONDS);
+		try {
+			final CloseableHttpResponse response = client.execute(request);
+			if (response.getStatusLine().getStatusCode() >= HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+				breaker.failure();
+			} else {
+				breaker.success();
+			}
+			return new Response(response, abort);
+		} catch (final IOException e) {
+			abort.cancel(false);
+			breaker.failure();
+			throw e;
+		}
+	}
+
+	/**
+	 * Open the content at the given URL.
+	 *
+	 * @param repository
+	 *            The repository identifier owning the settings and the circuit breaker.
+	 * @param url
+	 *            The URL to get.
+	 * @return The content stream to close.
+	 * @throws IOException
+	 *             When the circuit is open, when the request failed or when the status is not a successful one.
+	 */
+	public InputStream open(final String repository, final String url) throws IOException {
+		return open(repository, new HttpGet(url));
+	}
+
+	/**
+	 * Open the content of the given request.
+	 *
+	 * @param repository
+	 *            The repository identifier owning the settings and the circuit breaker.
+	 * @param request
+	 *            The request to execute.
+	 * @return The content stream to close.
+	 * @throws IOException
+	 *             When the circuit is open, when the request failed or when the status is not a successful one.
+	 */
+	public InputStream open(final String repository, final HttpRequestBase request) throws IOException {
+		final Response response = execute(repository, request);
+		if (response.getStatus() >= HttpStatus.SC_BAD_REQUEST) {
+			response.close();
+			throw new IOException(String.format("Request %s failed with status %d", request.getURI(), response.getStatus()));
+		}
+		return response.getContent();
+	}
+
+	/**
+	 * Return the circuit breaker of a repository.
+	 *
+	 * @param repository
+	 *            The repository identifier.
+	 * @return The circuit breaker of this repository.
+	 */
+	public CircuitBreaker getBreaker(final String repository) {
+		return breakers.computeIfAbsent(repository, r -> new CircuitBreaker(getConfiguration(r, "circuit.failures", DEFAULT_FAILURES),
+				TimeUnit.SECONDS.toMillis(NumberUtils.toLong(configuration.get(getKey(r, "circuit.delay")), DEFAULT_DELAY))));
+	}
+
+	/**
+	 * Close all circuits and forget their settings.
+	 */
+	public void reset() {
+		breakers.clear();
+	}
+
+	private String getKey(final String repository, final String suffix) {
+		return "plugins.repository-manager." + repository + "." + suffix;
+	}
+
+	private int getConfiguration(final String repository, final String suffix, final int defaultValue) {
+		return NumberUtils.toInt(configuration.get(getKey(repository, suffix)), defaultValue);
+	}
+
+	@Override
+	public void destroy() throws IOException {
+		timer.shutdownNow();
+		client.close();
+	}
+}
@@ -0,0 +1,177 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin.repository;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Refresh-ahead cache of the remote repositories' indexes. The requests are always served from the last successfully
+ * fetched snapshot, and a background task refreshes it periodically. When a refresh fails, the previous snapshot is
+ * kept and flagged as stale. Each fetched snapshot is stored locally, so a restart serves it without waiting for the
+ * network. Only the very first fetch of a repository without stored snapshot is done in the caller thread, and a failure
+ * of this fetch is retried after a delay.
+ */
+@Component
+@Slf4j
+public class RepositoryIndexCache implements DisposableBean {
+
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+		final Thread thread = new Thread(r, "repository-refresh"); // NOPMD
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final Map<String, RepositorySnapshot> snapshots = new ConcurrentHashMap<>();
+
+	private final Map<String, ScheduledFuture<?>> schedules = new ConcurrentHashMap<>();
+
+	/**
+	 * The fetch locks, one per repository.
+	 */
+	private final Map<String, Object> locks = new ConcurrentHashMap<>();
+
+	/**
+	 * The time stamp of the next try of the repositories whose first fetch failed.
+	 */
+	private final Map<String, Long> retries = new ConcurrentHashMap<>();
+
+	@Autowired
+	protected RepositoryIndexStore store;
+
+	/**
+	 * Return the last snapshot of the given repository. When there is no snapshot yet, the locally stored one is served
+	 * and refreshed in background. Without stored snapshot, the index is fetched, and then the periodic refresh is
+	 * scheduled. When this first fetch fails, an empty and stale snapshot is served until the retry delay of the
+	 * repository is elapsed, and then the next call retries. Only the callers of the same repository wait for this
+	 * fetch.
+	 *
+	 * @param repository
+	 *            The remote repository.
+	 * @return The last snapshot, never <code>null</code>.
+	 */
+	public RepositorySnapshot get(final AbstractRemoteRepositoryManager repository) {
+		final RepositorySnapshot snapshot = snapshots.get(repository.getId());
+		if (snapshot != null && !isRetryDue(repository)) {
+			return snapshot;
+		}
+		synchronized (locks.computeIfAbsent(repository.getId(), k -> new Object())) {
+			// Double check, another thread may have fetched the index
+			final RepositorySnapshot current = snapshots.get(repository.getId());
+			if (current != null && !isRetryDue(repository)) {
+				return current;
+			}
+			final RepositorySnapshot stored = current == null ? store.load(repository.getId(), repository.getIndexUrl(), repository.getGroupId()) : null;
+			if (stored != null) {
+				log.info("Index of repository {} loaded with {} plugins, fetched {}ms ago", repository.getId(), stored.getSize(), stored.getAge());
+				snapshots.put(repository.getId(), stored);
+				schedule(repository, stored.getAge() / 1000);
+				return stored;
+			}
+			RepositorySnapshot fetched;
+			try {
+				fetched = fetch(repository);
+				retries.remove(repository.getId());
+				schedule(repository, 0);
+			} catch (final IOException e) {
+				log.warn("Unable to fetch the index of repository {}, next try in {}s", repository.getId(), repository.getRetryDelay(), e);
+				retries.put(repository.getId(), System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(repository.getRetryDelay()));
+				fetched = new RepositorySnapshot(repository.getId(), Collections.emptyMap(), 0, e.getMessage());
+			}
+			snapshots.put(repository.getId(), fetched);
+			return fetched;
+		}
+	}
+
+	/**
+	 * Indicate the first fetch of the given repository failed and can be tried again.
+	 */
+	private boolean isRetryDue(final AbstractRemoteRepositoryManager repository) {
+		final Long retry = retries.get(repository.getId());
+		return retry != null && retry <= System.currentTimeMillis();
+	}
+
+	/**
+	 * Return the last snapshot of the given repository without fetching it.
+	 *
+	 * @param repository
+	 *            The repository identifier.
+	 * @return The last snapshot, or <code>null</code> when never fetched.
+	 */
+	public RepositorySnapshot getSnapshot(final String repository) {
+		return snapshots.get(repository);
+	}
+
+	/**
+	 * Refresh the snapshot of the given repository. On failure the previous snapshot is kept and flagged as stale.
+	 *
+	 * @param repository
+	 *            The remote repository.
+	 */
+	public void refresh(final AbstractRemoteRepositoryManager repository) {
+		try {
+			snapshots.put(repository.getId(), fetch(repository));
+			retries.remove(repository.getId());
+			schedule(repository, 0);
+		} catch (final Exception e) { // NOSONAR - Catch all to keep the scheduled task alive
+			final RepositorySnapshot previous = snapshots.get(repository.getId());
+			log.warn("Unable to refresh the index of repository {}, serving the previous one fetched {}ms ago", repository.getId(),
+					previous == null ? null : previous.getAge(), e);
+			if (previous != null) {
+				snapshots.put(repository.getId(),
+						new RepositorySnapshot(repository.getId(), previous.getVersions(), previous.getFetched(), e.getMessage()));
+			}
+		}
+	}
+
+	private RepositorySnapshot fetch(final AbstractRemoteRepositoryManager repository) throws IOException {
+		final long start = System.currentTimeMillis();
+		final Map<String, Artifact> versions = repository.fetchLastPluginVersions();
+		log.info("Index of repository {} fetched with {} plugins in {}ms", repository.getId(), versions.size(), System.currentTimeMillis() - start);
+		final RepositorySnapshot snapshot = new RepositorySnapshot(repository.getId(), versions, System.currentTimeMillis(), null);
+		store.save(snapshot, repository.getIndexUrl(), repository.getGroupId());
+		return snapshot;
+	}
+
+	/**
+	 * Schedule the periodic refresh of the given repository, only once.
+	 *
+	 * @param repository
+	 *            The remote repository.
+	 * @param age
+	 *            The age in seconds of the current snapshot. The first refresh is delayed by the remaining period.
+	 */
+	private void schedule(final AbstractRemoteRepositoryManager repository, final long age) {
+		final long period = repository.getRefreshPeriod();
+		schedules.computeIfAbsent(repository.getId(), k -> scheduler.scheduleWithFixedDelay(() -> refresh(repository),
+				Math.max(0, period - age), period, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Forget all snapshots and cancel the scheduled refreshes.
+	 */
+	public void clear() {
+		schedules.values().forEach(s -> s.cancel(false));
+		schedules.clear();
+		snapshots.clear();
+		retries.clear();
+	}
+
+	@Override
+	public void destroy() {
+		scheduler.shutdownNow();
+	}
+}
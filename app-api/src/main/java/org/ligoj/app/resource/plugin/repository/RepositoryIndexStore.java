@@ -0,0 +1,143 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin.repository;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.ligoj.app.resource.plugin.PluginsClassLoader;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Local binary storage of the last fetched repository indexes, one file per repository under the plug-in home
+ * directory. The stored index is served at startup without the network, until the first refresh completes.<br>
+ * The format is : magic, format version, source URL, group-id, fetch time stamp, artifact count, then the artifact and
+ * version pairs. A stored index fetched from another URL or group-id is ignored.
+ */
+@Component
+@Slf4j
+public class RepositoryIndexStore {
+
+	/**
+	 * Directory of the stored indexes, relative to the plug-in home directory.
+	 */
+	public static final String INDEX_DIR = "repository-index";
+
+	private static final int MAGIC = 0x4C494458;
+
+	private static final byte FORMAT = 2;
+
+	/**
+	 * Return the directory of the stored indexes.
+	 *
+	 * @return The directory of the stored indexes. <code>null</code> when there is no plug-in class loader, and then
+	 *         no storage.
+	 */
+	protected Path getDirectory() {
+		final PluginsClassLoader classLoader = PluginsClassLoader.getInstance();
+		return classLoader == null ? null : classLoader.getHomeDirectory().resolve(INDEX_DIR);
+	}
+
+	/**
+	 * Return the index file of the given repository.
+	 *
+	 * @param repository
+	 *            The repository identifier.
+	 * @return The index file. <code>null</code> when there is no storage.
+	 */
+	private Path getFile(final String repository) {
+		final Path directory = getDirectory();
+		return directory == null ? null : directory.resolve(repository + ".idx");
+	}
+
+	/**
+	 * Store the given snapshot, replacing the previous one. The failures are only logged.
+	 *
+	 * @param snapshot
+	 *            The snapshot to store.
+	 * @param url
+	 *            The URL the index has been fetched from.
+	 * @param groupId
+	 *            The filtered group-id of the index.
+	 */
+	public void save(final RepositorySnapshot snapshot, final String url, final String groupId) {
+		final Path file = getFile(snapshot.getRepository());
+		if (file == null) {
+			return;
+		}
+		try {
+			Files.createDirectories(file.getParent());
+			final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+				out.writeInt(MAGIC);
+				out.writeByte(FORMAT);
+				out.writeUTF(url);
+				out.writeUTF(groupId);
+				out.writeLong(snapshot.getFetched());
+				out.writeInt(snapshot.getSize());
+				for (final Artifact artifact : snapshot.getVersions().values()) {
+					out.writeUTF(artifact.getArtifact());
+					out.writeUTF(artifact.getVersion());
+				}
+			}
+
+			// Readers never see a partially written file
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (final IOException e) {
+			log.warn("Unable to store the index of repository {} in {}", snapshot.getRepository(), file, e);
+		}
+	}
+
+	/**
+	 * Load the stored snapshot of the given repository.
+	 *
+	 * @param repository
+	 *            The repository identifier.
+	 * @param url
+	 *            The current URL of the index.
+	 * @param groupId
+	 *            The current filtered group-id of the index.
+	 * @return The stored snapshot. <code>null</code> when there is no stored snapshot, when it cannot be read or when
+	 *         it has been fetched from another URL or group-id.
+	 */
+	public RepositorySnapshot load(final String repository, final String url, final String groupId) {
+		final Path file = getFile(repository);
+		if (file == null || !Files.isRegularFile(file)) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readByte() != FORMAT) {
+				log.warn("Ignore the index of repository {} stored in an unknown format in {}", repository, file);
+				return null;
+			}
+			if (!in.readUTF().equals(url) || !in.readUTF().equals(groupId)) {
+				log.info("Ignore the index of repository {} stored from another source in {}", repository, file);
+				return null;
+			}
+			final long fetched = in.readLong();
+			final int size = in.readInt();
+			final Map<String, Artifact> versions = new HashMap<>(size * 4 / 3 + 1);
+			for (int i = 0; i < size; i++) {
+				final ArtifactVo artifact = new ArtifactVo();
+				artifact.setArtifact(in.readUTF());
+				artifact.setVersion(in.readUTF());
+				versions.put(artifact.getArtifact(), artifact);
+			}
+			return new RepositorySnapshot(repository, versions, fetched, null);
+		} catch (final IOException e) {
+			log.warn("Unable to load the index of repository {} from {}", repository, file, e);
+			return null;
+		}
+	}
+}
@@ -5,6 +5,9 @@ package org.ligoj.app.resource.plugin.repository;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Map;
 
 /**
@@ -39,6 +42,47 @@ public interface RepositoryManager {
 	 */
 	InputStream getArtifactInputStream(String artifact, String version) throws IOException;
 
+	/**
+	 * Download the artifact to the given file, replacing it.
+	 *
+	 * @param artifact
+	 *            The Maven artifact identifier and also corresponding to the plug-in simple name.
+	 * @param version
+	 *            The version to install.
+	 * @param target
+	 *            The target file.
+	 * @throws IOException
+	 *             When the artifact cannot be downloaded or written.
+	 */
+	default void copyArtifact(final String artifact, final String version, final Path target) throws IOException {
+		copyArtifact(artifact, version, target, TransferListener.NONE);
+	}
+
+	/**
+	 * Download the artifact to the given file, replacing it, and notify the progress.
+	 *
+	 * @param artifact
+	 *            The Maven artifact identifier and also corresponding to the plug-in simple name.
+	 * @param version
+	 *            The version to install.
+	 * @param target
+	 *            The target file.
+	 * @param listener
+	 *            The transfer listener.
+	 * @throws IOException
+	 *             When the artifact cannot be downloaded or written.
+	 */
+	default void copyArtifact(final String artifact, final String version, final Path target, final TransferListener listener)
+			throws IOException {
+		try (InputStream input = getArtifactInputStream(artifact, version); OutputStream output = Files.newOutputStream(target)) {
+			final byte[] buffer = new byte[8192];
+			for (int read = input.read(buffer); read != -1; read = input.read(buffer)) {
+				output.write(buffer, 0, read);
+				listener.transferred(read);
+			}
+		}
+	}
+
 	/**
 	 * Invalid the possible version cache.
 	 */
@@ -0,0 +1,153 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin.repository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.http.client.methods.HttpGet;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Streaming and paginated client of the repository search APIs. The responses are fetched with the shared
+ * {@link RepositoryHttpClient}, and are parsed with a streaming parser directly into artifacts, without building the
+ * whole JSON tree. The pages following the first one are fetched concurrently.
+ */
+@Component
+public class RepositorySearchClient implements DisposableBean {
+
+	/**
+	 * Shared and thread safe JSON mapper.
+	 */
+	public static final ObjectMapper MAPPER = new ObjectMapper();
+
+	/**
+	 * Maximal amount of concurrently fetched pages.
+	 */
+	private static final int PARALLELISM = 4;
+
+	/**
+	 * Maximal amount of pages of a search, prevents infinite paging.
+	 */
+	public static final int MAX_PAGES = 100;
+
+	@Autowired
+	protected RepositoryHttpClient httpClient;
+
+	/**
+	 * Streaming parser of a search result page.
+	 */
+	@FunctionalInterface
+	public interface PageParser {
+
+		/**
+		 * Parse a search result page.
+		 *
+		 * @param parser
+		 *            The JSON parser positioned before the first token.
+		 * @return The parsed page.
+		 * @throws IOException
+		 *             When the content cannot be parsed.
+		 */
+		SearchPage parse(JsonParser parser) throws IOException;
+	}
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(PARALLELISM, r -> {
+		final Thread thread = new Thread(r, "repository-search"); // NOPMD
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Fetch and parse a search result page.
+	 *
+	 * @param repository
+	 *            The repository identifier.
+	 * @param url
+	 *            The page URL.
+	 * @param parser
+	 *            The page parser.
+	 * @return The parsed page.
+	 * @throws IOException
+	 *             When the page cannot be downloaded or parsed.
+	 */
+	public SearchPage fetch(final String repository, final String url, final PageParser parser) throws IOException {
+		final HttpGet request = new HttpGet(url);
+		request.setHeader("Accept", "application/json");
+		try (InputStream input = httpClient.open(repository, request); JsonParser json = MAPPER.getFactory().createParser(input)) {
+			return parser.parse(json);
+		}
+	}
+
+	/**
+	 * Fetch and parse concurrently several search result pages.
+	 *
+	 * @param repository
+	 *            The repository identifier.
+	 * @param urls
+	 *            The page URLs.
+	 * @param parser
+	 *            The page parser.
+	 * @return The parsed pages, in the same order than the URLs.
+	 * @throws IOException
+	 *             When one of the pages cannot be downloaded or parsed.
+	 */
+	public List<SearchPage> fetch(final String repository, final List<String> urls, final PageParser parser) throws IOException {
+		final List<Future<SearchPage>> futures = new ArrayList<>(urls.size());
+		urls.forEach(url -> futures.add(executor.submit(() -> fetch(repository, url, parser))));
+		final List<SearchPage> pages = new ArrayList<>(urls.size());
+		try {
+			for (final Future<SearchPage> future : futures) {
+				pages.add(future.get());
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Search interrupted", e);
+		} catch (final ExecutionException e) {
+			throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+		} finally {
+			futures.forEach(f -> f.cancel(true));
+		}
+		return pages;
+	}
+
+	/**
+	 * Read the array at the current position, and bind each of its items to the given artifact type.
+	 *
+	 * @param parser
+	 *            The JSON parser positioned on the array field name.
+	 * @param type
+	 *            The artifact type to bind.
+	 * @param page
+	 *            The page receiving the artifacts.
+	 * @throws IOException
+	 *             When the content cannot be parsed.
+	 */
+	public static void readArtifacts(final JsonParser parser, final Class<? extends Artifact> type, final SearchPage page) throws IOException {
+		if (parser.nextToken() != JsonToken.START_ARRAY) {
+			parser.skipChildren();
+			return;
+		}
+		while (parser.nextToken() == JsonToken.START_OBJECT) {
+			page.getArtifacts().add(new ArtifactVo(parser.readValueAs(type)));
+		}
+	}
+
+	@Override
+	public void destroy() {
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin.repository;
+
+import java.util.Collections;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import lombok.Getter;
+
+/**
+ * Immutable snapshot of the last successfully fetched index of a repository.
+ */
+@Getter
+public class RepositorySnapshot {
+
+	/**
+	 * The repository identifier.
+	 */
+	private final String repository;
+
+	/**
+	 * The last plug-in versions. Key is the plug-in identifier.
+	 */
+	@JsonIgnore
+	private final Map<String, Artifact> versions;
+
+	/**
+	 * The time stamp of the last successful fetch, in milliseconds.
+	 */
+	private final long fetched;
+
+	/**
+	 * The error message of the last failed refresh, or <code>null</code> when the last refresh succeeded.
+	 */
+	private final String error;
+
+	/**
+	 * All arguments constructor.
+	 *
+	 * @param repository
+	 *            The repository identifier.
+	 * @param versions
+	 *            The last plug-in versions.
+	 * @param fetched
+	 *            The time stamp of the last successful fetch.
+	 * @param error
+	 *            The error message of the last failed refresh. May be <code>null</code>.
+	 */
+	public RepositorySnapshot(final String repository, final Map<String, Artifact> versions, final long fetched, final String error) {
+		this.repository = repository;
+		this.versions = Collections.unmodifiableMap(versions);
+		this.fetched = fetched;
+		this.error = error;
+	}
+
+	/**
+	 * Return the age of this snapshot.
+	 *
+	 * @return The elapsed milliseconds since the last successful fetch.
+	 */
+	public long getAge() {
+		return System.currentTimeMillis() - fetched;
+	}
+
+	/**
+	 * Indicate the last refresh failed, and this snapshot is served instead of a fresh one.
+	 *
+	 * @return <code>true</code> when the last refresh failed.
+	 */
+	public boolean isStale() {
+		return error != null;
+	}
+
+	/**
+	 * Return the amount of available plug-ins.
+	 *
+	 * @return The amount of available plug-ins.
+	 */
+	public int getSize() {
+		return versions.size();
+	}
+}
@@ -0,0 +1,33 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A page of a repository search result.
+ */
+@Getter
+@Setter
+public class SearchPage {
+
+	/**
+	 * The artifacts of this page.
+	 */
+	private final List<Artifact> artifacts = new ArrayList<>();
+
+	/**
+	 * The total amount of results as reported by the repository. <code>-1</code> when unknown.
+	 */
+	private int total = -1;
+
+	/**
+	 * When <code>true</code>, the repository has truncated the results and more pages are available.
+	 */
+	private boolean truncated;
+}
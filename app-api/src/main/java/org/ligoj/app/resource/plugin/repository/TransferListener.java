@@ -0,0 +1,47 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin.repository;
+
+/**
+ * Listener of an artifact transfer. The notifications may come from several threads.
+ */
+public interface TransferListener {
+
+	/**
+	 * Listener ignoring all notifications.
+	 */
+	TransferListener NONE = new TransferListener() {
+		// Ignore all notifications
+	};
+
+	/**
+	 * Notify the total length of the artifact, when known.
+	 *
+	 * @param length
+	 *            The total length in bytes.
+	 */
+	default void length(final long length) {
+		// Ignored by default
+	}
+
+	/**
+	 * Notify a transferred block.
+	 *
+	 * @param bytes
+	 *            The amount of bytes transferred since the previous notification.
+	 */
+	default void transferred(final long bytes) {
+		// Ignored by default
+	}
+
+	/**
+	 * Notify the verification result of the transferred artifact.
+	 *
+	 * @param status
+	 *            The checksum verification status.
+	 */
+	default void verified(final ChecksumStatus status) {
+		// Ignored by default
+	}
+}
@@ -6,6 +6,8 @@ package org.ligoj.boot.api;
 import java.util.Collections;
 
 import org.apache.cxf.transport.servlet.CXFServlet;
+import org.ligoj.app.resource.plugin.PluginLazyFilter;
+import org.ligoj.app.resource.plugin.PluginRegistry;
 import org.ligoj.app.resource.plugin.WebjarsServlet;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.actuate.autoconfigure.metrics.jdbc.DataSourcePoolMetricsAutoConfiguration;
@@ -89,6 +91,21 @@ public class Application extends SpringBootServletInitializer {
 		return registrationBean;
 	}
 
+	/**
+	 * Activation of the lazy plug-ins by their REST resources.
+	 *
+	 * @param registry
+	 *            The plug-in registry.
+	 * @return FilterRegistrationBean
+	 */
+	@Bean
+	public FilterRegistrationBean<PluginLazyFilter> pluginLazyFilterRegistration(final PluginRegistry registry) {
+		final FilterRegistrationBean<PluginLazyFilter> registrationBean = new FilterRegistrationBean<>(new PluginLazyFilter(registry));
+		registrationBean.setName("pluginLazyFilter");
+		registrationBean.addUrlPatterns("/rest/*");
+		return registrationBean;
+	}
+
 	/**
 	 * Request Context holder.
 	 *
@@ -0,0 +1,95 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityNotFoundException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.ligoj.app.resource.plugin.repository.ChecksumStatus;
+import org.ligoj.bootstrap.core.resource.BusinessException;
+
+/**
+ * Test class of {@link InstallJobResource}
+ */
+public class InstallJobResourceTest {
+
+	private final InstallJobResource resource = new InstallJobResource();
+
+	@AfterEach
+	public void destroy() {
+		resource.destroy();
+	}
+
+	@Test
+	public void submit() throws Exception {
+		final InstallJob job = resource.submit("plugin-foo", "1.0.0", "central", l -> {
+			l.length(10);
+			l.transferred(4);
+			l.transferred(6);
+			l.verified(ChecksumStatus.VERIFIED);
+		});
+		Assertions.assertSame(job, resource.findById(job.getId()));
+		job.getFuture().get(10, TimeUnit.SECONDS);
+
+		Assertions.assertEquals(InstallJobStatus.SUCCEEDED, job.getStatus());
+		Assertions.assertEquals(10, job.getLength());
+		Assertions.assertEquals(10, job.getBytes());
+		Assertions.assertEquals(ChecksumStatus.VERIFIED, job.getChecksum());
+		Assertions.assertTrue(job.getThroughput() > 0);
+		Assertions.assertTrue(job.isDone());
+		Assertions.assertNull(job.getError());
+		Assertions.assertEquals("plugin-foo", job.getArtifact());
+		Assertions.assertEquals("1.0.0", job.getVersion());
+		Assertions.assertEquals("central", job.getRepository());
+		Assertions.assertEquals(1, resource.findAll().size());
+	}
+
+	@Test
+	public void submitFailed() throws Exception {
+		final InstallJob job = resource.submit("plugin-foo", "1.0.0", "central", l -> {
+			throw new IOException("failed");
+		});
+		job.getFuture().get(10, TimeUnit.SECONDS);
+		Assertions.assertEquals(InstallJobStatus.FAILED, job.getStatus());
+		Assertions.assertEquals("IOException: failed", job.getError());
+		Assertions.assertNotNull(job.getEnd());
+	}
+
+	@Test
+	public void submitTooMany() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		try {
+			Assertions.assertThrows(BusinessException.class, () -> {
+				for (int i = 0; i < 100; i++) {
+					resource.submit("plugin-foo", "1.0." + i, "central", l -> release.await());
+				}
+			});
+
+			// Rejected job is not kept
+			Assertions.assertEquals(52, resource.findAll().size());
+		} finally {
+			release.countDown();
+		}
+	}
+
+	@Test
+	public void pending() {
+		final InstallJob job = new InstallJob("plugin-foo", "1.0.0", "central");
+		Assertions.assertEquals(InstallJobStatus.PENDING, job.getStatus());
+		Assertions.assertEquals(0, job.getThroughput());
+		Assertions.assertEquals(-1, job.getLength());
+		Assertions.assertFalse(job.isDone());
+	}
+
+	@Test
+	public void findByIdNotFound() {
+		Assertions.assertThrows(EntityNotFoundException.class, () -> resource.findById("any"));
+	}
+}
@@ -0,0 +1,294 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import javax.tools.ToolProvider;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.cxf.Bus;
+import org.apache.cxf.endpoint.Endpoint;
+import org.apache.cxf.endpoint.Server;
+import org.apache.cxf.jaxrs.JAXRSServiceImpl;
+import org.apache.cxf.jaxrs.model.ClassResourceInfo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.ligoj.app.dao.PluginRepository;
+import org.ligoj.app.model.Plugin;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * Test class of {@link PluginHotDeployer}
+ */
+public class PluginHotDeployerTest {
+
+	private static final Path DIRECTORY = Paths.get("target/test-classes/plugin-hot");
+
+	private static final Path CLASSES = Paths.get("target/plugin-hot-classes");
+
+	private static final Path HOME = Paths.get("target/test-classes/plugin-hot-home");
+
+	private static final Path LAZY = HOME.resolve(PluginHotDeployer.LAZY_DIR);
+
+	private static final String PACKAGE = "org/ligoj/app/plugin/hot";
+
+	private final PluginsClassLoader classLoader = Mockito.mock(PluginsClassLoader.class);
+
+	private final PluginHotDeployer deployer = new PluginHotDeployer() {
+		@Override
+		protected PluginsClassLoader getPluginClassLoader() {
+			return classLoader;
+		}
+	};
+
+	private final List<ClassResourceInfo> resources = new ArrayList<>();
+
+	private final GenericApplicationContext root = new GenericApplicationContext();
+
+	private final PlatformTransactionManager transactionManager = Mockito.mock(PlatformTransactionManager.class);
+
+	@BeforeEach
+	public void prepare() throws IOException {
+		clean();
+		Files.createDirectories(DIRECTORY);
+		Mockito.when(classLoader.getPluginDirectory()).thenReturn(DIRECTORY);
+		Mockito.when(classLoader.getHomeDirectory()).thenReturn(HOME);
+
+		// Plug-in loaded at startup
+		final Path boot = Files.createFile(DIRECTORY.resolve("plugin-boot-1.0.0.jar"));
+		Mockito.when(classLoader.getURLs()).thenReturn(new URL[] { boot.toUri().toURL() });
+
+		// Main context with a REST server
+		final Server server = Mockito.mock(Server.class);
+		final Endpoint endpoint = Mockito.mock(Endpoint.class);
+		final JAXRSServiceImpl service = Mockito.mock(JAXRSServiceImpl.class);
+		Mockito.when(server.getEndpoint()).thenReturn(endpoint);
+		Mockito.when(endpoint.getService()).thenReturn(service);
+		Mockito.when(service.getClassResourceInfos()).thenReturn(resources);
+		root.getBeanFactory().registerSingleton("restServer", server);
+		root.getBeanFactory().registerSingleton("cxf", Mockito.mock(Bus.class));
+		root.getBeanFactory().registerSingleton("transactionManager", transactionManager);
+		root.refresh();
+
+		deployer.applicationContext = root;
+		deployer.registry = new PluginRegistry();
+		deployer.registry.refresh(root);
+		deployer.inventory = new PluginInventory();
+		deployer.repository = Mockito.mock(PluginRepository.class);
+		deployer.configuration = Mockito.mock(ConfigurationResource.class);
+		Mockito.when(deployer.configuration.get(ArgumentMatchers.anyString(), ArgumentMatchers.anyString())).then(i -> i.getArgument(1));
+		Mockito.when(deployer.configuration.get(PluginHotDeployer.PLUGIN_HOT, "false")).thenReturn("true");
+	}
+
+	@AfterEach
+	public void destroy() {
+		deployer.destroy();
+		deployer.inventory.destroy();
+		root.close();
+		clean();
+	}
+
+	private void clean() {
+		FileUtils.deleteQuietly(DIRECTORY.toFile());
+		FileUtils.deleteQuietly(CLASSES.toFile());
+		FileUtils.deleteQuietly(HOME.toFile());
+	}
+
+	@Test
+	public void redeploy() throws Exception {
+		deployer.refreshed(new ContextRefreshedEvent(root));
+
+		// Installed after the startup
+		newPlugin("1.0.0");
+		Assertions.assertTrue(deployer.redeploy("plugin-hot"));
+		Assertions.assertTrue(deployer.isDeployed("plugin-hot"));
+		Assertions.assertEquals("1.0.0", getResource());
+
+		// Update
+		newPlugin("1.0.1");
+		Assertions.assertTrue(deployer.redeploy("plugin-hot"));
+		Assertions.assertEquals("1.0.1", getResource());
+
+		// Delete
+		FileUtils.deleteQuietly(DIRECTORY.toFile());
+		Files.createDirectories(DIRECTORY);
+		deployer.inventory.removed(DIRECTORY.resolve("plugin-hot-1.0.0.jar"));
+		deployer.inventory.removed(DIRECTORY.resolve("plugin-hot-1.0.1.jar"));
+		Assertions.assertTrue(deployer.redeploy("plugin-hot"));
+		Assertions.assertFalse(deployer.isDeployed("plugin-hot"));
+		Assertions.assertTrue(resources.isEmpty());
+	}
+
+	@Test
+	public void redeployDisabled() throws IOException {
+		Mockito.when(deployer.configuration.get(PluginHotDeployer.PLUGIN_HOT, "false")).thenReturn("false");
+		Assertions.assertFalse(deployer.redeploy("plugin-hot"));
+	}
+
+	@Test
+	public void redeployLoadedAtStartup() throws IOException {
+		deployer.refreshed(new ContextRefreshedEvent(root));
+
+		// Loaded by the main context
+		Assertions.assertFalse(deployer.redeploy("plugin-boot"));
+	}
+
+	@Test
+	public void redeployEntity() throws Exception {
+		newPlugin("1.0.0");
+		Assertions.assertTrue(deployer.redeploy("plugin-hot"));
+
+		// The new version declares an entity, the previous one is kept until the restart
+		newPlugin("1.0.1", DIRECTORY, "", Collections.singletonMap("HotEntity",
+				"@javax.persistence.Entity\npublic class HotEntity {\n@javax.persistence.Id\nprivate Integer id;\n}"));
+		Assertions.assertFalse(deployer.redeploy("plugin-hot"));
+		Assertions.assertEquals("1.0.0", getResource());
+	}
+
+	@Test
+	public void redeployRepository() throws Exception {
+		newPlugin("1.0.0", DIRECTORY, "", Collections.singletonMap("HotRepository",
+				"public interface HotRepository extends org.springframework.data.repository.Repository<Object, Integer> {\n}"));
+		Assertions.assertFalse(deployer.redeploy("plugin-hot"));
+		Assertions.assertFalse(deployer.isDeployed("plugin-hot"));
+	}
+
+	@Test
+	public void redeployTransactional() throws Exception {
+		newPlugin("1.0.0", DIRECTORY, "@org.springframework.transaction.annotation.Transactional\n", Collections.emptyMap());
+		Assertions.assertTrue(deployer.redeploy("plugin-hot"));
+
+		// The resource is proxied with the transaction manager of the main context
+		Assertions.assertEquals("1.0.0", getResource());
+		Mockito.verify(transactionManager).getTransaction(ArgumentMatchers.any());
+		Mockito.verify(transactionManager).commit(ArgumentMatchers.any());
+	}
+
+	@Test
+	public void redeployNoPluginClassLoader() throws IOException {
+		Assertions.assertFalse(new PluginHotDeployer().redeploy("plugin-hot"));
+	}
+
+	@Test
+	public void registerLazy() throws Exception {
+		newPlugin("1.0.0", LAZY);
+		newPlugin("1.0.1", LAZY);
+		Files.createFile(LAZY.resolve("plugin-boot-1.0.0.jar"));
+		final Plugin plugin = new Plugin();
+		plugin.setKey("feature:hot");
+		Mockito.when(deployer.repository.findBy("artifact", "plugin-hot")).thenReturn(plugin);
+
+		// Only the metadata are registered, the plug-in loaded at startup is ignored
+		deployer.refreshed(new ContextRefreshedEvent(root));
+		Assertions.assertEquals(Collections.singleton("plugin-hot"), deployer.registry.getLazyPlugins().keySet());
+		final LazyPlugin lazy = deployer.registry.getLazyPlugins().get("plugin-hot");
+		Assertions.assertEquals("1.0.1", lazy.getVersion());
+		Assertions.assertEquals("feature:hot", lazy.getKey());
+		Assertions.assertEquals(Collections.singletonList("/hot"), lazy.getPaths());
+		Assertions.assertFalse(deployer.isDeployed("plugin-hot"));
+		Assertions.assertTrue(resources.isEmpty());
+
+		// Activated by the first request
+		Assertions.assertTrue(deployer.registry.activate("/hot/any"));
+		Assertions.assertTrue(deployer.isDeployed("plugin-hot"));
+		Assertions.assertEquals("1.0.1", getResource());
+		Assertions.assertTrue(deployer.registry.getLazyPlugins().isEmpty());
+
+		// Already activated
+		deployer.activate(lazy);
+		Assertions.assertEquals("1.0.1", getResource());
+	}
+
+	@Test
+	public void registerLazyNoDirectory() throws IOException {
+		Assertions.assertEquals(0, deployer.registerLazy());
+		Assertions.assertEquals(0, new PluginHotDeployer().registerLazy());
+
+		// Not the main context
+		deployer.refreshed(new ContextRefreshedEvent(new GenericApplicationContext()));
+		Assertions.assertTrue(deployer.registry.getLazyPlugins().isEmpty());
+	}
+
+	@SuppressWarnings("unchecked")
+	private String getResource() {
+		Assertions.assertEquals(1, resources.size());
+		return ((Supplier<String>) resources.get(0).getResourceProvider().getInstance(null)).get();
+	}
+
+	/**
+	 * Build a plug-in archive having a REST resource returning the given version.
+	 */
+	private void newPlugin(final String version) throws IOException {
+		newPlugin(version, DIRECTORY);
+	}
+
+	/**
+	 * Build a plug-in archive in the given directory, having a REST resource returning the given version.
+	 */
+	private void newPlugin(final String version, final Path directory) throws IOException {
+		newPlugin(version, directory, "", Collections.emptyMap());
+	}
+
+	/**
+	 * Build a plug-in archive in the given directory, having a REST resource returning the given version.
+	 *
+	 * @param annotations
+	 *            The additional annotations of the REST resource.
+	 * @param classes
+	 *            The additional classes of the plug-in. Key is the simple class name, value is the source without the
+	 *            package.
+	 */
+	private void newPlugin(final String version, final Path directory, final String annotations, final Map<String, String> classes)
+			throws IOException {
+		final Path output = CLASSES.resolve(version);
+		final Map<String, String> sources = new HashMap<>(classes);
+		sources.put("HotResource", "@org.springframework.stereotype.Component\n@javax.ws.rs.Path(\"hot\")\n" + annotations
+				+ "public class HotResource implements java.util.function.Supplier<String> {\n@javax.ws.rs.GET\npublic String get() {\nreturn \""
+				+ version + "\";\n}\n}");
+		final List<String> arguments = new ArrayList<>(Arrays.asList("-cp", System.getProperty("java.class.path"), "-d", output.toString()));
+		for (final Map.Entry<String, String> source : sources.entrySet()) {
+			final Path file = output.resolve(PACKAGE).resolve(source.getKey() + ".java");
+			FileUtils.write(file.toFile(), "package org.ligoj.app.plugin.hot;\n" + source.getValue(), StandardCharsets.UTF_8);
+			arguments.add(file.toString());
+		}
+		Assertions.assertEquals(0, ToolProvider.getSystemJavaCompiler().run(null, null, null, arguments.toArray(new String[0])));
+
+		Files.createDirectories(directory);
+		final Path jar = directory.resolve("plugin-hot-" + version + ".jar");
+		try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+			for (final String folder : new String[] { "org/", "org/ligoj/", "org/ligoj/app/", "org/ligoj/app/plugin/", PACKAGE + "/" }) {
+				out.putNextEntry(new JarEntry(folder));
+				out.closeEntry();
+			}
+			for (final String name : sources.keySet()) {
+				out.putNextEntry(new JarEntry(PACKAGE + "/" + name + ".class"));
+				Files.copy(output.resolve(PACKAGE).resolve(name + ".class"), out);
+				out.closeEntry();
+			}
+		}
+		deployer.inventory.added(jar);
+	}
+}
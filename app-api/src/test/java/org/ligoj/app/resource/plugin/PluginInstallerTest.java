@@ -0,0 +1,258 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.ligoj.app.resource.plugin.repository.ChecksumStatus;
+import org.ligoj.app.resource.plugin.repository.RepositoryManager;
+import org.ligoj.app.resource.plugin.repository.TransferListener;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+/**
+ * Test class of {@link PluginInstaller}
+ */
+public class PluginInstallerTest {
+
+	private static final Path DIRECTORY = Paths.get("target/test-classes/plugin-installer");
+
+	private static final Path TARGET = DIRECTORY.resolve("plugin-foo-1.0.0.jar");
+
+	private final PluginInstaller installer = new PluginInstaller();
+
+	@BeforeEach
+	@AfterEach
+	public void clean() throws IOException {
+		FileUtils.deleteQuietly(DIRECTORY.toFile());
+		Files.createDirectories(DIRECTORY);
+	}
+
+	private void assertNoStaging() throws IOException {
+		try (Stream<Path> files = Files.list(DIRECTORY)) {
+			Assertions.assertFalse(files.anyMatch(f -> f.getFileName().toString().endsWith(".tmp")));
+		}
+	}
+
+	@Test
+	public void installUpload() throws IOException {
+		FileUtils.write(TARGET.toFile(), "previous", StandardCharsets.UTF_8);
+		installer.install(new ByteArrayInputStream("content".getBytes(StandardCharsets.UTF_8)), "plugin-foo", TARGET, TransferListener.NONE);
+		Assertions.assertEquals("content", FileUtils.readFileToString(TARGET.toFile(), StandardCharsets.UTF_8));
+		assertNoStaging();
+	}
+
+	@Test
+	public void installUploadFailed() throws IOException {
+		FileUtils.write(TARGET.toFile(), "previous", StandardCharsets.UTF_8);
+		final InputStream input = Mockito.mock(InputStream.class);
+		Mockito.when(input.read(ArgumentMatchers.any(byte[].class), ArgumentMatchers.anyInt(), ArgumentMatchers.anyInt()))
+				.thenThrow(new IOException());
+		Mockito.when(input.read(ArgumentMatchers.any(byte[].class))).thenThrow(new IOException());
+		Assertions.assertThrows(IOException.class, () -> installer.install(input, "plugin-foo", TARGET, TransferListener.NONE));
+
+		// Previous file is untouched, and the staged file is removed
+		Assertions.assertEquals("previous", FileUtils.readFileToString(TARGET.toFile(), StandardCharsets.UTF_8));
+		assertNoStaging();
+	}
+
+	@Test
+	public void installSingleFlight() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final RepositoryManager repository = Mockito.mock(RepositoryManager.class);
+		Mockito.doAnswer(invocation -> {
+			final TransferListener listener = invocation.getArgument(3);
+			listener.length(7);
+			listener.transferred(3);
+			started.countDown();
+			release.await(10, TimeUnit.SECONDS);
+			FileUtils.write(((Path) invocation.getArgument(2)).toFile(), "content", StandardCharsets.UTF_8);
+			listener.transferred(4);
+			listener.verified(ChecksumStatus.VERIFIED);
+			return null;
+		}).when(repository).copyArtifact(ArgumentMatchers.anyString(), ArgumentMatchers.anyString(), ArgumentMatchers.any(Path.class),
+				ArgumentMatchers.any());
+
+		final TransferListener listener1 = Mockito.mock(TransferListener.class);
+		final TransferListener listener2 = Mockito.mock(TransferListener.class);
+		final ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			final Future<?> first = executor.submit(() -> {
+				installer.install(repository, "plugin-foo", "1.0.0", TARGET, listener1);
+				return null;
+			});
+			started.await(10, TimeUnit.SECONDS);
+			final Future<?> second = executor.submit(() -> {
+				installer.install(repository, "plugin-foo", "1.0.0", TARGET, listener2);
+				return null;
+			});
+
+			// Give a chance to the second installation to join the first one
+			Thread.sleep(200);
+			release.countDown();
+			first.get(10, TimeUnit.SECONDS);
+			second.get(10, TimeUnit.SECONDS);
+		} finally {
+			executor.shutdownNow();
+		}
+
+		// Only one download for both installations
+		Mockito.verify(repository, Mockito.times(1)).copyArtifact(ArgumentMatchers.anyString(), ArgumentMatchers.anyString(),
+				ArgumentMatchers.any(Path.class), ArgumentMatchers.any());
+		Assertions.assertEquals("content", FileUtils.readFileToString(TARGET.toFile(), StandardCharsets.UTF_8));
+
+		// Both installations are notified of the whole progress
+		for (final TransferListener listener : List.of(listener1, listener2)) {
+			Mockito.verify(listener).length(7);
+			Mockito.verify(listener).transferred(3);
+			Mockito.verify(listener).transferred(4);
+			Mockito.verify(listener).verified(ChecksumStatus.VERIFIED);
+		}
+	}
+
+	@Test
+	public void installSingleFlightOtherTarget() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final RepositoryManager repository = Mockito.mock(RepositoryManager.class);
+		Mockito.doAnswer(invocation -> {
+			started.countDown();
+			release.await(10, TimeUnit.SECONDS);
+			FileUtils.write(((Path) invocation.getArgument(2)).toFile(), "content", StandardCharsets.UTF_8);
+			return null;
+		}).when(repository).copyArtifact(ArgumentMatchers.anyString(), ArgumentMatchers.anyString(), ArgumentMatchers.any(Path.class),
+				ArgumentMatchers.any());
+		final Path staging = Files.createDirectories(DIRECTORY.resolve("staging")).resolve(TARGET.getFileName());
+
+		final ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			final Future<?> first = executor.submit(() -> {
+				installer.install(repository, "plugin-foo", "1.0.0", TARGET, TransferListener.NONE);
+				return null;
+			});
+			started.await(10, TimeUnit.SECONDS);
+			final Future<?> second = executor.submit(() -> {
+				installer.install(repository, "plugin-foo", "1.0.0", staging, TransferListener.NONE);
+				return null;
+			});
+			release.countDown();
+			first.get(10, TimeUnit.SECONDS);
+			second.get(10, TimeUnit.SECONDS);
+		} finally {
+			executor.shutdownNow();
+		}
+
+		// Each target has its own download
+		Mockito.verify(repository, Mockito.times(2)).copyArtifact(ArgumentMatchers.anyString(), ArgumentMatchers.anyString(),
+				ArgumentMatchers.any(Path.class), ArgumentMatchers.any());
+		Assertions.assertEquals("content", FileUtils.readFileToString(TARGET.toFile(), StandardCharsets.UTF_8));
+		Assertions.assertEquals("content", FileUtils.readFileToString(staging.toFile(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void installDownloadNotLocked() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final RepositoryManager repository = Mockito.mock(RepositoryManager.class);
+		Mockito.doAnswer(invocation -> {
+			started.countDown();
+			release.await(10, TimeUnit.SECONDS);
+			FileUtils.write(((Path) invocation.getArgument(2)).toFile(), "content", StandardCharsets.UTF_8);
+			return null;
+		}).when(repository).copyArtifact(ArgumentMatchers.anyString(), ArgumentMatchers.anyString(), ArgumentMatchers.any(Path.class),
+				ArgumentMatchers.any());
+
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			final Future<?> download = executor.submit(() -> {
+				installer.install(repository, "plugin-foo", "1.0.0", TARGET, TransferListener.NONE);
+				return null;
+			});
+			started.await(10, TimeUnit.SECONDS);
+
+			// The lock of the artifact is available during the download
+			Assertions.assertTrue(installer.getLock("plugin-foo").tryLock(1, TimeUnit.SECONDS));
+			installer.getLock("plugin-foo").unlock();
+			release.countDown();
+			download.get(10, TimeUnit.SECONDS);
+		} finally {
+			executor.shutdownNow();
+		}
+		Assertions.assertEquals("content", FileUtils.readFileToString(TARGET.toFile(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void installFailed() throws IOException {
+		final RepositoryManager repository = Mockito.mock(RepositoryManager.class);
+		Mockito.doThrow(new IOException("failed")).when(repository).copyArtifact(ArgumentMatchers.anyString(), ArgumentMatchers.anyString(),
+				ArgumentMatchers.any(Path.class), ArgumentMatchers.any());
+		Assertions.assertEquals("failed", Assertions.assertThrows(IOException.class,
+				() -> installer.install(repository, "plugin-foo", "1.0.0", TARGET, TransferListener.NONE)).getMessage());
+		Assertions.assertFalse(Files.exists(TARGET));
+
+		// Failed download is not kept in-flight
+		Mockito.doNothing().when(repository).copyArtifact(ArgumentMatchers.anyString(), ArgumentMatchers.anyString(),
+				ArgumentMatchers.any(Path.class), ArgumentMatchers.any());
+		Assertions.assertThrows(IOException.class, () -> installer.install(repository, "plugin-foo", "1.0.0", TARGET, TransferListener.NONE));
+		Mockito.verify(repository, Mockito.times(2)).copyArtifact(ArgumentMatchers.anyString(), ArgumentMatchers.anyString(),
+				ArgumentMatchers.any(Path.class), ArgumentMatchers.any());
+	}
+
+	@Test
+	public void verify() throws IOException {
+		installer.install(new ByteArrayInputStream("content".getBytes(StandardCharsets.UTF_8)), "plugin-foo", TARGET, TransferListener.NONE);
+		Assertions.assertTrue(Files.exists(PluginInstaller.getChecksumFile(TARGET)));
+		installer.verify(TARGET);
+
+		// Corrupted file
+		FileUtils.write(TARGET.toFile(), "corrupted", StandardCharsets.UTF_8);
+		Assertions.assertThrows(IOException.class, () -> installer.verify(TARGET));
+	}
+
+	@Test
+	public void verifyNoChecksum() throws IOException {
+		// Not an archive
+		FileUtils.write(TARGET.toFile(), "content", StandardCharsets.UTF_8);
+		Assertions.assertThrows(IOException.class, () -> installer.verify(TARGET));
+	}
+
+	@Test
+	public void activateStaged() throws IOException {
+		final Path staging = DIRECTORY.resolve("staging");
+		installer.install(new ByteArrayInputStream("content".getBytes(StandardCharsets.UTF_8)), "plugin-foo",
+				Files.createDirectories(staging).resolve("plugin-foo-1.0.0.jar"), TransferListener.NONE);
+		Assertions.assertEquals(List.of(TARGET), PluginInstaller.activateStaged(staging, DIRECTORY));
+		Assertions.assertEquals("content", FileUtils.readFileToString(TARGET.toFile(), StandardCharsets.UTF_8));
+		Assertions.assertTrue(Files.exists(PluginInstaller.getChecksumFile(TARGET)));
+		Assertions.assertFalse(Files.exists(staging.resolve("plugin-foo-1.0.0.jar")));
+
+		// Nothing more to activate
+		Assertions.assertTrue(PluginInstaller.activateStaged(staging, DIRECTORY).isEmpty());
+		Assertions.assertTrue(PluginInstaller.activateStaged(DIRECTORY.resolve("none"), DIRECTORY).isEmpty());
+	}
+
+	@Test
+	public void getLock() {
+		Assertions.assertSame(installer.getLock("plugin-foo"), installer.getLock("plugin-foo"));
+	}
+}
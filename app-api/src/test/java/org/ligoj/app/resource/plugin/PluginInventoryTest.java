@@ -0,0 +1,125 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class of {@link PluginInventory}
+ */
+public class PluginInventoryTest {
+
+	private static final Path DIRECTORY = Paths.get("target/test-classes/plugin-inventory");
+
+	private final PluginInventory inventory = new PluginInventory();
+
+	@BeforeEach
+	public void prepare() throws IOException {
+		FileUtils.deleteQuietly(DIRECTORY.toFile());
+		Files.createDirectories(DIRECTORY);
+		Files.createFile(DIRECTORY.resolve("plugin-foo-1.0.0.jar"));
+		Files.createFile(DIRECTORY.resolve("plugin-foo-1.0.10.jar"));
+		Files.createFile(DIRECTORY.resolve("plugin-foo-1.0.2.jar"));
+		Files.createFile(DIRECTORY.resolve("plugin-foo.jar"));
+		Files.createFile(DIRECTORY.resolve("plugin-foo-bar-2.0.0.jar"));
+		Files.createFile(DIRECTORY.resolve("readme.txt"));
+	}
+
+	@AfterEach
+	public void clean() {
+		inventory.destroy();
+		FileUtils.deleteQuietly(DIRECTORY.toFile());
+	}
+
+	@Test
+	public void getLastVersions() {
+		final Map<String, String> versions = inventory.getLastVersions(DIRECTORY);
+		Assertions.assertEquals(2, versions.size());
+		Assertions.assertEquals("1.0.10", versions.get("plugin-foo"));
+		Assertions.assertEquals("2.0.0", versions.get("plugin-foo-bar"));
+	}
+
+	@Test
+	public void getVersions() {
+		Assertions.assertEquals(Arrays.asList("1.0.0", "1.0.2", "1.0.10"),
+				inventory.getVersions(DIRECTORY, "plugin-foo").keySet().stream().collect(Collectors.toList()));
+		Assertions.assertTrue(inventory.getVersions(DIRECTORY, "plugin-any").isEmpty());
+	}
+
+	@Test
+	public void getFiles() {
+		Assertions.assertEquals(
+				new HashSet<>(Arrays.asList("plugin-foo-1.0.0.jar", "plugin-foo-1.0.10.jar", "plugin-foo-1.0.2.jar", "plugin-foo-bar-2.0.0.jar")),
+				inventory.getFiles(DIRECTORY, "plugin-foo-").stream().map(p -> p.getFileName().toString()).collect(Collectors.toSet()));
+		Assertions.assertEquals(Collections.emptyList(), inventory.getFiles(DIRECTORY, "plugin-any"));
+	}
+
+	@Test
+	public void notified() throws IOException {
+		inventory.getLastVersions(DIRECTORY);
+		final Path file = Files.createFile(DIRECTORY.resolve("plugin-foo-1.1.0.jar"));
+		inventory.added(file);
+		Assertions.assertEquals("1.1.0", inventory.getLastVersions(DIRECTORY).get("plugin-foo"));
+		Assertions.assertTrue(inventory.exists(file));
+
+		Files.delete(file);
+		inventory.removed(file);
+		Assertions.assertEquals("1.0.10", inventory.getLastVersions(DIRECTORY).get("plugin-foo"));
+		Assertions.assertFalse(inventory.exists(file));
+	}
+
+	@Test
+	public void watched() throws Exception {
+		inventory.getLastVersions(DIRECTORY);
+
+		// External changes
+		Files.createFile(DIRECTORY.resolve("plugin-bar-1.0.0.jar"));
+		Files.delete(DIRECTORY.resolve("plugin-foo-bar-2.0.0.jar"));
+		waitFor(() -> inventory.getLastVersions(DIRECTORY).containsKey("plugin-bar"));
+		waitFor(() -> !inventory.getLastVersions(DIRECTORY).containsKey("plugin-foo-bar"));
+	}
+
+	@Test
+	public void exists() {
+		inventory.getLastVersions(DIRECTORY);
+		Assertions.assertTrue(inventory.exists(DIRECTORY.resolve("plugin-foo.jar")));
+		Assertions.assertFalse(inventory.exists(DIRECTORY.resolve("plugin-any.jar")));
+
+		// Outside the inventoried directory
+		Assertions.assertTrue(inventory.exists(DIRECTORY.getParent()));
+		Assertions.assertFalse(inventory.exists(Paths.get("any")));
+	}
+
+	@Test
+	public void notExists() {
+		final Path any = DIRECTORY.resolve("any");
+		Assertions.assertTrue(inventory.getLastVersions(any).isEmpty());
+
+		// Ignored notifications
+		inventory.added(any.resolve("plugin-foo-1.0.0.jar"));
+		Assertions.assertTrue(inventory.getLastVersions(any).isEmpty());
+	}
+
+	private void waitFor(final BooleanSupplier condition) throws InterruptedException {
+		for (int i = 0; i < 100 && !condition.getAsBoolean(); i++) {
+			Thread.sleep(100);
+		}
+		Assertions.assertTrue(condition.getAsBoolean());
+	}
+}
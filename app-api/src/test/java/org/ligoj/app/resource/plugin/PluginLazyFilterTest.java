@@ -0,0 +1,54 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+/**
+ * Test class of {@link PluginLazyFilter}
+ */
+public class PluginLazyFilterTest {
+
+	@Test
+	public void doFilter() throws ServletException, IOException {
+		final PluginRegistry registry = new PluginRegistry();
+		final List<LazyPlugin> activated = new ArrayList<>();
+		registry.registerLazy(new LazyPlugin("plugin-foo", "1.0.0", null, Paths.get("plugin-foo-1.0.0.jar"), Collections.singletonList("/foo")),
+				activated::add);
+		final HttpServletRequest request = Mockito.mock(HttpServletRequest.class);
+		final HttpServletResponse response = Mockito.mock(HttpServletResponse.class);
+		final FilterChain chain = Mockito.mock(FilterChain.class);
+
+		Mockito.when(request.getPathInfo()).thenReturn("/bar");
+		new PluginLazyFilter(registry).doFilter(request, response, chain);
+		Assertions.assertTrue(activated.isEmpty());
+
+		Mockito.when(request.getPathInfo()).thenReturn("/foo/1");
+		new PluginLazyFilter(registry).doFilter(request, response, chain);
+		Assertions.assertEquals(1, activated.size());
+		Mockito.verify(chain, Mockito.times(2)).doFilter(request, response);
+	}
+
+	@Test
+	public void doFilterNoLazy() throws ServletException, IOException {
+		final HttpServletRequest request = Mockito.mock(HttpServletRequest.class);
+		final FilterChain chain = Mockito.mock(FilterChain.class);
+		new PluginLazyFilter(new PluginRegistry()).doFilter(request, Mockito.mock(HttpServletResponse.class), chain);
+		Mockito.verify(request, Mockito.never()).getPathInfo();
+		Mockito.verify(chain).doFilter(Mockito.eq(request), Mockito.any());
+	}
+}
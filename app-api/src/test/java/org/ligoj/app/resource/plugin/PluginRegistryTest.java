@@ -0,0 +1,102 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.ligoj.app.api.FeaturePlugin;
+import org.ligoj.app.model.PluginType;
+import org.ligoj.app.resource.plugin.repository.RepositoryManager;
+import org.mockito.Mockito;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.ContextRefreshedEvent;
+
+/**
+ * Test class of {@link PluginRegistry} and {@link PluginKey}
+ */
+public class PluginRegistryTest {
+
+	@Test
+	public void keyService() {
+		final PluginKey key = new PluginKey("service:id");
+		Assertions.assertEquals("service:id", key.getKey());
+		Assertions.assertEquals(PluginType.SERVICE, key.getType());
+		Assertions.assertNull(key.getParent());
+		Assertions.assertEquals("plugin-id", key.getArtifact());
+	}
+
+	@Test
+	public void keyTool() {
+		final PluginKey key = new PluginKey("service:id:ldap");
+		Assertions.assertEquals(PluginType.TOOL, key.getType());
+		Assertions.assertEquals("service:id", key.getParent());
+		Assertions.assertEquals("plugin-id-ldap", key.getArtifact());
+	}
+
+	@Test
+	public void keyOutOfConvention() {
+		final PluginKey key = new PluginKey("service:id:ldap:node");
+		Assertions.assertNull(key.getType());
+		Assertions.assertEquals("service:id:ldap", key.getParent());
+		Assertions.assertEquals("plugin-id-ldap-node", key.getArtifact());
+
+		final PluginKey simple = new PluginKey("any");
+		Assertions.assertEquals(PluginType.FEATURE, simple.getType());
+		Assertions.assertNull(simple.getParent());
+		Assertions.assertEquals("plugin-", simple.getArtifact());
+	}
+
+	@Test
+	public void refresh() {
+		final FeaturePlugin feature = Mockito.mock(FeaturePlugin.class);
+		Mockito.when(feature.getKey()).thenReturn("feature:foo:bar");
+		final RepositoryManager repository = Mockito.mock(RepositoryManager.class);
+		Mockito.when(repository.getId()).thenReturn("central");
+		final ApplicationContext context = Mockito.mock(ApplicationContext.class);
+		Mockito.when(context.getBeansOfType(FeaturePlugin.class)).thenReturn(Collections.singletonMap("feature", feature));
+		Mockito.when(context.getBeansOfType(RepositoryManager.class)).thenReturn(Collections.singletonMap("repository", repository));
+
+		final PluginRegistry registry = new PluginRegistry();
+		Assertions.assertNull(registry.getFeature("feature:foo:bar"));
+		Assertions.assertSame(PluginRegistry.EMPTY_REPOSITORY, registry.getRepositoryManager("central"));
+
+		registry.refresh(new ContextRefreshedEvent(context));
+		Assertions.assertSame(feature, registry.getFeature("feature:foo:bar"));
+		Assertions.assertSame(feature, registry.getFeatureByArtifact("plugin-foo-bar"));
+		Assertions.assertEquals(1, registry.getFeatures().size());
+		Assertions.assertSame(repository, registry.getRepositoryManager("central"));
+		Assertions.assertSame(PluginRegistry.EMPTY_REPOSITORY, registry.getRepositoryManager("nexus"));
+		Assertions.assertEquals(1, registry.getRepositoryManagers().size());
+		Assertions.assertSame(registry.getKey("feature:foo:bar"), registry.getKey("feature:foo:bar"));
+	}
+
+	@Test
+	public void lazy() {
+		final PluginRegistry registry = new PluginRegistry();
+		final List<LazyPlugin> activated = new ArrayList<>();
+		registry.registerLazy(new LazyPlugin("plugin-foo", "1.0.0", "service:foo", Paths.get("plugin-foo-1.0.0.jar"),
+				Collections.singletonList("/service/foo")), activated::add);
+		Assertions.assertEquals(1, registry.getLazyPlugins().size());
+
+		// Not owned paths
+		Assertions.assertFalse(registry.activate("/service/foobar"));
+		Assertions.assertFalse(registry.activate("/service"));
+		Assertions.assertFalse(registry.activate(null));
+		Assertions.assertTrue(activated.isEmpty());
+
+		// Activation by a REST resource
+		Assertions.assertTrue(registry.activate("/service/foo/bar"));
+		Assertions.assertTrue(registry.activate("/service/foo"));
+		Assertions.assertEquals(2, activated.size());
+
+		registry.unregisterLazy("plugin-foo");
+		Assertions.assertTrue(registry.getLazyPlugins().isEmpty());
+		Assertions.assertFalse(registry.activate("/service/foo"));
+	}
+}
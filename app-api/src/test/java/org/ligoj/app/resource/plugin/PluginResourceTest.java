@@ -11,27 +11,38 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 import javax.persistence.EntityManager;
+import javax.persistence.EntityNotFoundException;
 import javax.transaction.Transactional;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.http.HttpStatus;
 import org.eclipse.jetty.util.thread.ThreadClassLoaderScope;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
@@ -49,7 +60,14 @@ import org.ligoj.app.model.PluginType;
 import org.ligoj.app.model.Project;
 import org.ligoj.app.model.Subscription;
 import org.ligoj.app.resource.plugin.repository.Artifact;
+import org.ligoj.app.resource.plugin.repository.CatalogIndex;
 import org.ligoj.app.resource.plugin.repository.CentralRepositoryManager;
+import org.ligoj.app.resource.plugin.repository.ChecksumStatus;
+import org.ligoj.app.resource.plugin.repository.PluginCatalog;
+import org.ligoj.app.resource.plugin.repository.RepositoryHttpClient;
+import org.ligoj.app.resource.plugin.repository.RepositoryIndexCache;
+import org.ligoj.app.resource.plugin.repository.RepositorySnapshot;
+import org.ligoj.app.resource.plugin.repository.TransferListener;
 import org.ligoj.bootstrap.core.dao.csv.CsvForJpa;
 import org.ligoj.bootstrap.core.resource.BusinessException;
 import org.ligoj.bootstrap.core.resource.TechnicalException;
@@ -88,8 +106,17 @@ public class PluginResourceTest extends AbstractServerTest {
 	private static final File TEMP_FILE = Paths
 			.get(USER_HOME_DIRECTORY, PluginsClassLoader.HOME_DIR_FOLDER, PluginsClassLoader.PLUGINS_DIR, "plugin-iam-node-test.jar").toFile();
 
+	/**
+	 * Home directory of the rollback tests.
+	 */
+	private static final Path ROLLBACK_HOME = Paths.get("target/test-classes/home-rollback");
+
+	private static final Path ROLLBACK_PLUGINS = ROLLBACK_HOME.resolve(PluginsClassLoader.PLUGINS_DIR);
+
 	private PluginResource resource;
 
+	private final PluginInventory inventory = new PluginInventory();
+
 	@Autowired
 	private PluginRepository repository;
 
@@ -102,12 +129,48 @@ public class PluginResourceTest extends AbstractServerTest {
 	@Autowired
 	private RestartEndpoint restartEndpoint;
 
+	@Autowired
+	private PluginInstaller installer;
+
+	@Autowired
+	private PluginRegistry registry;
+
+	@Autowired
+	private RepositoryIndexCache indexCache;
+
+	@Autowired
+	private PluginCatalog catalog;
+
+	@Autowired
+	private RepositoryHttpClient httpClient;
+
 	@Autowired
 	ConfigurationResource configuration;
 
 	@Autowired
 	org.springframework.cache.CacheManager cacheManager;
 
+	/**
+	 * Plug-ins updated by the auto-update.
+	 */
+	private final Set<String> updated = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Plug-in failing to be updated by the auto-update.
+	 */
+	private String failedUpdate;
+
+	/**
+	 * Jobs running in the test thread, and then in the test transaction.
+	 */
+	private final InstallJobResource jobs = new InstallJobResource() {
+		@Override
+		protected Future<?> execute(final Runnable job) {
+			job.run();
+			return CompletableFuture.completedFuture(null);
+		}
+	};
+
 	@BeforeEach
 	public void prepareData() throws IOException {
 		persistEntities("csv", new Class[] { SystemConfiguration.class, Node.class, Project.class, Subscription.class },
@@ -115,6 +178,8 @@ public class PluginResourceTest extends AbstractServerTest {
 		FileUtils.deleteQuietly(TEMP_FILE);
 		configuration.put("ligoj.plugin.ignore", " plugin-sample-ignore , any");
 		clearAllCache();
+		indexCache.clear();
+		httpClient.reset();
 		resource = mockCentral("search.json");
 	}
 
@@ -144,8 +209,8 @@ public class PluginResourceTest extends AbstractServerTest {
 			// This plug-in is available in the remote storage with a newer version
 			Assertions.assertEquals("0.0.1", findAll("0.0.0.8").getNewVersion());
 		} finally {
-			destroySingleton("sampleService");
-			destroySingleton("sampleTool");
+			destroyPlugin("sampleService");
+			destroyPlugin("sampleTool");
 		}
 	}
 
@@ -205,8 +270,8 @@ public class PluginResourceTest extends AbstractServerTest {
 			// This plug-in is available in the remote storage with a newer version
 			Assertions.assertNull(findAll("0.0.1").getNewVersion());
 		} finally {
-			destroySingleton("sampleService");
-			destroySingleton("sampleTool");
+			destroyPlugin("sampleService");
+			destroyPlugin("sampleTool");
 		}
 	}
 
@@ -257,11 +322,28 @@ public class PluginResourceTest extends AbstractServerTest {
 		Assertions.assertEquals(1, mockCentral("search-bar.json").autoUpdate());
 	}
 
+	@Test
+	public void autoUpdateNewVersions() throws IOException {
+		Assertions.assertEquals(2, mockCentral("search-update.json").autoUpdate());
+		Assertions.assertEquals(new HashSet<>(Arrays.asList("plugin-foo", "plugin-bar")), updated);
+	}
+
+	@Test
+	public void autoUpdateNewVersionFailed() throws IOException {
+		failedUpdate = "plugin-foo";
+		configuration.put("ligoj.plugin.update.parallelism", "1");
+
+		// The other plug-ins are still updated
+		Assertions.assertEquals(1, mockCentral("search-update.json").autoUpdate());
+		Assertions.assertEquals(Collections.singleton("plugin-bar"), updated);
+	}
+
 	private PluginResource mockCentral(final String body) throws IOException {
 		httpServer.stubFor(get(urlEqualTo("/solrsearch/select?wt=json&rows=100&q=org.ligoj.plugin"))
 				.willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(
 						IOUtils.toString(new ClassPathResource("mock-server/maven-repo/" + body).getInputStream(), StandardCharsets.UTF_8))));
 		httpServer.start();
+		indexCache.clear();
 
 		final PluginsClassLoader pluginsClassLoader = Mockito.mock(PluginsClassLoader.class);
 		Mockito.when(pluginsClassLoader.getHomeDirectory()).thenReturn(Paths.get(USER_HOME_DIRECTORY, PluginsClassLoader.HOME_DIR_FOLDER));
@@ -278,8 +360,17 @@ public class PluginResourceTest extends AbstractServerTest {
 			}
 
 			@Override
-			public void install(final String artifact, final String repository) {
-				// Ignore
+			protected Map<String, String> getInstalledPlugins() {
+				return pluginsClassLoader.getInstalledPlugins();
+			}
+
+			@Override
+			protected void install(final InputStream input, final String artifact, final String version, final String repository,
+					final Path directory, final TransferListener listener) {
+				if (artifact.equals(failedUpdate)) {
+					throw new BusinessException(artifact);
+				}
+				updated.add(artifact);
 			}
 		};
 		applicationContext.getAutowireCapableBeanFactory().autowireBean(pluginResource);
@@ -287,7 +378,7 @@ public class PluginResourceTest extends AbstractServerTest {
 	}
 
 	private PluginVo findAll(final String version) throws IOException {
-		registerSingleton("sampleService", new SampleService());
+		registerPlugin("sampleService", new SampleService());
 		final Plugin pluginId = new Plugin();
 		pluginId.setVersion(version);
 		pluginId.setKey("service:sample");
@@ -314,6 +405,59 @@ public class PluginResourceTest extends AbstractServerTest {
 
 	}
 
+	@Test
+	public void findAllStatisticsConstantQueries() throws IOException {
+		final Statistics statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+		statistics.setStatisticsEnabled(true);
+		try {
+			registerPlugin("sampleService", new SampleService());
+			newPlugin("service:sample", "plugin-sample", PluginType.SERVICE);
+
+			// Warm up the caches (configuration, remote index)
+			resource.findAll("central");
+
+			// Only one node plug-in
+			statistics.clear();
+			Assertions.assertEquals(5, filter(resource.findAll("central")).size());
+			final long queries = statistics.getPrepareStatementCount();
+
+			// Add more node plug-ins, the amount of queries is the same
+			registerPlugin("sampleTool1", new SampleTool1());
+			registerPlugin("sampleTool2", new SampleTool2());
+			newPlugin("service:sample:tool1", "plugin-sample-tool1", PluginType.TOOL);
+			newPlugin("service:sample:tool2", "plugin-sample-tool2", PluginType.TOOL);
+			em.clear();
+			statistics.clear();
+			final List<PluginVo> plugins = filter(resource.findAll("central"));
+			Assertions.assertEquals(7, plugins.size());
+			Assertions.assertEquals(queries, statistics.getPrepareStatementCount());
+
+			// Check the statistics are still correct
+			final PluginVo sample = plugins.stream().filter(p -> "service:sample".equals(p.getId())).findFirst().get();
+			Assertions.assertEquals(3, sample.getNodes());
+			Assertions.assertEquals(3, sample.getSubscriptions());
+			Assertions.assertEquals("service:sample", sample.getNode().getId());
+			final PluginVo tool = plugins.stream().filter(p -> "service:sample:tool1".equals(p.getId())).findFirst().get();
+			Assertions.assertEquals(0, tool.getNodes());
+			Assertions.assertEquals(0, tool.getSubscriptions());
+			Assertions.assertNull(tool.getNode());
+		} finally {
+			statistics.setStatisticsEnabled(false);
+			destroyPlugin("sampleService");
+			destroyPlugin("sampleTool1");
+			destroyPlugin("sampleTool2");
+		}
+	}
+
+	private void newPlugin(final String key, final String artifact, final PluginType type) {
+		final Plugin plugin = new Plugin();
+		plugin.setVersion("0.0.1");
+		plugin.setKey(key);
+		plugin.setType(type);
+		plugin.setArtifact(artifact);
+		repository.saveAndFlush(plugin);
+	}
+
 	/*
 	 * Ignore plugin-ui runtime (issue in Eclipse)
 	 */
@@ -499,6 +643,7 @@ public class PluginResourceTest extends AbstractServerTest {
 		final PluginResource resource = new PluginResource() {
 			@Override
 			public int autoUpdate() throws IOException {
+				check.set(true);
 				return 1;
 			}
 
@@ -508,32 +653,27 @@ public class PluginResourceTest extends AbstractServerTest {
 			}
 		};
 		applicationContext.getAutowireCapableBeanFactory().autowireBean(resource);
-		resource.refreshPlugins(null);
+		resource.refreshPlugins(new ContextRefreshedEvent(applicationContext));
 
-		// 1 update, restart needed
-		Assertions.assertTrue(check.get());
+		// Updates are staged in background, no update at startup and no restart
+		Assertions.assertFalse(check.get());
 	}
 
 	@Test
-	public void refreshPluginsAutoUpdateNoUpdate() throws Exception {
-		configuration.put("ligoj.plugin.update", "true");
-		final AtomicBoolean check = new AtomicBoolean(false);
-		final PluginResource resource = new PluginResource() {
-			@Override
-			public int autoUpdate() throws IOException {
-				return 0;
-			}
-
-			@Override
-			public void restart() {
-				check.set(true);
-			}
-		};
-		applicationContext.getAutowireCapableBeanFactory().autowireBean(resource);
-		resource.refreshPlugins(new ContextRefreshedEvent(applicationContext));
-
-		// No update, no restart needed
-		Assertions.assertFalse(check.get());
+	public void activateStaged() throws IOException {
+		final File staged = Paths.get(USER_HOME_DIRECTORY, PluginsClassLoader.HOME_DIR_FOLDER, PluginResource.STAGING_DIR, "plugin-staged-1.0.0.jar")
+				.toFile();
+		final File activated = Paths
+				.get(USER_HOME_DIRECTORY, PluginsClassLoader.HOME_DIR_FOLDER, PluginsClassLoader.PLUGINS_DIR, "plugin-staged-1.0.0.jar").toFile();
+		try {
+			FileUtils.write(staged, "staged", StandardCharsets.UTF_8);
+			resource.activateStaged();
+			Assertions.assertFalse(staged.exists());
+			Assertions.assertEquals("staged", FileUtils.readFileToString(activated, StandardCharsets.UTF_8));
+		} finally {
+			FileUtils.deleteQuietly(staged);
+			FileUtils.deleteQuietly(activated);
+		}
 	}
 
 	@Test
@@ -543,7 +683,7 @@ public class PluginResourceTest extends AbstractServerTest {
 			Assertions.assertNull(repository.findBy("key", "service:sample"));
 
 			// Add a plug-in is an initial version
-			registerSingleton("sampleService", new SampleService() {
+			registerPlugin("sampleService", new SampleService() {
 				@Override
 				public String getVersion() {
 					return "1.1";
@@ -556,8 +696,8 @@ public class PluginResourceTest extends AbstractServerTest {
 			Assertions.assertEquals("1.1", repository.findByExpected("key", "service:sample").getVersion());
 
 			// Add a plug-in is a different version
-			destroySingleton("sampleService");
-			registerSingleton("sampleService", new SampleService() {
+			destroyPlugin("sampleService");
+			registerPlugin("sampleService", new SampleService() {
 				@Override
 				public String getVersion() {
 					return "2.0";
@@ -566,34 +706,178 @@ public class PluginResourceTest extends AbstractServerTest {
 			resource.refreshPlugins(event);
 			Assertions.assertEquals("2.0", repository.findByExpected("key", "service:sample").getVersion());
 		} finally {
-			destroySingleton("sampleService");
+			destroyPlugin("sampleService");
 		}
 
 	}
 
 	@Test
-	public void configurePluginEntityNotFound() {
-		Assertions.assertThrows(TechnicalException.class, () -> {
-			new PluginResource().configurePluginEntity(Arrays.stream(new URL[] { new URL("file://tmp") }), SystemUser.class, "---");
+	public void refreshPluginsUnchanged() throws Exception {
+		final AtomicInteger installed = new AtomicInteger();
+		try {
+			registerPlugin("sampleService", new SampleService() {
+				@Override
+				public String getVersion() {
+					return "1.1";
+				}
+
+				@Override
+				public void install() {
+					installed.incrementAndGet();
+				}
+			});
+			final ContextRefreshedEvent event = new ContextRefreshedEvent(applicationContext);
+			resource.refreshPlugins(event);
+			Assertions.assertNotNull(repository.findBy("key", "service:sample"));
+			Assertions.assertEquals(1, installed.get());
+
+			// Unchanged plug-ins, the configuration is skipped
+			resource.refreshPlugins(event);
+			Assertions.assertEquals(1, installed.get());
+
+			// Database has been restored, the plug-in is configured again
+			repository.deleteAllBy("key", "service:sample");
+			resource.refreshPlugins(event);
+			Assertions.assertNotNull(repository.findBy("key", "service:sample"));
+			Assertions.assertEquals(2, installed.get());
+		} finally {
+			destroyPlugin("sampleService");
+		}
+	}
+
+	@Test
+	public void configurePlugins() {
+		final List<String> configured = Collections.synchronizedList(new ArrayList<>());
+		final Set<String> threads = ConcurrentHashMap.newKeySet();
+		final Map<String, Long> durations = resource.configurePlugins(
+				new HashSet<>(Arrays.asList("service:b", "service:a:x:y", "service:a", "feature:c", "service:a:x")), 4, k -> {
+					threads.add(Thread.currentThread().getName());
+					configured.add(k);
+				});
+
+		// The parents are configured before their children, even through a not configured parent
+		Assertions.assertEquals(5, configured.size());
+		Assertions.assertTrue(configured.indexOf("service:a") < configured.indexOf("service:a:x"));
+		Assertions.assertTrue(configured.indexOf("service:a:x") < configured.indexOf("service:a:x:y"));
+		Assertions.assertEquals(Collections.singleton("plugin-install"), threads);
+		Assertions.assertEquals(configured.stream().sorted().collect(Collectors.toList()), new ArrayList<>(durations.keySet()));
+	}
+
+	@Test
+	public void configurePluginsFailed() {
+		final Set<String> configured = ConcurrentHashMap.newKeySet();
+		final TechnicalException e = Assertions.assertThrows(TechnicalException.class,
+				() -> resource.configurePlugins(new HashSet<>(Arrays.asList("service:a", "service:a:x", "service:b", "service:c")), 4, k -> {
+					if (k.equals("service:a") || k.equals("service:c")) {
+						throw new TechnicalException("failed-" + k);
+					}
+					configured.add(k);
+				}));
+
+		// All failures are collected
+		Assertions.assertEquals("Configuring the plugins [service:a, service:c] failed", e.getMessage());
+		Assertions.assertEquals("failed-service:a", e.getCause().getMessage());
+		Assertions.assertEquals("failed-service:c", e.getSuppressed()[0].getMessage());
+
+		// The children of the failed plug-in are not configured, the other branches are
+		Assertions.assertEquals(Collections.singleton("service:b"), configured);
+	}
+
+	@Test
+	public void configurePluginsSequential() {
+		final List<String> configured = new ArrayList<>();
+		final String thread = Thread.currentThread().getName();
+		resource.configurePlugins(new HashSet<>(Arrays.asList("service:b", "service:a:x", "service:a")), 1, k -> {
+			Assertions.assertEquals(thread, Thread.currentThread().getName());
+			configured.add(k);
 		});
+		Assertions.assertEquals(Arrays.asList("service:a", "service:a:x", "service:b"), configured);
 	}
 
 	@Test
-	public void configurePluginEntityFromJar() throws MalformedURLException, IOException {
+	public void getFingerprint() throws Exception {
+		final String fingerprint = resource.getFingerprint();
+		Assertions.assertEquals(64, fingerprint.length());
+		Assertions.assertEquals(fingerprint, resource.getFingerprint());
+		try {
+			registerPlugin("sampleService", new SampleService());
+			final String registered = resource.getFingerprint();
+			Assertions.assertNotEquals(fingerprint, registered);
+
+			// The configured plug-ins are part of the fingerprint
+			newPlugin("service:sample", "plugin-sample", PluginType.SERVICE);
+			Assertions.assertNotEquals(registered, resource.getFingerprint());
+		} finally {
+			destroyPlugin("sampleService");
+		}
+	}
+
+	@Test
+	public void configurePluginEntitiesInvalidLocation() throws IOException {
+		final PluginResource pluginResource = newPluginResourceEntities(new URL("file://tmp"));
+		Assertions.assertEquals("Invalid plug-in location file://tmp",
+				Assertions.assertThrows(TechnicalException.class, () -> pluginResource.configurePluginEntities(Mockito.mock(FeaturePlugin.class),
+						Collections.singletonList(SystemUser.class))).getMessage());
+	}
+
+	@Test
+	public void configurePluginEntitiesFromNestedJar() throws IOException {
+		// Code source of a plug-in nested in an executable archive: "jar:file:/app.war!/WEB-INF/classes!/"
 		final URL url = Thread.currentThread().getContextClassLoader().getResource("csv/cache-user.csv");
-		final PluginResource pluginResource = new PluginResource();
-		pluginResource.em = Mockito.mock(EntityManager.class);
-		pluginResource.csvForJpa = Mockito.mock(CsvForJpa.class);
-		pluginResource.configurePluginEntity(Arrays.stream(new URL[] { url }), SystemUser.class, url.getPath());
+		final PluginResource pluginResource = newPluginResourceEntities(new URL(StringUtils.substringBefore(url.toString(), "!/") + "!/"));
+		pluginResource.configurePluginEntities(Mockito.mock(FeaturePlugin.class), Collections.singletonList(CacheUser.class));
+		Mockito.verify(pluginResource.csvForJpa).toJpa(ArgumentMatchers.eq(CacheUser.class), ArgumentMatchers.any(), ArgumentMatchers.eq(true),
+				ArgumentMatchers.eq(false), ArgumentMatchers.any());
+
+		// Not in the nested archive of the plug-in
+		Assertions.assertEquals("Unable to find CSV file for entity SystemBench",
+				Assertions.assertThrows(TechnicalException.class, () -> pluginResource.configurePluginEntities(Mockito.mock(FeaturePlugin.class),
+						Collections.singletonList(SystemBench.class))).getMessage());
+	}
+
+	@Test
+	public void configurePluginEntitiesFromJar() throws IOException {
+		final URL url = Thread.currentThread().getContextClassLoader().getResource("csv/cache-user.csv");
+		final PluginResource pluginResource = newPluginResourceEntities(new URL(StringUtils.substringBetween(url.toString(), "jar:", "!/")));
+		pluginResource.configurePluginEntities(Mockito.mock(FeaturePlugin.class), Collections.singletonList(CacheUser.class));
+		Mockito.verify(pluginResource.csvForJpa).toJpa(ArgumentMatchers.eq(CacheUser.class), ArgumentMatchers.any(), ArgumentMatchers.eq(true),
+				ArgumentMatchers.eq(false), ArgumentMatchers.any());
+
+		// Not in the JAR of the plug-in
+		Assertions.assertEquals("Unable to find CSV file for entity SystemBench",
+				Assertions.assertThrows(TechnicalException.class, () -> pluginResource.configurePluginEntities(Mockito.mock(FeaturePlugin.class),
+						Collections.singletonList(SystemBench.class))).getMessage());
+	}
+
+	@Test
+	public void configurePluginEntitiesFromProject() throws IOException {
+		final URL url = Thread.currentThread().getContextClassLoader().getResource("csv/system-bench.csv");
+		final PluginResource pluginResource = newPluginResourceEntities(new URL(StringUtils.removeEnd(url.toString(), "csv/system-bench.csv")));
+		pluginResource.configurePluginEntities(Mockito.mock(FeaturePlugin.class), Collections.singletonList(SystemBench.class));
+		Mockito.verify(pluginResource.csvForJpa).toJpa(ArgumentMatchers.eq(SystemBench.class), ArgumentMatchers.any(), ArgumentMatchers.eq(true),
+				ArgumentMatchers.eq(false), ArgumentMatchers.any());
+
+		// Not in the folder of the plug-in
+		Assertions.assertThrows(TechnicalException.class,
+				() -> pluginResource.configurePluginEntities(Mockito.mock(FeaturePlugin.class), Collections.singletonList(CacheUser.class)));
 	}
 
 	@Test
-	public void configurePluginEntityFromProject() throws MalformedURLException, IOException {
-		final URL url = Thread.currentThread().getContextClassLoader().getResource("csv/system-user.csv");
-		final PluginResource pluginResource = new PluginResource();
+	public void configurePluginEntitiesNone() throws IOException {
+		// The location is not read
+		newPluginResourceEntities(null).configurePluginEntities(Mockito.mock(FeaturePlugin.class), Collections.emptyList());
+	}
+
+	private PluginResource newPluginResourceEntities(final URL location) {
+		final PluginResource pluginResource = new PluginResource() {
+			@Override
+			protected URL getPluginLocation(final FeaturePlugin plugin) {
+				return location;
+			}
+		};
 		pluginResource.em = Mockito.mock(EntityManager.class);
 		pluginResource.csvForJpa = Mockito.mock(CsvForJpa.class);
-		pluginResource.configurePluginEntity(Arrays.stream(new URL[] { url }), SystemUser.class, url.toString());
+		return pluginResource;
 	}
 
 	@Test
@@ -605,9 +889,10 @@ public class PluginResourceTest extends AbstractServerTest {
 
 	@Test
 	public void installNotExistsVersion() {
-		Assertions.assertEquals("any", Assertions.assertThrows(BusinessException.class, () -> {
-			newPluginResourceInstall().install("any", "dummy", "central");
-		}).getMessage());
+		final InstallJob job = jobs.findById(newPluginResourceInstall().install("any", "dummy", "central"));
+		Assertions.assertEquals(InstallJobStatus.FAILED, job.getStatus());
+		Assertions.assertNotNull(job.getError());
+		Assertions.assertFalse(TEMP_FILE.exists());
 	}
 
 	@Test
@@ -621,7 +906,9 @@ public class PluginResourceTest extends AbstractServerTest {
 	@Test
 	public void upload() throws IOException {
 		final InputStream input = new ByteArrayInputStream("test".getBytes("UTF-8"));
-		newPluginResourceInstall().upload(input, "plugin-sample", "1.2.9");
+		final InstallJob job = jobs.findById(newPluginResourceInstall().upload(input, "plugin-sample", "1.2.9"));
+		Assertions.assertEquals(InstallJobStatus.SUCCEEDED, job.getStatus());
+		Assertions.assertEquals(4, job.getBytes());
 		Assertions.assertTrue(TEMP_FILE.exists());
 		Assertions.assertEquals("test", FileUtils.readFileToString(TEMP_FILE, "UTF-8"));
 	}
@@ -636,7 +923,10 @@ public class PluginResourceTest extends AbstractServerTest {
 						IOUtils.toString(new ClassPathResource("mock-server/maven-repo/search.json").getInputStream(), StandardCharsets.UTF_8))));
 		httpServer.start();
 
-		newPluginResourceInstall().install("plugin-sample", "central");
+		final InstallJob job = jobs.findById(newPluginResourceInstall().install("plugin-sample", "central"));
+		Assertions.assertEquals(InstallJobStatus.SUCCEEDED, job.getStatus());
+		Assertions.assertEquals(TEMP_FILE.length(), job.getBytes());
+		Assertions.assertEquals(ChecksumStatus.UNVERIFIED, job.getChecksum());
 		Assertions.assertTrue(TEMP_FILE.exists());
 	}
 
@@ -700,6 +990,7 @@ public class PluginResourceTest extends AbstractServerTest {
 
 		};
 		applicationContext.getAutowireCapableBeanFactory().autowireBean(pluginResource);
+		pluginResource.jobs = jobs;
 		return pluginResource;
 	}
 
@@ -729,13 +1020,35 @@ public class PluginResourceTest extends AbstractServerTest {
 
 			};
 			applicationContext.getAutowireCapableBeanFactory().autowireBean(resource);
+
+			// Fresh inventory including the files created by the test
+			resource.inventory = inventory;
 			return resource;
 		}
 	}
 
+	/**
+	 * Register a plug-in bean and refresh the plug-in registry.
+	 */
+	private void registerPlugin(final String name, final Object plugin) {
+		registerSingleton(name, plugin);
+		registry.refresh(applicationContext);
+	}
+
+	/**
+	 * Destroy a plug-in bean and refresh the plug-in registry.
+	 */
+	private void destroyPlugin(final String name) {
+		destroySingleton(name);
+		registry.refresh(applicationContext);
+	}
+
 	@AfterEach
 	public void cleanArtifacts() {
 		FileUtils.deleteQuietly(TEMP_FILE);
+		FileUtils.deleteQuietly(PluginInstaller.getChecksumFile(TEMP_FILE.toPath()).toFile());
+		FileUtils.deleteQuietly(ROLLBACK_HOME.toFile());
+		inventory.destroy();
 	}
 
 	/**
@@ -783,6 +1096,136 @@ public class PluginResourceTest extends AbstractServerTest {
 		Assertions.assertFalse(TEMP_FILE.exists());
 	}
 
+	@Test
+	public void rollback() throws IOException {
+		final PluginResource resource = newPluginResourceRollback();
+		install("plugin-foo-1.0.0.jar", "1.0.0");
+		install("plugin-foo-1.0.1.jar", "1.0.1");
+		FileUtils.write(ROLLBACK_HOME.resolve(PluginResource.STAGING_DIR).resolve("plugin-foo-1.0.2.jar").toFile(), "1.0.2", StandardCharsets.UTF_8);
+		FileUtils.write(ROLLBACK_HOME.resolve(PluginResource.STAGING_DIR).resolve("plugin-foo-bar-1.0.0.jar").toFile(), "bar", StandardCharsets.UTF_8);
+
+		resource.rollback("plugin-foo", "1.0.0");
+
+		// The retained version is the last one
+		Assertions.assertEquals(Collections.singletonMap("plugin-foo", "1.0.0"), resource.getInstalledPlugins());
+		final Path aside = ROLLBACK_HOME.resolve(PluginResource.ROLLBACK_DIR);
+		Assertions.assertTrue(aside.resolve("plugin-foo-1.0.1.jar").toFile().exists());
+		Assertions.assertTrue(aside.resolve("plugin-foo-1.0.1.jar" + PluginInstaller.CHECKSUM_EXTENSION).toFile().exists());
+		Assertions.assertTrue(aside.resolve("plugin-foo-1.0.2.jar").toFile().exists());
+
+		// Staged updates of the other plug-ins are kept
+		Assertions.assertTrue(ROLLBACK_HOME.resolve(PluginResource.STAGING_DIR).resolve("plugin-foo-bar-1.0.0.jar").toFile().exists());
+	}
+
+	@Test
+	public void rollbackNoChecksum() throws IOException {
+		final PluginResource resource = newPluginResourceRollback();
+		FileUtils.copyFile(Paths.get(USER_HOME_DIRECTORY, PluginsClassLoader.HOME_DIR_FOLDER, PluginsClassLoader.PLUGINS_DIR, "plugin-foo-1.0.0.jar")
+				.toFile(), ROLLBACK_PLUGINS.resolve("plugin-foo-1.0.0.jar").toFile());
+		install("plugin-foo-1.0.1.jar", "1.0.1");
+		resource.rollback("plugin-foo", "1.0.0");
+		Assertions.assertEquals(Collections.singletonMap("plugin-foo", "1.0.0"), resource.getInstalledPlugins());
+	}
+
+	@Test
+	public void rollbackCorrupted() throws IOException {
+		final PluginResource resource = newPluginResourceRollback();
+		install("plugin-foo-1.0.0.jar", "1.0.0");
+		install("plugin-foo-1.0.1.jar", "1.0.1");
+		FileUtils.write(ROLLBACK_PLUGINS.resolve("plugin-foo-1.0.0.jar").toFile(), "corrupted", StandardCharsets.UTF_8);
+		Assertions.assertThrows(BusinessException.class, () -> resource.rollback("plugin-foo", "1.0.0"));
+
+		// Nothing has changed
+		Assertions.assertEquals(Collections.singletonMap("plugin-foo", "1.0.1"), resource.getInstalledPlugins());
+	}
+
+	@Test
+	public void rollbackNotRetained() throws IOException {
+		final PluginResource resource = newPluginResourceRollback();
+		install("plugin-foo-1.0.1.jar", "1.0.1");
+		Assertions.assertThrows(EntityNotFoundException.class, () -> resource.rollback("plugin-foo", "1.0.0"));
+	}
+
+	private void install(final String file, final String content) throws IOException {
+		installer.install(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), "plugin-foo", ROLLBACK_PLUGINS.resolve(file),
+				TransferListener.NONE);
+	}
+
+	@Test
+	public void lazy() throws IOException {
+		final PluginResource resource = newPluginResourceRollback();
+		resource.deployer = Mockito.mock(PluginHotDeployer.class);
+		Mockito.when(resource.deployer.isHotDeployable(ArgumentMatchers.any())).thenReturn(true);
+		install("plugin-foo-1.0.0.jar", "1.0.0");
+		install("plugin-foo-1.0.1.jar", "1.0.1");
+		install("plugin-foo-bar-1.0.0.jar", "bar");
+		final Path lazy = ROLLBACK_HOME.resolve(PluginHotDeployer.LAZY_DIR);
+
+		resource.lazy("plugin-foo");
+		Assertions.assertTrue(lazy.resolve("plugin-foo-1.0.0.jar").toFile().exists());
+		Assertions.assertTrue(lazy.resolve("plugin-foo-1.0.1.jar").toFile().exists());
+		Assertions.assertTrue(lazy.resolve("plugin-foo-1.0.1.jar" + PluginInstaller.CHECKSUM_EXTENSION).toFile().exists());
+		Assertions.assertFalse(ROLLBACK_PLUGINS.resolve("plugin-foo-1.0.1.jar").toFile().exists());
+		Assertions.assertTrue(ROLLBACK_PLUGINS.resolve("plugin-foo-bar-1.0.0.jar").toFile().exists());
+		Assertions.assertTrue(inventory.getVersions(ROLLBACK_PLUGINS, "plugin-foo").isEmpty());
+
+		resource.eager("plugin-foo");
+		Assertions.assertTrue(ROLLBACK_PLUGINS.resolve("plugin-foo-1.0.1.jar").toFile().exists());
+		Assertions.assertTrue(ROLLBACK_PLUGINS.resolve("plugin-foo-1.0.1.jar" + PluginInstaller.CHECKSUM_EXTENSION).toFile().exists());
+		Assertions.assertFalse(lazy.resolve("plugin-foo-1.0.1.jar").toFile().exists());
+		Assertions.assertEquals(2, inventory.getVersions(ROLLBACK_PLUGINS, "plugin-foo").size());
+	}
+
+	@Test
+	public void lazyPersistent() throws IOException {
+		final PluginResource resource = newPluginResourceRollback();
+		resource.deployer = Mockito.mock(PluginHotDeployer.class);
+		install("plugin-foo-1.0.0.jar", "1.0.0");
+		install("plugin-foo-1.0.1.jar", "1.0.1");
+		Mockito.when(resource.deployer.isHotDeployable(ArgumentMatchers.any())).thenReturn(true);
+		Mockito.when(resource.deployer.isHotDeployable(ROLLBACK_PLUGINS.resolve("plugin-foo-1.0.1.jar"))).thenReturn(false);
+		Assertions.assertThrows(BusinessException.class, () -> resource.lazy("plugin-foo"));
+
+		// Nothing has been moved
+		Assertions.assertTrue(ROLLBACK_PLUGINS.resolve("plugin-foo-1.0.0.jar").toFile().exists());
+		Assertions.assertFalse(ROLLBACK_HOME.resolve(PluginHotDeployer.LAZY_DIR).resolve("plugin-foo-1.0.0.jar").toFile().exists());
+	}
+
+	@Test
+	public void lazySubscriptions() throws IOException {
+		final PluginResource resource = newPluginResourceRollback();
+		resource.deployer = Mockito.mock(PluginHotDeployer.class);
+		install("plugin-foo-1.0.0.jar", "1.0.0");
+		newPlugin("service:sample", "plugin-foo", PluginType.SERVICE);
+		Assertions.assertThrows(BusinessException.class, () -> resource.lazy("plugin-foo"));
+		Assertions.assertTrue(ROLLBACK_PLUGINS.resolve("plugin-foo-1.0.0.jar").toFile().exists());
+		Mockito.verifyZeroInteractions(resource.deployer);
+	}
+
+	@Test
+	public void lazyNotFound() throws IOException {
+		final PluginResource resource = newPluginResourceRollback();
+		Assertions.assertThrows(EntityNotFoundException.class, () -> resource.lazy("plugin-foo"));
+		Assertions.assertThrows(EntityNotFoundException.class, () -> resource.eager("plugin-foo"));
+	}
+
+	private PluginResource newPluginResourceRollback() throws IOException {
+		FileUtils.deleteQuietly(ROLLBACK_HOME.toFile());
+		java.nio.file.Files.createDirectories(ROLLBACK_PLUGINS);
+		final PluginsClassLoader pluginsClassLoader = Mockito.mock(PluginsClassLoader.class);
+		Mockito.when(pluginsClassLoader.getHomeDirectory()).thenReturn(ROLLBACK_HOME);
+		Mockito.when(pluginsClassLoader.getPluginDirectory()).thenReturn(ROLLBACK_PLUGINS);
+		final PluginResource resource = new PluginResource() {
+			@Override
+			protected PluginsClassLoader getPluginClassLoader() {
+				return pluginsClassLoader;
+			}
+		};
+		applicationContext.getAutowireCapableBeanFactory().autowireBean(resource);
+		resource.inventory = inventory;
+		return resource;
+	}
+
 	@Test
 	public void searchPluginsInMavenRepoNoResult() throws IOException {
 		final List<Artifact> result = searchPluginsInMavenRepo("no-result");
@@ -797,6 +1240,25 @@ public class PluginResourceTest extends AbstractServerTest {
 		Assertions.assertEquals("0.0.1", result.get(0).getVersion());
 	}
 
+	@Test
+	public void searchPluginsOnMavenRepoPage() throws IOException {
+		Assertions.assertEquals(1, searchPluginsInMavenRepo("").size());
+		Assertions.assertEquals("plugin-sample", searchPluginsInMavenRepo("SAMPLE").get(0).getArtifact());
+		Assertions.assertTrue(resource.search("", "central", 1, 10).isEmpty());
+		Assertions.assertTrue(resource.search("", "central", 0, 0).isEmpty());
+	}
+
+	@Test
+	public void searchReuseIndex() throws IOException {
+		Assertions.assertEquals(1, searchPluginsInMavenRepo("").size());
+		final CatalogIndex index = catalog.getIndex("central", centralRepositoryManager.getLastPluginVersions());
+
+		// The ignored plug-ins are filtered by the search, not by the index
+		Assertions.assertEquals(2, index.size());
+		Assertions.assertEquals(1, resource.search("", "central", 0, 10).size());
+		Assertions.assertSame(index, catalog.getIndex("central", centralRepositoryManager.getLastPluginVersions()));
+	}
+
 	@Test
 	public void toFile() throws IOException {
 		final Subscription subscription = new Subscription();
@@ -827,7 +1289,7 @@ public class PluginResourceTest extends AbstractServerTest {
 				.willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(
 						IOUtils.toString(new ClassPathResource("mock-server/maven-repo/search.json").getInputStream(), StandardCharsets.UTF_8))));
 		httpServer.start();
-		return resource.search(query, "central");
+		return resource.search(query, "central", 0, 10);
 	}
 
 	@Test
@@ -843,7 +1305,18 @@ public class PluginResourceTest extends AbstractServerTest {
 	}
 
 	@Test
-	public void persistAsNeeded() {
+	public void getLastPluginVersionsState() throws IOException {
+		Assertions.assertNull(resource.getLastPluginVersionsState("central"));
+		resource.search("", "central", 0, 10);
+		final RepositorySnapshot state = resource.getLastPluginVersionsState("central");
+		Assertions.assertEquals("central", state.getRepository());
+		Assertions.assertEquals(2, state.getSize());
+		Assertions.assertFalse(state.isStale());
+		Assertions.assertTrue(state.getAge() >= 0);
+	}
+
+	@Test
+	public void persistAllAsNeededGeneratedId() {
 		final SystemRole role = new SystemRole();
 		role.setName("any");
 		em.persist(role);
@@ -853,43 +1326,53 @@ public class PluginResourceTest extends AbstractServerTest {
 		final SystemRoleAssignment entity = new SystemRoleAssignment();
 		entity.setRole(role);
 		entity.setUser(user);
-		resource.persistAsNeeded(SystemRoleAssignment.class, entity);
-		em.flush();
+
+		// Without key, the entity is always persisted
+		resource.persistAllAsNeeded(SystemRoleAssignment.class, Collections.singletonList(entity));
 		Assertions.assertFalse(entity.isNew());
 	}
 
 	@Test
-	public void persistAsNeededNamed() {
-		final Project project = new Project();
-		project.setName("foo");
-		project.setPkey("foo-bar");
-		resource.persistAsNeeded(Project.class, project);
-		final Project project1 = em.find(Project.class, project.getId());
-		Assertions.assertNotNull(project1);
+	public void persistAllAsNeeded() {
+		final Project existing = newProject("foo");
+		em.persist(existing);
+		em.flush();
 
-		final Project project2 = new Project();
-		project2.setName("foo");
-		project2.setPkey("foo-bar");
-		resource.persistAsNeeded(Project.class, project2);
+		// One already persisted, one duplicated in the same chunk
+		final Project project1 = newProject("foo");
+		final Project project2 = newProject("bar");
+		final Project project3 = newProject("bar");
+		resource.persistAllAsNeeded(Project.class, Arrays.asList(project1, project2, project3));
+		Assertions.assertTrue(project1.isNew());
+		Assertions.assertFalse(project2.isNew());
+		Assertions.assertTrue(project3.isNew());
+		Assertions.assertEquals(1, em.createQuery("FROM Project WHERE name = :name").setParameter("name", "bar").getResultList().size());
 
-		// project2 has not been persisted, duplicate has been prevented
-		Assertions.assertTrue(project2.isNew());
+		// The persistence context has been cleared
+		Assertions.assertFalse(em.contains(existing));
 	}
 
 	@Test
-	public void persistAsBusinessEntity() {
-		final CacheUser user = new CacheUser();
-		user.setId("foo");
-		resource.persistAsNeeded(CacheUser.class, user);
-		final CacheUser user1 = em.find(CacheUser.class, "foo");
-		Assertions.assertNotNull(user1);
-
+	public void persistAllAsNeededBusinessEntity() {
+		final CacheUser user1 = new CacheUser();
+		user1.setId("foo");
 		final CacheUser user2 = new CacheUser();
 		user2.setId("foo");
-		resource.persistAsNeeded(CacheUser.class, user2);
+		resource.persistAllAsNeeded(CacheUser.class, Arrays.asList(user1, user2));
+		Assertions.assertNotNull(em.find(CacheUser.class, "foo"));
 
-		// user2 has not been persisted, duplicate has been prevented
-		Assertions.assertSame(user1, em.find(CacheUser.class, "foo"));
+		// Already persisted, no duplicate insert
+		final CacheUser user3 = new CacheUser();
+		user3.setId("foo");
+		resource.persistAllAsNeeded(CacheUser.class, Collections.singletonList(user3));
+		Assertions.assertEquals(1, em.createQuery("FROM CacheUser WHERE id = :id").setParameter("id", "foo").getResultList().size());
+	}
+
+	private Project newProject(final String name) {
+		final Project project = new Project();
+		project.setName(name);
+		project.setPkey(name + "-bar");
+		return project;
 	}
 
 }
@@ -0,0 +1,154 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.ligoj.app.AbstractServerTest;
+import org.ligoj.app.resource.plugin.repository.Artifact;
+import org.ligoj.app.resource.plugin.repository.ArtifactVo;
+import org.ligoj.app.resource.plugin.repository.RepositoryManager;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Check the remote repository calls of {@link PluginResource} do not hold any transaction nor connection. This test
+ * class is not transactional to run the resource as from a request.
+ */
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(locations = "classpath:/META-INF/spring/application-context-test.xml")
+public class PluginResourceTransactionTest extends AbstractServerTest {
+
+	/**
+	 * Bound resources of the thread during each remote call: transaction, entity manager, connection,...
+	 */
+	private final List<Map<Object, Object>> boundResources = Collections.synchronizedList(new ArrayList<>());
+
+	@Autowired
+	private PluginResource resource;
+
+	@Autowired
+	private PluginRegistry registry;
+
+	@Autowired
+	private ConfigurationResource configuration;
+
+	/**
+	 * Resource without plug-in class loader and without installed plug-in. Initialized as a Spring bean, so it gets the
+	 * same transactional proxy than {@link PluginResource}.
+	 */
+	static class LocalPluginResource extends PluginResource {
+
+		@Override
+		protected Map<String, String> getInstalledPlugins() {
+			return Collections.emptyMap();
+		}
+	}
+
+	/**
+	 * A slow stand-in repository recording the thread state during the call.
+	 */
+	private class SlowRepositoryManager implements RepositoryManager {
+
+		@Override
+		public Map<String, Artifact> getLastPluginVersions() {
+			Assertions.assertFalse(TransactionSynchronizationManager.isActualTransactionActive());
+			boundResources.add(new HashMap<>(TransactionSynchronizationManager.getResourceMap()));
+			try {
+				Thread.sleep(100);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			final ArtifactVo artifact = new ArtifactVo();
+			artifact.setArtifact("plugin-foo");
+			artifact.setVersion("1.0.0");
+			return Collections.singletonMap("plugin-foo", artifact);
+		}
+
+		@Override
+		public void invalidateLastPluginVersions() {
+			Assertions.assertFalse(TransactionSynchronizationManager.isActualTransactionActive());
+			boundResources.add(new HashMap<>(TransactionSynchronizationManager.getResourceMap()));
+		}
+
+		@Override
+		public String getId() {
+			return "slow";
+		}
+
+		@Override
+		public InputStream getArtifactInputStream(final String artifact, final String version) throws IOException {
+			throw new IOException("Not available");
+		}
+	}
+
+	@BeforeEach
+	public void registerRepository() {
+		registerSingleton("slowRepositoryManager", new SlowRepositoryManager());
+		registry.refresh(applicationContext);
+	}
+
+	@AfterEach
+	public void destroyRepository() {
+		destroySingleton("slowRepositoryManager");
+		registry.refresh(applicationContext);
+	}
+
+	@Test
+	public void search() throws IOException {
+		Assertions.assertEquals(1, resource.search("foo", "slow", 0, 10).size());
+		Assertions.assertEquals(Collections.singletonList(Collections.emptyMap()), boundResources);
+	}
+
+	@Test
+	public void install() throws IOException {
+		Assertions.assertNotNull(resource.install("plugin-foo", "slow"));
+		Assertions.assertEquals(Collections.singletonList(Collections.emptyMap()), boundResources);
+	}
+
+	@Test
+	public void findAll() throws IOException {
+		newResource().findAll("slow");
+		Assertions.assertEquals(Collections.singletonList(Collections.emptyMap()), boundResources);
+	}
+
+	@Test
+	public void autoUpdate() throws IOException {
+		configuration.put("ligoj.plugin.repository", "slow");
+		try {
+			Assertions.assertEquals(0, newResource().autoUpdate());
+		} finally {
+			configuration.delete("ligoj.plugin.repository");
+		}
+		Assertions.assertEquals(Collections.singletonList(Collections.emptyMap()), boundResources);
+	}
+
+	@Test
+	public void invalidateLastPluginVersions() {
+		resource.invalidateLastPluginVersions("slow");
+		Assertions.assertEquals(Collections.singletonList(Collections.emptyMap()), boundResources);
+	}
+
+	private PluginResource newResource() {
+		final AutowireCapableBeanFactory factory = applicationContext.getAutowireCapableBeanFactory();
+		final PluginResource instance = new LocalPluginResource();
+		factory.autowireBean(instance);
+		return (PluginResource) factory.initializeBean(instance, "localPluginResource");
+	}
+}
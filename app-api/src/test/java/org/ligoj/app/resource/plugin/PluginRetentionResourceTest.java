@@ -0,0 +1,117 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.ligoj.app.dao.PluginRepository;
+import org.ligoj.app.model.Plugin;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+/**
+ * Test class of {@link PluginRetentionResource}
+ */
+public class PluginRetentionResourceTest {
+
+	private static final Path DIRECTORY = Paths.get("target/test-classes/plugin-retention");
+
+	private final PluginsClassLoader classLoader = Mockito.mock(PluginsClassLoader.class);
+
+	private final PluginRetentionResource resource = new PluginRetentionResource() {
+		@Override
+		protected PluginsClassLoader getPluginClassLoader() {
+			return classLoader;
+		}
+	};
+
+	@BeforeEach
+	public void prepare() throws IOException {
+		FileUtils.deleteQuietly(DIRECTORY.toFile());
+		Files.createDirectories(DIRECTORY);
+		for (final String file : Arrays.asList("plugin-foo-1.0.0.jar", "plugin-foo-1.0.1.jar", "plugin-foo-1.0.2.jar", "plugin-foo-1.0.10.jar",
+				"plugin-foo.jar", "plugin-bar-1.0.0.jar", "plugin-bar-2.0.0.jar")) {
+			Files.createFile(DIRECTORY.resolve(file));
+		}
+		Mockito.when(classLoader.getPluginDirectory()).thenReturn(DIRECTORY);
+		resource.inventory = new PluginInventory();
+		resource.installer = new PluginInstaller();
+		resource.configuration = Mockito.mock(ConfigurationResource.class);
+		Mockito.when(resource.configuration.get(ArgumentMatchers.anyString(), ArgumentMatchers.anyString())).then(i -> i.getArgument(1));
+		resource.repository = Mockito.mock(PluginRepository.class);
+		final Plugin plugin = new Plugin();
+		plugin.setArtifact("plugin-foo");
+		plugin.setVersion("1.0.0");
+		Mockito.when(resource.repository.findAll()).thenReturn(Collections.singletonList(plugin));
+	}
+
+	@AfterEach
+	public void clean() {
+		resource.inventory.destroy();
+		FileUtils.deleteQuietly(DIRECTORY.toFile());
+	}
+
+	@Test
+	public void report() {
+		final Map<String, List<String>> report = resource.report();
+
+		// The running version is kept
+		Assertions.assertEquals(Collections.singletonMap("plugin-foo", Collections.singletonList("1.0.1")), report);
+
+		// Nothing is deleted
+		Assertions.assertTrue(Files.exists(DIRECTORY.resolve("plugin-foo-1.0.1.jar")));
+	}
+
+	@Test
+	public void prune() {
+		Mockito.when(resource.configuration.get(PluginRetentionResource.PLUGIN_RETENTION, "2")).thenReturn("1");
+		Assertions.assertEquals(3, resource.prune());
+		Assertions.assertTrue(Files.exists(DIRECTORY.resolve("plugin-foo-1.0.0.jar")));
+		Assertions.assertFalse(Files.exists(DIRECTORY.resolve("plugin-foo-1.0.1.jar")));
+		Assertions.assertFalse(Files.exists(DIRECTORY.resolve("plugin-foo-1.0.2.jar")));
+		Assertions.assertTrue(Files.exists(DIRECTORY.resolve("plugin-foo-1.0.10.jar")));
+		Assertions.assertTrue(Files.exists(DIRECTORY.resolve("plugin-foo.jar")));
+		Assertions.assertFalse(Files.exists(DIRECTORY.resolve("plugin-bar-1.0.0.jar")));
+		Assertions.assertTrue(Files.exists(DIRECTORY.resolve("plugin-bar-2.0.0.jar")));
+
+		// Inventory is up to date
+		Assertions.assertTrue(resource.report().isEmpty());
+	}
+
+	@Test
+	public void pruneDisabled() {
+		Mockito.when(resource.configuration.get(PluginRetentionResource.PLUGIN_RETENTION, "2")).thenReturn("0");
+		Assertions.assertEquals(0, resource.prune());
+		Assertions.assertTrue(Files.exists(DIRECTORY.resolve("plugin-foo-1.0.0.jar")));
+	}
+
+	@Test
+	public void pruneNoPluginClassLoader() {
+		final PluginRetentionResource resource = new PluginRetentionResource();
+		resource.configuration = this.resource.configuration;
+		Assertions.assertTrue(resource.report().isEmpty());
+	}
+
+	@Test
+	public void pruneAsync() throws InterruptedException {
+		resource.pruneAsync(null);
+		for (int i = 0; i < 100 && Files.exists(DIRECTORY.resolve("plugin-foo-1.0.1.jar")); i++) {
+			Thread.sleep(100);
+		}
+		Assertions.assertFalse(Files.exists(DIRECTORY.resolve("plugin-foo-1.0.1.jar")));
+	}
+}
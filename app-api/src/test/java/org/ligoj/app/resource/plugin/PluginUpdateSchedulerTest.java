@@ -0,0 +1,119 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin;
+
+import java.io.IOException;
+import java.time.LocalTime;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.ContextRefreshedEvent;
+
+/**
+ * Test class of {@link PluginUpdateScheduler}
+ */
+public class PluginUpdateSchedulerTest {
+
+	private final PluginUpdateScheduler scheduler = new PluginUpdateScheduler();
+
+	@BeforeEach
+	public void mock() {
+		scheduler.resource = Mockito.mock(PluginResource.class);
+		scheduler.configuration = Mockito.mock(ConfigurationResource.class);
+		scheduler.applicationContext = Mockito.mock(ApplicationContext.class);
+		Mockito.when(scheduler.configuration.get(ArgumentMatchers.anyString(), ArgumentMatchers.anyString())).then(i -> i.getArgument(1));
+	}
+
+	@AfterEach
+	public void destroy() {
+		scheduler.destroy();
+	}
+
+	private void enable() {
+		Mockito.when(scheduler.configuration.get(PluginUpdateScheduler.PLUGIN_UPDATE, "false")).thenReturn("true");
+	}
+
+	@Test
+	public void schedule() {
+		enable();
+		scheduler.schedule(new ContextRefreshedEvent(scheduler.applicationContext));
+		Assertions.assertTrue(scheduler.isScheduled());
+
+		// Replace the schedule
+		Mockito.when(scheduler.configuration.get(PluginUpdateScheduler.PLUGIN_UPDATE_CRON, "0 0 3 * * *")).thenReturn("0 0 * * * *");
+		scheduler.schedule(new ContextRefreshedEvent(scheduler.applicationContext));
+		Assertions.assertTrue(scheduler.isScheduled());
+	}
+
+	@Test
+	public void scheduleChildContext() {
+		enable();
+		scheduler.schedule(new ContextRefreshedEvent(scheduler.applicationContext));
+		Assertions.assertTrue(scheduler.isScheduled());
+
+		// The refresh of a hot deployed plug-in keeps the schedule
+		Mockito.when(scheduler.configuration.get(PluginUpdateScheduler.PLUGIN_UPDATE, "false")).thenReturn("false");
+		scheduler.schedule(new ContextRefreshedEvent(Mockito.mock(ApplicationContext.class)));
+		Assertions.assertTrue(scheduler.isScheduled());
+	}
+
+	@Test
+	public void scheduleDisabled() {
+		scheduler.schedule(new ContextRefreshedEvent(scheduler.applicationContext));
+		Assertions.assertFalse(scheduler.isScheduled());
+	}
+
+	@Test
+	public void update() throws IOException {
+		enable();
+		scheduler.update();
+		Mockito.verify(scheduler.resource).autoUpdate();
+	}
+
+	@Test
+	public void updateDisabled() throws IOException {
+		scheduler.update();
+		Mockito.verify(scheduler.resource, Mockito.never()).autoUpdate();
+	}
+
+	@Test
+	public void updateOutsideWindow() throws IOException {
+		enable();
+		final LocalTime now = LocalTime.now();
+		Mockito.when(scheduler.configuration.get(PluginUpdateScheduler.PLUGIN_UPDATE_WINDOW))
+				.thenReturn(now.plusHours(1).withSecond(0).withNano(0) + "-" + now.plusHours(2).withSecond(0).withNano(0));
+		scheduler.update();
+		Mockito.verify(scheduler.resource, Mockito.never()).autoUpdate();
+	}
+
+	@Test
+	public void updateFailed() throws IOException {
+		enable();
+		Mockito.when(scheduler.resource.autoUpdate()).thenThrow(new IOException());
+
+		// Failure is only logged
+		scheduler.update();
+	}
+
+	@Test
+	public void isInWindow() {
+		Assertions.assertTrue(PluginUpdateScheduler.isInWindow(null, LocalTime.of(12, 0)));
+		Assertions.assertTrue(PluginUpdateScheduler.isInWindow(" ", LocalTime.of(12, 0)));
+		Assertions.assertTrue(PluginUpdateScheduler.isInWindow("01:00-05:00", LocalTime.of(1, 0)));
+		Assertions.assertTrue(PluginUpdateScheduler.isInWindow("01:00-05:00", LocalTime.of(4, 59)));
+		Assertions.assertFalse(PluginUpdateScheduler.isInWindow("01:00-05:00", LocalTime.of(5, 0)));
+		Assertions.assertFalse(PluginUpdateScheduler.isInWindow("01:00-05:00", LocalTime.of(0, 59)));
+
+		// Over midnight
+		Assertions.assertTrue(PluginUpdateScheduler.isInWindow("22:00 - 02:00", LocalTime.of(23, 0)));
+		Assertions.assertTrue(PluginUpdateScheduler.isInWindow("22:00 - 02:00", LocalTime.of(1, 0)));
+		Assertions.assertFalse(PluginUpdateScheduler.isInWindow("22:00 - 02:00", LocalTime.of(12, 0)));
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark of {@link PluginVersion} against the previous regular expression based version management. Not a
+ * unit test, run it with the {@link #main(String[])} method from the test class-path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PluginVersionBenchmark {
+
+	private static final String[] VERSIONS = { "plugin-sample-Z0000001Z0000002Z0000003Z0000004", "plugin-vm-vcloud-Z0000002Z0000010Z0000003SNAPSHOT",
+			"1.2.3-SNAPSHOT", "1.2.30", "0000.02.0003.", "3.0.1", "plugin-id-ldap-Z0000001Z0000000Z0000001Z0000000" };
+
+	/**
+	 * The previous implementation of {@link PluginResource#toTrimmedVersion(String)}.
+	 */
+	private static String legacyToTrimmedVersion(final String extendedVersion) {
+		String trim = Arrays.stream(StringUtils.split(extendedVersion, "-Z.")).dropWhile(s -> !s.matches("^(Z?\\d+.*)"))
+				.map(s -> StringUtils.defaultIfBlank(StringUtils.replaceFirst(s, "^0+", ""), "0")).collect(Collectors.joining("."))
+				.replace(".SNAPSHOT", "-SNAPSHOT").replaceFirst("([^-])SNAPSHOT", "$1-SNAPSHOT");
+		if (trim.endsWith(".0") && StringUtils.countMatches(trim, '.') > 2) {
+			trim = StringUtils.removeEnd(trim, ".0");
+		}
+		return trim;
+	}
+
+	@Benchmark
+	public void trimLegacy(final Blackhole blackhole) {
+		for (final String version : VERSIONS) {
+			blackhole.consume(legacyToTrimmedVersion(version));
+		}
+	}
+
+	@Benchmark
+	public void trimParse(final Blackhole blackhole) {
+		for (final String version : VERSIONS) {
+			blackhole.consume(PluginVersion.parse(version).toString());
+		}
+	}
+
+	@Benchmark
+	public void trimInterned(final Blackhole blackhole) {
+		for (final String version : VERSIONS) {
+			blackhole.consume(PluginVersion.valueOf(version).toString());
+		}
+	}
+
+	@Benchmark
+	public void compareLegacy(final Blackhole blackhole) {
+		for (int i = 1; i < VERSIONS.length; i++) {
+			blackhole.consume(
+					PluginsClassLoader.toExtendedVersion(legacyToTrimmedVersion(VERSIONS[i])).compareTo(PluginsClassLoader.toExtendedVersion(legacyToTrimmedVersion(VERSIONS[i - 1]))));
+		}
+	}
+
+	@Benchmark
+	public void compareInterned(final Blackhole blackhole) {
+		for (int i = 1; i < VERSIONS.length; i++) {
+			blackhole.consume(PluginVersion.valueOf(VERSIONS[i]).compareTo(PluginVersion.valueOf(VERSIONS[i - 1])));
+		}
+	}
+
+	/**
+	 * Run the benchmark.
+	 *
+	 * @param args
+	 *            Ignored arguments.
+	 * @throws RunnerException
+	 *             When the benchmark failed.
+	 */
+	public static void main(final String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(PluginVersionBenchmark.class.getSimpleName()).build()).run();
+	}
+}
@@ -0,0 +1,61 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class of {@link PluginVersion}
+ */
+public class PluginVersionTest {
+
+	@Test
+	public void parse() {
+		Assertions.assertEquals("1.2.3.4", PluginVersion.parse("plugin-sample-Z0000001Z0000002Z0000003Z0000004").toString());
+		Assertions.assertEquals("1.2.3", PluginVersion.parse("plugin-sample-Z0000001Z0000002Z0000003Z0000000").toString());
+		Assertions.assertEquals("1.2.3-SNAPSHOT", PluginVersion.parse("plugin-sample-Z0000001Z0000002Z0000003SNAPSHOT").toString());
+		Assertions.assertEquals("1.2.3-SNAPSHOT", PluginVersion.parse("plugin-sample-1.2.3-SNAPSHOT").toString());
+		Assertions.assertEquals("1.2.30", PluginVersion.parse("1.2.30").toString());
+		Assertions.assertEquals("0.2.3", PluginVersion.parse("0000.02.0003.").toString());
+		Assertions.assertEquals("1.0.0-RC1", PluginVersion.parse("1.0.0-RC1").toString());
+		Assertions.assertEquals("1.2.3.4.5", PluginVersion.parse("1.2.3.4.5").toString());
+		Assertions.assertEquals("", PluginVersion.parse("?").toString());
+	}
+
+	@Test
+	public void qualifier() {
+		Assertions.assertTrue(PluginVersion.parse("1.2.3-SNAPSHOT").isSnapshot());
+		Assertions.assertTrue(PluginVersion.parse("1.2.3-SNAPSHOT").isQualified());
+		Assertions.assertEquals("SNAPSHOT", PluginVersion.parse("Z0000001Z0000002Z0000003SNAPSHOT").getQualifier());
+		Assertions.assertFalse(PluginVersion.parse("1.2.3-RC1").isSnapshot());
+		Assertions.assertFalse(PluginVersion.parse("1.2.3").isQualified());
+		Assertions.assertNull(PluginVersion.parse("1.2.3-").getQualifier());
+	}
+
+	@Test
+	public void compareTo() {
+		Assertions.assertTrue(PluginVersion.valueOf("1.10").isNewerThan(PluginVersion.valueOf("1.9")));
+		Assertions.assertTrue(PluginVersion.valueOf("1.2.3").isNewerThan(PluginVersion.valueOf("1.2.3-SNAPSHOT")));
+		Assertions.assertTrue(PluginVersion.valueOf("1.2.4-SNAPSHOT").isNewerThan(PluginVersion.valueOf("1.2.3")));
+		Assertions.assertTrue(PluginVersion.valueOf("1.0.0-RC2").isNewerThan(PluginVersion.valueOf("1.0.0-RC1")));
+		Assertions.assertTrue(PluginVersion.valueOf("3.0.1").isNewerThan(PluginVersion.valueOf("plugin-bar-Z0000001Z0000000Z0000000Z0000000")));
+		Assertions.assertFalse(PluginVersion.valueOf("1.0.1").isNewerThan(PluginVersion.valueOf("plugin-foo-Z0000001Z0000000Z0000001Z0000000")));
+		Assertions.assertEquals(0, PluginVersion.valueOf("1.2").compareTo(PluginVersion.valueOf("1.2.0.0")));
+	}
+
+	@Test
+	public void equalsAndHashCode() {
+		Assertions.assertEquals(PluginVersion.parse("1.0.1"), PluginVersion.parse("plugin-foo-Z0000001Z0000000Z0000001Z0000000"));
+		Assertions.assertEquals(PluginVersion.parse("1.0.1").hashCode(), PluginVersion.parse("1.0.1.0").hashCode());
+		Assertions.assertEquals(PluginVersion.parse("1.0-snapshot").hashCode(), PluginVersion.parse("1.0-SNAPSHOT").hashCode());
+		Assertions.assertNotEquals(PluginVersion.parse("1.0.1"), PluginVersion.parse("1.0.1-SNAPSHOT"));
+		Assertions.assertNotEquals(PluginVersion.parse("1.0.1"), "1.0.1");
+	}
+
+	@Test
+	public void valueOfInterned() {
+		Assertions.assertSame(PluginVersion.valueOf("1.2.3"), PluginVersion.valueOf("1.2.3"));
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin.repository;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import javax.transaction.Transactional;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpStatus;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.ligoj.app.AbstractServerTest;
+import org.ligoj.bootstrap.model.system.SystemConfiguration;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.Rollback;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+/**
+ * Test class of {@link AggregatedRepositoryManager}
+ */
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(locations = "classpath:/META-INF/spring/application-context-test.xml")
+@Rollback
+@Transactional
+public class AggregatedRepositoryManagerTest extends AbstractServerTest {
+
+	private static final String CENTRAL_SEARCH = "/solrsearch/select?wt=json&rows=100&q=org.ligoj.plugin";
+
+	private static final String NEXUS_SEARCH = "/service/local/lucene/search?g=org.ligoj.plugin&collapseresults=true&repositoryId=releases&p=jar&c=sources";
+
+	@Autowired
+	private AggregatedRepositoryManager resource;
+
+	@Autowired
+	private RepositoryIndexCache indexCache;
+
+	@Autowired
+	private RepositoryHttpClient httpClient;
+
+	@BeforeEach
+	public void prepareData() throws IOException {
+		persistEntities("csv", new Class[] { SystemConfiguration.class }, StandardCharsets.UTF_8.name());
+		indexCache.clear();
+		httpClient.reset();
+	}
+
+	private void mockCentral() {
+		httpServer.stubFor(get(urlEqualTo(CENTRAL_SEARCH)).willReturn(aResponse().withStatus(HttpStatus.SC_OK)
+				.withBody("{\"response\":{\"numFound\":2,\"docs\":[{\"a\":\"plugin-a\",\"latestVersion\":\"1.0.0\"},"
+						+ "{\"a\":\"plugin-b\",\"latestVersion\":\"2.0.0\"}]}}")));
+	}
+
+	@Test
+	public void getLastPluginVersions() throws IOException {
+		mockCentral();
+		httpServer.stubFor(get(urlEqualTo(NEXUS_SEARCH)).willReturn(aResponse().withStatus(HttpStatus.SC_OK)
+				.withBody("{\"totalCount\":2,\"data\":[{\"artifactId\":\"plugin-a\",\"latestRelease\":\"1.1.0\"},"
+						+ "{\"artifactId\":\"plugin-c\",\"latestRelease\":\"1.0.0\"}]}")));
+		httpServer.start();
+
+		// Highest version is kept
+		final Map<String, Artifact> versions = resource.getLastPluginVersions();
+		Assertions.assertEquals(3, versions.size());
+		Assertions.assertEquals("1.1.0", versions.get("plugin-a").getVersion());
+		Assertions.assertEquals("2.0.0", versions.get("plugin-b").getVersion());
+		Assertions.assertEquals("1.0.0", versions.get("plugin-c").getVersion());
+		Assertions.assertEquals("all", resource.getId());
+
+		// Unchanged sources, the same merge is returned
+		Assertions.assertSame(versions, resource.getLastPluginVersions());
+	}
+
+	@Test
+	public void getLastPluginVersionsSourceFailed() throws IOException {
+		mockCentral();
+		httpServer.stubFor(get(urlEqualTo(NEXUS_SEARCH)).willReturn(aResponse().withStatus(HttpStatus.SC_INTERNAL_SERVER_ERROR)));
+		httpServer.start();
+		final Map<String, Artifact> versions = resource.getLastPluginVersions();
+		Assertions.assertEquals(2, versions.size());
+		Assertions.assertEquals("1.0.0", versions.get("plugin-a").getVersion());
+	}
+
+	@Test
+	public void getArtifactInputStream() throws IOException {
+		httpServer.stubFor(get(urlEqualTo("/maven2/org/ligoj/plugin/plugin-a/1.1.0/plugin-a-1.1.0.jar"))
+				.willReturn(aResponse().withStatus(HttpStatus.SC_NOT_FOUND)));
+		httpServer.stubFor(get(urlEqualTo("/service/local/repositories/releases/content/org/ligoj/plugin/plugin-a/1.1.0/plugin-a-1.1.0.jar"))
+				.willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody("jar")));
+		httpServer.start();
+
+		// Central fails, Nexus wins
+		try (InputStream input = resource.getArtifactInputStream("plugin-a", "1.1.0")) {
+			Assertions.assertEquals("jar", IOUtils.toString(input, StandardCharsets.UTF_8));
+		}
+	}
+
+	@Test
+	public void getArtifactInputStreamNotFound() {
+		httpServer.start();
+		Assertions.assertThrows(IOException.class, () -> resource.getArtifactInputStream("plugin-a", "1.1.0"));
+	}
+
+	@Test
+	public void invalidateLastPluginVersions() throws IOException {
+		mockCentral();
+		httpServer.start();
+		resource.getLastPluginVersions();
+		resource.invalidateLastPluginVersions();
+		Assertions.assertEquals(2, resource.getLastPluginVersions().size());
+	}
+}
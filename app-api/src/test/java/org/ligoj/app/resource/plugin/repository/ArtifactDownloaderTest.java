@@ -0,0 +1,166 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin.repository;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import javax.transaction.Transactional;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.http.HttpStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.ligoj.app.AbstractServerTest;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.Rollback;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+/**
+ * Test class of {@link ArtifactDownloader}
+ */
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(locations = "classpath:/META-INF/spring/application-context-test.xml")
+@Rollback
+@Transactional
+public class ArtifactDownloaderTest extends AbstractServerTest {
+
+	private static final String CONTENT = "0123456789";
+
+	private static final String URL = "http://localhost:8120/plugin-foo-1.0.0.jar";
+
+	private static final File DIRECTORY = new File("target/test-classes/download");
+
+	private static final Path TARGET = DIRECTORY.toPath().resolve("plugin-foo-1.0.0.jar");
+
+	@Autowired
+	private ArtifactDownloader downloader;
+
+	@Autowired
+	private RepositoryHttpClient httpClient;
+
+	@Autowired
+	private ConfigurationResource configuration;
+
+	@BeforeEach
+	@AfterEach
+	public void clean() throws IOException {
+		FileUtils.deleteQuietly(DIRECTORY);
+		FileUtils.forceMkdir(DIRECTORY);
+		httpClient.reset();
+	}
+
+	private void stubChunk(final int start, final int end) {
+		httpServer.stubFor(get(urlEqualTo("/plugin-foo-1.0.0.jar")).withHeader("Range", equalTo("bytes=" + start + "-" + end))
+				.willReturn(aResponse().withStatus(HttpStatus.SC_PARTIAL_CONTENT)
+						.withHeader("Content-Range", "bytes " + start + "-" + Math.min(end, 9) + "/10")
+						.withBody(CONTENT.substring(start, Math.min(end, 9) + 1))));
+	}
+
+	private void stubChecksum(final String extension, final String value) {
+		httpServer.stubFor(get(urlEqualTo("/plugin-foo-1.0.0.jar." + extension))
+				.willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(value + "  plugin-foo-1.0.0.jar")));
+	}
+
+	private String digest(final String algorithm) {
+		return Hex.encodeHexString(DigestUtils.getDigest(algorithm).digest(CONTENT.getBytes(StandardCharsets.US_ASCII)));
+	}
+
+	private void assertDownloaded() throws IOException {
+		Assertions.assertEquals(CONTENT, FileUtils.readFileToString(TARGET.toFile(), StandardCharsets.US_ASCII));
+		Assertions.assertFalse(new File(DIRECTORY, "plugin-foo-1.0.0.jar.part").exists());
+		Assertions.assertFalse(new File(DIRECTORY, "plugin-foo-1.0.0.jar.state").exists());
+	}
+
+	@Test
+	public void downloadChunks() throws Exception {
+		configuration.put("plugins.repository-manager.test.chunk-size", "4");
+		stubChunk(0, 3);
+		stubChunk(4, 7);
+		stubChunk(8, 9);
+		stubChecksum("sha1", digest("SHA-1"));
+		httpServer.start();
+		downloader.download("test", URL, TARGET);
+		assertDownloaded();
+	}
+
+	@Test
+	public void downloadNoRange() throws Exception {
+		httpServer.stubFor(get(urlEqualTo("/plugin-foo-1.0.0.jar")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(CONTENT)));
+		stubChecksum("sha256", digest("SHA-256"));
+		httpServer.start();
+
+		// Previous content is replaced
+		FileUtils.write(TARGET.toFile(), "previous content", StandardCharsets.US_ASCII);
+		downloader.download("test", URL, TARGET);
+		assertDownloaded();
+	}
+
+	@Test
+	public void downloadResume() throws Exception {
+		configuration.put("plugins.repository-manager.test.chunk-size", "4");
+		stubChunk(0, 3);
+		stubChunk(4, 7);
+		httpServer.stubFor(get(urlEqualTo("/plugin-foo-1.0.0.jar")).withHeader("Range", equalTo("bytes=8-9"))
+				.willReturn(aResponse().withStatus(HttpStatus.SC_SERVICE_UNAVAILABLE)));
+		httpServer.start();
+
+		// Interrupted download is not visible
+		Assertions.assertThrows(IOException.class, () -> downloader.download("test", URL, TARGET));
+		Assertions.assertFalse(TARGET.toFile().exists());
+		Assertions.assertTrue(new File(DIRECTORY, "plugin-foo-1.0.0.jar.part").exists());
+
+		// Only the missing chunks are downloaded
+		stubChunk(8, 9);
+		downloader.download("test", URL, TARGET);
+		assertDownloaded();
+		httpServer.verify(1, getRequestedFor(urlEqualTo("/plugin-foo-1.0.0.jar")).withHeader("Range", equalTo("bytes=0-3")));
+	}
+
+	@Test
+	public void downloadChecksumMismatch() {
+		httpServer.stubFor(get(urlEqualTo("/plugin-foo-1.0.0.jar")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(CONTENT)));
+		stubChecksum("sha1", "0000000000000000000000000000000000000000");
+		httpServer.start();
+		Assertions.assertThrows(IOException.class, () -> downloader.download("test", URL, TARGET));
+		Assertions.assertFalse(TARGET.toFile().exists());
+		Assertions.assertFalse(new File(DIRECTORY, "plugin-foo-1.0.0.jar.part").exists());
+		Assertions.assertFalse(new File(DIRECTORY, "plugin-foo-1.0.0.jar.state").exists());
+	}
+
+	@Test
+	public void downloadChecksumUnavailable() throws Exception {
+		httpServer.stubFor(get(urlEqualTo("/plugin-foo-1.0.0.jar")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(CONTENT)));
+		httpServer.stubFor(get(urlEqualTo("/plugin-foo-1.0.0.jar.sha256")).willReturn(aResponse().withStatus(HttpStatus.SC_SERVICE_UNAVAILABLE)));
+		httpServer.start();
+
+		// Transport failure, the downloaded content is kept for the next try
+		Assertions.assertThrows(IOException.class, () -> downloader.download("test", URL, TARGET));
+		Assertions.assertFalse(TARGET.toFile().exists());
+		Assertions.assertTrue(new File(DIRECTORY, "plugin-foo-1.0.0.jar.part").exists());
+		Assertions.assertTrue(new File(DIRECTORY, "plugin-foo-1.0.0.jar.state").exists());
+	}
+
+	@Test
+	public void downloadNotFound() {
+		httpServer.start();
+		Assertions.assertThrows(IOException.class, () -> downloader.download("test", URL, TARGET));
+		Assertions.assertFalse(TARGET.toFile().exists());
+	}
+}
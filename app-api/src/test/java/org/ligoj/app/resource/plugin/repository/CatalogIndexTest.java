@@ -0,0 +1,102 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin.repository;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class of {@link CatalogIndex} and {@link PluginCatalog}
+ */
+public class CatalogIndexTest {
+
+	private Map<String, Artifact> newCatalog(final String... artifacts) {
+		final Map<String, Artifact> result = new HashMap<>();
+		for (final String artifact : artifacts) {
+			final ArtifactVo vo = new ArtifactVo();
+			vo.setArtifact(artifact);
+			vo.setVersion("1.0.0");
+			result.put(artifact, vo);
+		}
+		return result;
+	}
+
+	private List<String> search(final CatalogIndex index, final String query) {
+		return index.search(query, 0, 100).stream().map(Artifact::getArtifact).collect(Collectors.toList());
+	}
+
+	@Test
+	public void searchRanked() {
+		final CatalogIndex index = new CatalogIndex(
+				newCatalog("plugin-vm", "plugin-vm-vcloud", "plugin-vm-aws", "plugin-prov-aws", "plugin-id-ldap", "plugin-bt-jira"));
+		Assertions.assertEquals(6, index.size());
+
+		// Exact, prefix, word prefix then substring
+		Assertions.assertEquals(List.of("plugin-vm", "plugin-vm-aws", "plugin-vm-vcloud"), search(index, "vm"));
+		Assertions.assertEquals(List.of("plugin-prov-aws", "plugin-vm-aws"), search(index, "aws"));
+		Assertions.assertEquals(List.of("plugin-vm-vcloud"), search(index, "cloud"));
+		Assertions.assertEquals(List.of("plugin-id-ldap"), search(index, "LDAP"));
+		Assertions.assertEquals(List.of("plugin-id-ldap"), search(index, "d-l"));
+		Assertions.assertTrue(search(index, "none").isEmpty());
+		Assertions.assertTrue(search(index, "z").isEmpty());
+
+		// All n-grams are found in the same artifact, but not the whole term
+		Assertions.assertTrue(search(index, "vm-vm").isEmpty());
+
+		// All artifacts, ordered by name
+		Assertions.assertEquals("plugin-bt-jira", search(index, " ").get(0));
+	}
+
+	@Test
+	public void searchPage() {
+		final CatalogIndex index = new CatalogIndex(newCatalog("plugin-vm", "plugin-vm-vcloud", "plugin-vm-aws", "plugin-prov-aws"));
+		Assertions.assertEquals(List.of("plugin-vm"), index.search("vm", 0, 1).stream().map(Artifact::getArtifact).collect(Collectors.toList()));
+		Assertions.assertEquals(List.of("plugin-vm-aws", "plugin-vm-vcloud"),
+				index.search("vm", 1, 5).stream().map(Artifact::getArtifact).collect(Collectors.toList()));
+		Assertions.assertTrue(index.search("vm", 3, 5).isEmpty());
+		Assertions.assertTrue(index.search("vm", 0, 0).isEmpty());
+
+		// Filtered artifacts are not counted by the offset
+		Assertions.assertEquals(List.of("plugin-vm-vcloud"), index.search("vm", 1, 5, a -> !a.getArtifact().equals("plugin-vm-aws")).stream()
+				.map(Artifact::getArtifact).collect(Collectors.toList()));
+
+		// Unbounded page
+		Assertions.assertEquals(List.of("plugin-vm-aws", "plugin-vm-vcloud"),
+				index.search("vm", 1, Integer.MAX_VALUE).stream().map(Artifact::getArtifact).collect(Collectors.toList()));
+	}
+
+	@Test
+	public void searchLargeCatalog() {
+		final Map<String, Artifact> catalog = new HashMap<>();
+		for (int i = 0; i < 5000; i++) {
+			catalog.putAll(newCatalog("plugin-artifact" + i + "-repo" + (i % 7)));
+		}
+		final CatalogIndex index = new CatalogIndex(catalog);
+		Assertions.assertEquals(List.of("plugin-artifact4999-repo1"), search(index, "artifact4999-"));
+		Assertions.assertEquals(20, index.search("repo3", 0, 20).size());
+		Assertions.assertEquals(5000, index.search("", 0, 10000).size());
+	}
+
+	@Test
+	public void getIndex() {
+		final PluginCatalog catalog = new PluginCatalog();
+		final Map<String, Artifact> versions = newCatalog("plugin-vm");
+		final CatalogIndex index = catalog.getIndex("central", versions);
+		Assertions.assertSame(index, catalog.getIndex("central", versions));
+
+		// Index has been fetched again
+		final Map<String, Artifact> versions2 = newCatalog("plugin-vm", "plugin-id");
+		final CatalogIndex index2 = catalog.getIndex("central", versions2);
+		Assertions.assertNotSame(index, index2);
+		Assertions.assertEquals(2, index2.size());
+
+		catalog.invalidate("central");
+		Assertions.assertNotSame(index2, catalog.getIndex("central", versions2));
+	}
+}
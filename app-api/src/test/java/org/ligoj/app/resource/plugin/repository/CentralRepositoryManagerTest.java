@@ -44,10 +44,18 @@ public class CentralRepositoryManagerTest extends AbstractServerTest {
 	@Autowired
 	private CentralRepositoryManager resource;
 
+	@Autowired
+	private RepositoryIndexCache indexCache;
+
+	@Autowired
+	private RepositoryHttpClient httpClient;
+
 	@BeforeEach
 	public void prepareData() throws IOException {
 		persistEntities("csv", new Class[] { SystemConfiguration.class, Node.class, Project.class, Subscription.class },
 				StandardCharsets.UTF_8.name());
+		indexCache.clear();
+		httpClient.reset();
 	}
 
 	@Test
@@ -61,4 +69,35 @@ public class CentralRepositoryManagerTest extends AbstractServerTest {
 		resource.invalidateLastPluginVersions();
 		Assertions.assertEquals(versions.keySet(), resource.getLastPluginVersions().keySet());
 	}
+
+	@Test
+	public void getLastPluginVersionsPaged() throws IOException {
+		httpServer.stubFor(get(urlEqualTo("/solrsearch/select?wt=json&rows=100&q=org.ligoj.plugin")).willReturn(aResponse().withStatus(HttpStatus.SC_OK)
+				.withBody("{\"response\":{\"numFound\":5,\"docs\":[{\"a\":\"plugin-a\",\"latestVersion\":\"1.0.0\"},"
+						+ "{\"a\":\"plugin-b\",\"latestVersion\":\"1.0.1\"}]}}")));
+		httpServer.stubFor(get(urlEqualTo("/solrsearch/select?wt=json&rows=100&q=org.ligoj.plugin&start=2")).willReturn(aResponse()
+				.withStatus(HttpStatus.SC_OK).withBody("{\"response\":{\"numFound\":5,\"docs\":[{\"a\":\"plugin-c\",\"latestVersion\":\"1.0.2\"},"
+						+ "{\"a\":\"plugin-a\",\"latestVersion\":\"0.0.1\"}]}}")));
+		httpServer.stubFor(get(urlEqualTo("/solrsearch/select?wt=json&rows=100&q=org.ligoj.plugin&start=4")).willReturn(
+				aResponse().withStatus(HttpStatus.SC_OK).withBody("{\"response\":{\"numFound\":5,\"docs\":[{\"a\":\"plugin-d\",\"latestVersion\":\"1.0.3\"}]}}")));
+		httpServer.start();
+		final Map<String, Artifact> versions = resource.getLastPluginVersions();
+		Assertions.assertEquals(4, versions.size());
+		Assertions.assertEquals("1.0.0", versions.get("plugin-a").getVersion());
+		Assertions.assertEquals("1.0.2", versions.get("plugin-c").getVersion());
+		Assertions.assertEquals("1.0.3", versions.get("plugin-d").getVersion());
+	}
+
+	@Test
+	public void getLastPluginVersionsPageFailed() throws IOException {
+		httpServer.stubFor(get(urlEqualTo("/solrsearch/select?wt=json&rows=100&q=org.ligoj.plugin")).willReturn(aResponse().withStatus(HttpStatus.SC_OK)
+				.withBody("{\"response\":{\"numFound\":2,\"docs\":[{\"a\":\"plugin-a\",\"latestVersion\":\"1.0.0\"}]}}")));
+		httpServer.stubFor(get(urlEqualTo("/solrsearch/select?wt=json&rows=100&q=org.ligoj.plugin&start=1"))
+				.willReturn(aResponse().withStatus(HttpStatus.SC_INTERNAL_SERVER_ERROR)));
+		httpServer.start();
+
+		// Incomplete index is not served
+		Assertions.assertTrue(resource.getLastPluginVersions().isEmpty());
+		Assertions.assertTrue(indexCache.get(resource).isStale());
+	}
 }
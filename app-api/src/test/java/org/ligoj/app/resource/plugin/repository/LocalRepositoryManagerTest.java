@@ -0,0 +1,147 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin.repository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class of {@link LocalRepositoryManager}
+ */
+public class LocalRepositoryManagerTest {
+
+	private static final Path ROOT = Paths.get("target/test-classes/local-repository");
+
+	private static final Path GROUP = ROOT.resolve("org/ligoj/plugin");
+
+	private static final Path HOME = Paths.get("target/test-classes/home-test/.ligoj", RepositoryIndexStore.INDEX_DIR);
+
+	@BeforeEach
+	@AfterEach
+	public void clean() {
+		FileUtils.deleteQuietly(ROOT.toFile());
+		FileUtils.deleteQuietly(HOME.toFile());
+	}
+
+	private LocalRepositoryManager newManager(final Path group) {
+		final LocalRepositoryManager manager = new LocalRepositoryManager() {
+			@Override
+			protected Path getGroupDirectory() {
+				return group;
+			}
+		};
+		manager.store = new RepositoryIndexStore() {
+			@Override
+			protected Path getDirectory() {
+				return HOME;
+			}
+		};
+		return manager;
+	}
+
+	private void deploy(final String artifact, final String version) throws IOException {
+		final Path directory = GROUP.resolve(artifact).resolve(version);
+		Files.createDirectories(directory);
+		FileUtils.write(directory.resolve(artifact + "-" + version + ".jar").toFile(), artifact + version, StandardCharsets.UTF_8);
+	}
+
+	private void touch(final String artifact, final long time) throws IOException {
+		Files.setLastModifiedTime(GROUP.resolve(artifact), FileTime.fromMillis(time));
+	}
+
+	@Test
+	public void getLastPluginVersions() throws IOException {
+		deploy("plugin-foo", "1.0.2");
+		deploy("plugin-foo", "1.0.10");
+		deploy("plugin-foo", "1.0.9");
+		deploy("plugin-bar", "2.0.0");
+
+		// Version without jar is ignored
+		Files.createDirectories(GROUP.resolve("plugin-bar/3.0.0"));
+
+		final LocalRepositoryManager manager = newManager(GROUP);
+		final Map<String, Artifact> versions = manager.getLastPluginVersions();
+		Assertions.assertEquals(2, versions.size());
+		Assertions.assertEquals("1.0.10", versions.get("plugin-foo").getVersion());
+		Assertions.assertEquals("2.0.0", versions.get("plugin-bar").getVersion());
+		Assertions.assertEquals("local", manager.getId());
+
+		// Incomplete version is scanned again
+		deploy("plugin-bar", "3.0.0");
+		Assertions.assertEquals("3.0.0", manager.getLastPluginVersions().get("plugin-bar").getVersion());
+	}
+
+	@Test
+	public void getLastPluginVersionsIncremental() throws IOException {
+		deploy("plugin-foo", "1.0.0");
+		touch("plugin-foo", 1000);
+		final LocalRepositoryManager manager = newManager(GROUP);
+		Assertions.assertEquals("1.0.0", manager.getLastPluginVersions().get("plugin-foo").getVersion());
+
+		// Unchanged artifact directory is not scanned again, even after a restart
+		FileUtils.deleteQuietly(GROUP.resolve("plugin-foo/1.0.0/plugin-foo-1.0.0.jar").toFile());
+		touch("plugin-foo", 1000);
+		Assertions.assertEquals("1.0.0", newManager(GROUP).getLastPluginVersions().get("plugin-foo").getVersion());
+
+		// Modified artifact directory is scanned again
+		deploy("plugin-foo", "1.1.0");
+		touch("plugin-foo", 2000);
+		Assertions.assertEquals("1.1.0", manager.getLastPluginVersions().get("plugin-foo").getVersion());
+
+		// Removed artifact
+		FileUtils.deleteQuietly(GROUP.resolve("plugin-foo").toFile());
+		Assertions.assertTrue(manager.getLastPluginVersions().isEmpty());
+	}
+
+	@Test
+	public void invalidateLastPluginVersions() throws IOException {
+		deploy("plugin-foo", "1.0.0");
+		touch("plugin-foo", 1000);
+		final LocalRepositoryManager manager = newManager(GROUP);
+		manager.getLastPluginVersions();
+		FileUtils.deleteQuietly(GROUP.resolve("plugin-foo/1.0.0/plugin-foo-1.0.0.jar").toFile());
+		touch("plugin-foo", 1000);
+
+		// Full scan
+		manager.invalidateLastPluginVersions();
+		Assertions.assertTrue(manager.getLastPluginVersions().isEmpty());
+	}
+
+	@Test
+	public void getLastPluginVersionsNotConfigured() throws IOException {
+		Assertions.assertTrue(newManager(null).getLastPluginVersions().isEmpty());
+		Assertions.assertTrue(newManager(GROUP).getLastPluginVersions().isEmpty());
+		Assertions.assertThrows(IOException.class, () -> newManager(null).getArtifactInputStream("plugin-foo", "1.0.0"));
+	}
+
+	@Test
+	public void getArtifactInputStream() throws IOException {
+		deploy("plugin-foo", "1.0.0");
+		try (InputStream input = newManager(GROUP).getArtifactInputStream("plugin-foo", "1.0.0")) {
+			Assertions.assertEquals("plugin-foo1.0.0", IOUtils.toString(input, StandardCharsets.UTF_8));
+		}
+	}
+
+	@Test
+	public void copyArtifact() throws IOException {
+		deploy("plugin-foo", "1.0.0");
+		final Path target = ROOT.resolve("plugin-foo-1.0.0.jar");
+		FileUtils.write(target.toFile(), "previous content longer than the new one", StandardCharsets.UTF_8);
+		newManager(GROUP).copyArtifact("plugin-foo", "1.0.0", target);
+		Assertions.assertEquals("plugin-foo1.0.0", FileUtils.readFileToString(target.toFile(), StandardCharsets.UTF_8));
+	}
+}
@@ -44,10 +44,18 @@ public class NexusRepositoryManagerTest extends AbstractServerTest {
 	@Autowired
 	private NexusRepositoryManager resource;
 
+	@Autowired
+	private RepositoryIndexCache indexCache;
+
+	@Autowired
+	private RepositoryHttpClient httpClient;
+
 	@BeforeEach
 	public void prepareData() throws IOException {
 		persistEntities("csv", new Class[] { SystemConfiguration.class, Node.class, Project.class, Subscription.class },
 				StandardCharsets.UTF_8.name());
+		indexCache.clear();
+		httpClient.reset();
 	}
 
 	@Test
@@ -63,4 +71,18 @@ public class NexusRepositoryManagerTest extends AbstractServerTest {
 		resource.invalidateLastPluginVersions();
 		Assertions.assertEquals(versions.keySet(), resource.getLastPluginVersions().keySet());
 	}
+
+	@Test
+	public void getLastPluginVersionsPaged() throws IOException {
+		final String url = "/service/local/lucene/search?g=org.ligoj.plugin&collapseresults=true&repositoryId=releases&p=jar&c=sources";
+		httpServer.stubFor(get(urlEqualTo(url)).willReturn(aResponse().withStatus(HttpStatus.SC_OK)
+				.withBody("{\"totalCount\":3,\"tooManyResults\":true,\"data\":[{\"artifactId\":\"plugin-a\",\"latestRelease\":\"1.0.0\"},"
+						+ "{\"artifactId\":\"plugin-b\",\"latestRelease\":\"1.0.1\"}]}")));
+		httpServer.stubFor(get(urlEqualTo(url + "&from=2&count=2")).willReturn(aResponse().withStatus(HttpStatus.SC_OK)
+				.withBody("{\"totalCount\":3,\"tooManyResults\":true,\"data\":[{\"artifactId\":\"plugin-c\",\"latestRelease\":\"1.0.2\"}]}")));
+		httpServer.start();
+		final Map<String, Artifact> versions = resource.getLastPluginVersions();
+		Assertions.assertEquals(3, versions.size());
+		Assertions.assertEquals("1.0.2", versions.get("plugin-c").getVersion());
+	}
 }
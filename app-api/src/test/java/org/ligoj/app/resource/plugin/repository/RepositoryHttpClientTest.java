@@ -0,0 +1,132 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin.repository;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.transaction.Transactional;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpStatus;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.ligoj.app.AbstractServerTest;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.Rollback;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+/**
+ * Test class of {@link RepositoryHttpClient} and {@link CircuitBreaker}
+ */
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(locations = "classpath:/META-INF/spring/application-context-test.xml")
+@Rollback
+@Transactional
+public class RepositoryHttpClientTest extends AbstractServerTest {
+
+	private static final String URL = "http://localhost:8120/any";
+
+	@Autowired
+	private RepositoryHttpClient httpClient;
+
+	@Autowired
+	private ConfigurationResource configuration;
+
+	@BeforeEach
+	public void prepareData() {
+		httpClient.reset();
+	}
+
+	@Test
+	public void open() throws IOException {
+		httpServer.stubFor(get(urlEqualTo("/any")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody("content")));
+		httpServer.start();
+		try (InputStream input = httpClient.open("test", URL)) {
+			Assertions.assertEquals("content", IOUtils.toString(input, StandardCharsets.UTF_8));
+		}
+
+		// Connection is released to the pool
+		try (InputStream input = httpClient.open("test", URL)) {
+			Assertions.assertEquals("content", IOUtils.toString(input, StandardCharsets.UTF_8));
+		}
+	}
+
+	@Test
+	public void openNotFound() {
+		httpServer.stubFor(get(urlEqualTo("/any")).willReturn(aResponse().withStatus(HttpStatus.SC_NOT_FOUND)));
+		httpServer.start();
+		Assertions.assertThrows(IOException.class, () -> httpClient.open("test", URL));
+
+		// A client error does not open the circuit
+		Assertions.assertFalse(httpClient.getBreaker("test").isOpen());
+	}
+
+	@Test
+	public void openCircuit() {
+		httpServer.stubFor(get(urlEqualTo("/any")).willReturn(aResponse().withStatus(HttpStatus.SC_INTERNAL_SERVER_ERROR)));
+		httpServer.start();
+		for (int i = 0; i < 5; i++) {
+			Assertions.assertThrows(IOException.class, () -> httpClient.open("test", URL));
+		}
+		Assertions.assertTrue(httpClient.getBreaker("test").isOpen());
+
+		// Rejected without reaching the repository
+		Assertions.assertThrows(IOException.class, () -> httpClient.open("test", URL));
+		httpServer.verify(5, getRequestedFor(urlEqualTo("/any")));
+
+		// Other repositories are not impacted
+		Assertions.assertFalse(httpClient.getBreaker("other").isOpen());
+	}
+
+	@Test
+	public void openReadTimeout() {
+		configuration.put("plugins.repository-manager.test.read-timeout", "200");
+		httpServer.stubFor(get(urlEqualTo("/any")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withFixedDelay(2000)));
+		httpServer.start();
+		Assertions.assertThrows(IOException.class, () -> httpClient.open("test", URL));
+	}
+
+	@Test
+	public void openTotalTimeout() {
+		configuration.put("plugins.repository-manager.test.total-timeout", "200");
+		httpServer.stubFor(get(urlEqualTo("/any")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withFixedDelay(2000)));
+		httpServer.start();
+		final long start = System.currentTimeMillis();
+		Assertions.assertThrows(IOException.class, () -> httpClient.open("test", URL));
+		Assertions.assertTrue(System.currentTimeMillis() - start < 2000);
+	}
+
+	@Test
+	public void circuitBreakerTrial() {
+		final CircuitBreaker breaker = new CircuitBreaker(2, 0);
+		Assertions.assertTrue(breaker.allow());
+		breaker.failure();
+		Assertions.assertFalse(breaker.isOpen());
+		breaker.failure();
+		Assertions.assertTrue(breaker.isOpen());
+
+		// Delay is elapsed, trial is allowed and succeeds
+		Assertions.assertTrue(breaker.allow());
+		breaker.success();
+		Assertions.assertFalse(breaker.isOpen());
+	}
+
+	@Test
+	public void circuitBreakerOpen() {
+		final CircuitBreaker breaker = new CircuitBreaker(1, 60000);
+		breaker.failure();
+		Assertions.assertFalse(breaker.allow());
+	}
+}
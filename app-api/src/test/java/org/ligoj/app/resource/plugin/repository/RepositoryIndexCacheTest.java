@@ -0,0 +1,291 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.resource.plugin.repository;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class of {@link RepositoryIndexCache}
+ */
+public class RepositoryIndexCacheTest {
+
+	private static final Path DIRECTORY = Paths.get("target/test-classes/home-test/.ligoj", RepositoryIndexStore.INDEX_DIR);
+
+	private final RepositoryIndexCache cache = newCache();
+
+	private static RepositoryIndexCache newCache() {
+		final RepositoryIndexCache cache = new RepositoryIndexCache();
+		cache.store = new RepositoryIndexStore() {
+			@Override
+			protected Path getDirectory() {
+				return DIRECTORY;
+			}
+		};
+		return cache;
+	}
+
+	/**
+	 * Repository counting the fetches, and failing on demand.
+	 */
+	private static class MockRepositoryManager extends AbstractRemoteRepositoryManager {
+		private final AtomicInteger counter = new AtomicInteger();
+		private boolean failure;
+		private long period = 3600;
+		private long retry = 60;
+		private String groupId = "org.ligoj.plugin";
+
+		@Override
+		public String getId() {
+			return "mock";
+		}
+
+		@Override
+		protected Map<String, Artifact> fetchLastPluginVersions() throws IOException {
+			counter.incrementAndGet();
+			if (failure) {
+				throw new IOException("timeout");
+			}
+			final ArtifactVo artifact = new ArtifactVo();
+			artifact.setArtifact("plugin-foo");
+			artifact.setVersion(String.valueOf(counter.get()));
+			return Collections.singletonMap("plugin-foo", artifact);
+		}
+
+		@Override
+		protected long getRefreshPeriod() {
+			return period;
+		}
+
+		@Override
+		protected long getRetryDelay() {
+			return retry;
+		}
+
+		@Override
+		protected String getIndexUrl() {
+			return "http://localhost/search?g=" + groupId;
+		}
+
+		@Override
+		protected String getGroupId() {
+			return groupId;
+		}
+
+		@Override
+		protected String getDefaultSearchUrl() {
+			return null;
+		}
+
+		@Override
+		protected String getDefaultArtifactUrl() {
+			return null;
+		}
+	}
+
+	@BeforeEach
+	public void prepare() {
+		FileUtils.deleteQuietly(DIRECTORY.toFile());
+	}
+
+	@AfterEach
+	public void destroy() {
+		cache.clear();
+		cache.destroy();
+		FileUtils.deleteQuietly(DIRECTORY.toFile());
+	}
+
+	@Test
+	public void get() throws IOException {
+		final MockRepositoryManager repository = new MockRepositoryManager();
+		Assertions.assertNull(cache.getSnapshot("mock"));
+		Assertions.assertEquals("1", cache.get(repository).getVersions().get("plugin-foo").getVersion());
+
+		// Served from the snapshot
+		Assertions.assertEquals("1", cache.get(repository).getVersions().get("plugin-foo").getVersion());
+		Assertions.assertEquals(1, repository.counter.get());
+		Assertions.assertFalse(cache.getSnapshot("mock").isStale());
+	}
+
+	@Test
+	public void getFirstFetchFailed() {
+		final MockRepositoryManager repository = new MockRepositoryManager();
+		repository.failure = true;
+		final RepositorySnapshot snapshot = cache.get(repository);
+		Assertions.assertTrue(snapshot.isStale());
+		Assertions.assertEquals(0, snapshot.getSize());
+
+		// The failure is served until the retry delay is elapsed
+		repository.failure = false;
+		Assertions.assertSame(snapshot, cache.get(repository));
+		Assertions.assertSame(snapshot, cache.getSnapshot("mock"));
+		Assertions.assertEquals(1, repository.counter.get());
+	}
+
+	@Test
+	public void getFirstFetchFailedRetry() {
+		final MockRepositoryManager repository = new MockRepositoryManager();
+		repository.failure = true;
+		repository.retry = 0;
+		Assertions.assertTrue(cache.get(repository).isStale());
+		Assertions.assertTrue(cache.get(repository).isStale());
+		Assertions.assertEquals(2, repository.counter.get());
+
+		// Retried on the next call
+		repository.failure = false;
+		Assertions.assertFalse(cache.get(repository).isStale());
+		Assertions.assertEquals(3, repository.counter.get());
+
+		// Then served from the snapshot
+		cache.get(repository);
+		Assertions.assertEquals(3, repository.counter.get());
+	}
+
+	@Test
+	public void getNotBlockedByAnotherRepository() throws Exception {
+		final CountDownLatch fetching = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final MockRepositoryManager slow = new MockRepositoryManager() {
+			@Override
+			public String getId() {
+				return "slow";
+			}
+
+			@Override
+			protected Map<String, Artifact> fetchLastPluginVersions() throws IOException {
+				fetching.countDown();
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return super.fetchLastPluginVersions();
+			}
+		};
+		final Thread thread = new Thread(() -> cache.get(slow));
+		thread.start();
+		try {
+			Assertions.assertTrue(fetching.await(5, TimeUnit.SECONDS));
+
+			// The slow repository is still fetching
+			Assertions.assertFalse(cache.get(new MockRepositoryManager()).isStale());
+			Assertions.assertNull(cache.getSnapshot("slow"));
+		} finally {
+			release.countDown();
+			thread.join();
+		}
+		Assertions.assertNotNull(cache.getSnapshot("slow"));
+	}
+
+	@Test
+	public void refreshStale() throws IOException {
+		final MockRepositoryManager repository = new MockRepositoryManager();
+		cache.get(repository);
+
+		// Refresh failed, the previous snapshot is still served
+		repository.failure = true;
+		cache.refresh(repository);
+		final RepositorySnapshot snapshot = cache.get(repository);
+		Assertions.assertTrue(snapshot.isStale());
+		Assertions.assertEquals("timeout", snapshot.getError());
+		Assertions.assertEquals("1", snapshot.getVersions().get("plugin-foo").getVersion());
+		Assertions.assertEquals(1, snapshot.getSize());
+
+		// Refresh succeeded
+		repository.failure = false;
+		cache.refresh(repository);
+		Assertions.assertFalse(cache.get(repository).isStale());
+		Assertions.assertEquals("3", cache.get(repository).getVersions().get("plugin-foo").getVersion());
+	}
+
+	@Test
+	public void getStored() {
+		cache.get(new MockRepositoryManager());
+		Assertions.assertTrue(DIRECTORY.resolve("mock.idx").toFile().exists());
+
+		// Restarted cache serves the stored snapshot without fetching
+		final RepositoryIndexCache restarted = newCache();
+		try {
+			final MockRepositoryManager repository = new MockRepositoryManager();
+			final RepositorySnapshot snapshot = restarted.get(repository);
+			Assertions.assertEquals("1", snapshot.getVersions().get("plugin-foo").getVersion());
+			Assertions.assertFalse(snapshot.isStale());
+			Assertions.assertEquals(0, repository.counter.get());
+		} finally {
+			restarted.clear();
+			restarted.destroy();
+		}
+	}
+
+	@Test
+	public void getStoredOtherSource() {
+		cache.get(new MockRepositoryManager());
+
+		// The stored snapshot has been fetched with another group-id
+		final RepositoryIndexCache restarted = newCache();
+		try {
+			final MockRepositoryManager repository = new MockRepositoryManager();
+			repository.groupId = "org.ligoj.other";
+			restarted.get(repository);
+			Assertions.assertEquals(1, repository.counter.get());
+		} finally {
+			restarted.clear();
+			restarted.destroy();
+		}
+	}
+
+	@Test
+	public void getStoredOutdated() throws Exception {
+		cache.get(new MockRepositoryManager());
+
+		// The stored snapshot is refreshed once its remaining period is elapsed
+		final RepositoryIndexCache restarted = newCache();
+		try {
+			final MockRepositoryManager repository = new MockRepositoryManager();
+			repository.period = 1;
+			Assertions.assertEquals("1", restarted.get(repository).getVersions().get("plugin-foo").getVersion());
+			for (int i = 0; i < 50 && repository.counter.get() < 1; i++) {
+				Thread.sleep(100);
+			}
+			Assertions.assertTrue(repository.counter.get() >= 1);
+		} finally {
+			restarted.clear();
+			restarted.destroy();
+		}
+	}
+
+	@Test
+	public void getStoredCorrupted() throws IOException {
+		FileUtils.write(DIRECTORY.resolve("mock.idx").toFile(), "corrupted", StandardCharsets.UTF_8);
+		final MockRepositoryManager repository = new MockRepositoryManager();
+		Assertions.assertEquals("1", cache.get(repository).getVersions().get("plugin-foo").getVersion());
+		Assertions.assertEquals(1, repository.counter.get());
+	}
+
+	@Test
+	public void refreshScheduled() throws Exception {
+		final MockRepositoryManager repository = new MockRepositoryManager();
+		repository.period = 1;
+		cache.get(repository);
+		for (int i = 0; i < 50 && repository.counter.get() < 2; i++) {
+			Thread.sleep(100);
+		}
+
+		// Refreshed in background
+		Assertions.assertTrue(repository.counter.get() >= 2);
+	}
+}
@@ -4,6 +4,7 @@
 package org.ligoj.boot.api;
 
 import org.junit.jupiter.api.Test;
+import org.ligoj.app.resource.plugin.PluginRegistry;
 import org.mockito.Mockito;
 import org.springframework.boot.builder.SpringApplicationBuilder;
 import org.springframework.boot.web.server.ErrorPageRegistry;
@@ -20,6 +21,7 @@ public class ApplicationTest extends SpringBootServletInitializer {
 		new Application().webjarsServlet();
 		new Application().cxfServlet();
 		new Application().securityFilterChainRegistration();
+		new Application().pluginLazyFilterRegistration(new PluginRegistry());
 		new Application().requestContextListener();
 		new Application().httpSessionEventPublisher();
 		new Application().errorPageRegistrar().registerErrorPages(Mockito.mock(ErrorPageRegistry.class));